@@ -1,23 +1,26 @@
 package com.docanalyzer;
 
+import com.docanalyzer.batch.BatchJournal;
 import com.docanalyzer.batch.BatchProcessor;
 import com.docanalyzer.config.Configuration;
 import com.docanalyzer.metrics.MetricsManager;
-import com.docanalyzer.model.Method;
+import com.docanalyzer.model.RunStatistics;
 import com.docanalyzer.output.XMLReportGenerator;
 import com.docanalyzer.parser.JavaParser;
 import com.docanalyzer.parser.MethodExtractor;
+import com.docanalyzer.pipeline.AnalysisPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Main entry point for the documentation analyzer.
@@ -66,6 +69,10 @@ public class Main {
                 config.setMetricsDefinitionsPath(cmdArgs.getMetricsPath());
             }
             
+            if (cmdArgs.getMode() != null && !cmdArgs.getMode().isEmpty()) {
+                config.setProcessingMode(cmdArgs.getMode());
+            }
+            
             // Ensure output directory exists
             config.ensureOutputDirectoryExists();
             
@@ -85,67 +92,61 @@ public class Main {
             // Get formatted guidelines
             String guidelines = metricsManager.getFormattedGuidelines();
             
-            // Parse Java files
+            // Parse, filter and evaluate methods as a stream, appending them to the report as they complete
             JavaParser javaParser = new JavaParser();
-            MethodExtractor methodExtractor = new MethodExtractor();
-            List<Method> allMethods = new ArrayList<>();
-            
-            for (String inputPath : cmdArgs.getInputPaths()) {
-                File inputFile = new File(inputPath);
-                
-                if (!inputFile.exists()) {
-                    log.error("Input path does not exist: {}", inputPath);
-                    continue;
-                }
-                
-                if (inputFile.isDirectory()) {
-                    log.info("Parsing directory: {}", inputPath);
-                    List<JavaParser.JavaFile> parsedFiles = javaParser.parseDirectory(inputPath);
-                    
-                    for (JavaParser.JavaFile parsedFile : parsedFiles) {
-                        List<Method> methods = methodExtractor.extractMethods(parsedFile);
-                        allMethods.addAll(methods);
-                    }
-                } else if (inputFile.getName().endsWith(".java")) {
-                    log.info("Parsing file: {}", inputPath);
-                    javaParser.parseFile(inputPath).ifPresent(parsedFile -> {
-                        List<Method> methods = methodExtractor.extractMethods(parsedFile);
-                        allMethods.addAll(methods);
-                    });
-                } else {
-                    log.warn("Skipping non-Java file: {}", inputPath);
-                }
-            }
-            
-            log.info("Extracted {} methods from {} input paths", allMethods.size(), cmdArgs.getInputPaths().size());
-            
-            // Filter methods to only include those with Javadoc
-            List<Method> methodsWithJavadoc = allMethods.stream()
-                    .filter(method -> method.getJavadoc() != null)
-                    .collect(Collectors.toList());
+            MethodExtractor methodExtractor = MethodExtractor.create(config.getMethodExtractor());
             
-            log.info("Filtered {} methods with Javadoc from {} total methods (skipped {} methods without Javadoc)", 
-                     methodsWithJavadoc.size(), allMethods.size(), allMethods.size() - methodsWithJavadoc.size());
-            
-            if (methodsWithJavadoc.isEmpty()) {
-                log.error("No methods with Javadoc found in the specified input paths");
+            if (cmdArgs.isDryRun()) {
+                runDryRun(config, metricsManager, javaParser, methodExtractor, guidelines, cmdArgs.getInputPaths());
                 return;
             }
             
-            // Process methods in batches
-            BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager);
-            batchProcessor.processBatches(methodsWithJavadoc, guidelines);
-            
-            // Generate report
             XMLReportGenerator reportGenerator = new XMLReportGenerator(config);
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
             String reportName = "javadoc_analysis_" + timestamp + ".xml";
-            String reportPath = reportGenerator.generateReport(methodsWithJavadoc, config.getOutputPath(), reportName);
+            Path journalPath = cmdArgs.getResumePath() != null
+                    ? Paths.get(cmdArgs.getResumePath())
+                    : Paths.get(config.getOutputPath(), "javadoc_analysis_" + timestamp + ".journal.jsonl");
             
-            if (reportPath != null) {
+            try (BatchJournal journal = new BatchJournal(journalPath);
+                 BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager);
+                 XMLReportGenerator.StreamingReport report = reportGenerator.openReport(config.getOutputPath(), reportName)) {
+                log.info("Recording evaluated methods in journal {}", journalPath);
+                batchProcessor.setJournal(journal);
+                
+                Thread shutdownHook = createShutdownHook(batchProcessor, journal, report);
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+                
+                if (cmdArgs.getInputPaths().isEmpty() && journal.size() > 0) {
+                    // Nothing to parse: regenerate the report from the journal alone
+                    log.info("No input paths given, writing report from {} journaled methods", journal.size());
+                    report.appendMethods(journal.getLoadedMethods());
+                } else {
+                    AnalysisPipeline pipeline = new AnalysisPipeline(config, javaParser, methodExtractor, batchProcessor, guidelines);
+                    long startNanos = System.nanoTime();
+                    pipeline.run(cmdArgs.getInputPaths(), methods -> {
+                        try {
+                            report.appendMethods(methods);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    
+                    log.info("Evaluated {} methods with Javadoc from {} total methods (skipped {} methods without Javadoc)", 
+                             pipeline.getMethodsWithJavadoc(), pipeline.getMethodsExtracted(),
+                             pipeline.getMethodsExtracted() - pipeline.getMethodsWithJavadoc());
+                    double seconds = (System.nanoTime() - startNanos) / 1e9;
+                    log.info("Processed {} methods in {} s ({} methods/s)", pipeline.getMethodsWithJavadoc(),
+                             String.format("%.1f", seconds), String.format("%.2f", pipeline.getMethodsWithJavadoc() / Math.max(seconds, 1e-3)));
+                    
+                    if (pipeline.getMethodsWithJavadoc() == 0) {
+                        log.error("No methods with Javadoc found in the specified input paths");
+                    }
+                }
+                
+                String reportPath = report.finish(batchProcessor.getRunStatistics());
+                removeShutdownHook(shutdownHook);
                 log.info("Analysis complete. Report generated at: {}", reportPath);
-            } else {
-                log.error("Failed to generate report");
             }
             
         } catch (Exception e) {
@@ -154,6 +155,79 @@ public class Main {
         }
     }
     
+    /**
+     * Parses the input paths and plans the batches without calling the API, then prints the
+     * projected token usage and cost. Methods found in the evaluation cache are not counted.
+     * 
+     * @param config The configuration
+     * @param metricsManager The metrics manager
+     * @param javaParser The parser for Java files
+     * @param methodExtractor The extractor for methods
+     * @param guidelines The evaluation guidelines
+     * @param inputPaths The input paths
+     * @throws InterruptedException If the pipeline is interrupted
+     */
+    private static void runDryRun(Configuration config, MetricsManager metricsManager, JavaParser javaParser,
+                                  MethodExtractor methodExtractor, String guidelines, List<String> inputPaths)
+            throws InterruptedException {
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.setDryRun(true);
+            AnalysisPipeline pipeline = new AnalysisPipeline(config, javaParser, methodExtractor, batchProcessor, guidelines);
+            pipeline.run(inputPaths, methods -> { });
+            
+            RunStatistics statistics = batchProcessor.getRunStatistics();
+            System.out.printf("Dry run: %d methods with Javadoc, %d from the evaluation cache%n",
+                    pipeline.getMethodsWithJavadoc(), statistics.getCacheHits());
+            System.out.printf("Projected usage: %d input, %d cache read, %d cache write and %d output tokens%n",
+                    statistics.getInputTokens(), statistics.getCacheReadTokens(), statistics.getCacheWriteTokens(),
+                    statistics.getOutputTokens());
+            if (config.findModelPrice(config.getModelName()).isEmpty()) {
+                System.out.printf("Projected cost: unknown, no price configured for model %s%n", config.getModelName());
+            } else if (config.getBudgetMaxCostUsd() > 0) {
+                System.out.printf("Projected cost: $%.2f with %s (budget $%.2f)%n", statistics.getCostUsd(),
+                        config.getModelName(), config.getBudgetMaxCostUsd());
+            } else {
+                System.out.printf("Projected cost: $%.2f with %s%n", statistics.getCostUsd(), config.getModelName());
+            }
+        }
+    }
+    
+    /**
+     * Creates the shutdown hook of an analysis run: on Ctrl-C or a kill, the run never gets to
+     * close its resources, so the hook aborts the requests in flight, keeps the journal and writes
+     * whatever has been evaluated as a partial report.
+     * 
+     * @param batchProcessor The batch processor of the run
+     * @param journal The journal of the run
+     * @param report The report of the run
+     * @return The shutdown hook, not yet registered
+     */
+    private static Thread createShutdownHook(BatchProcessor batchProcessor, BatchJournal journal,
+                                             XMLReportGenerator.StreamingReport report) {
+        return new Thread(() -> {
+            batchProcessor.cancel();
+            journal.close();
+            try {
+                report.close();
+            } catch (IOException e) {
+                log.error("Failed to write partial report: {}", e.getMessage());
+            }
+        }, "shutdown-report");
+    }
+    
+    /**
+     * Removes a shutdown hook once the work it guards has completed normally.
+     * 
+     * @param shutdownHook The shutdown hook
+     */
+    private static void removeShutdownHook(Thread shutdownHook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and the hook is running
+        }
+    }
+    
     /**
      * Parses command line arguments.
      * 
@@ -193,9 +267,30 @@ public class Main {
                     }
                     break;
                     
+                case "-r":
+                case "--resume":
+                    if (i + 1 < args.length) {
+                        cmdArgs.setResumePath(args[++i]);
+                    }
+                    break;
+                    
+                case "--dry-run":
+                    cmdArgs.setDryRun(true);
+                    break;
+                    
+                case "--mode":
+                    if (i + 1 < args.length) {
+                        cmdArgs.setMode(args[++i]);
+                    }
+                    break;
+                    
                 default:
-                    // Assume it's an input path
-                    cmdArgs.getInputPaths().add(arg);
+                    if (arg.startsWith("--mode=")) {
+                        cmdArgs.setMode(arg.substring("--mode=".length()));
+                    } else {
+                        // Assume it's an input path
+                        cmdArgs.getInputPaths().add(arg);
+                    }
                     break;
             }
         }
@@ -215,8 +310,12 @@ public class Main {
         System.out.println("  -c, --config <path>        Path to configuration file");
         System.out.println("  -o, --output <path>        Path to output directory");
         System.out.println("  -m, --metrics <path>       Path to metrics definitions file");
+        System.out.println("  -r, --resume <journal>     Resume an interrupted run from its journal");
+        System.out.println("      --mode=<mode>          interactive (default) or async-batch (Message Batches API)");
+        System.out.println("      --dry-run              Print the projected token usage and cost without calling the API");
         System.out.println();
         System.out.println("Input paths can be Java files or directories containing Java files.");
+        System.out.println("When resuming without input paths, the report is written from the journal alone.");
     }
     
     /**
@@ -227,6 +326,9 @@ public class Main {
         private String configPath;
         private String outputPath;
         private String metricsPath;
+        private String resumePath;
+        private String mode;
+        private boolean dryRun = false;
         private final List<String> inputPaths = new ArrayList<>();
         
         public boolean isHelp() {
@@ -261,6 +363,30 @@ public class Main {
             this.metricsPath = metricsPath;
         }
         
+        public String getResumePath() {
+            return resumePath;
+        }
+        
+        public void setResumePath(String resumePath) {
+            this.resumePath = resumePath;
+        }
+        
+        public String getMode() {
+            return mode;
+        }
+        
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+        
+        public boolean isDryRun() {
+            return dryRun;
+        }
+        
+        public void setDryRun(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+        
         public List<String> getInputPaths() {
             return inputPaths;
         }
@@ -1,34 +1,78 @@
 package com.docanalyzer.ai;
 
 import com.docanalyzer.config.Configuration;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.ParseException;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
-import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Client for making requests to the Anthropic API.
+ * A single pooled HTTP client is kept for the lifetime of this instance so that
+ * connections (and their TLS sessions) are reused across requests; call {@link #close()}
+ * when the run is finished.
  */
 @Slf4j
-public class AnthropicClient {
+public class AnthropicClient implements LlmClient {
     
-    private static final String API_URL = "https://api.anthropic.com/v1/messages";
+    private static final String MESSAGES_PATH = "/v1/messages";
+    private static final String MESSAGE_BATCHES_PATH = "/v1/messages/batches";
     private static final String ANTHROPIC_VERSION = "2023-06-01";
+    private static final String RATE_LIMIT_HEADER_PREFIX = "anthropic-ratelimit-";
+    // Errors in a stream arrive after the 200 status; map them to the status they have as responses
+    private static final Map<String, Integer> STREAM_ERROR_STATUS_CODES = Map.of(
+            "overloaded_error", 529, "rate_limit_error", 429, "api_error", 500, "invalid_request_error", 400);
     
+    private final String apiUrl;
+    private final String batchesUrl;
     private final String apiKey;
     private final String modelName;
     private final int maxTokens;
     private final double temperature;
+    private final boolean promptCacheEnabled;
     private final ObjectMapper objectMapper;
+    private final RequestConfig requestConfig;
+    private final CloseableHttpClient httpClient;
+    private final long requestDeadlineMs;
+    private final ScheduledThreadPoolExecutor deadlineTimer;
+    private final Set<HttpUriRequestBase> inflightRequests = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
     
     /**
      * Creates a new AnthropicClient with the specified configuration.
@@ -36,11 +80,22 @@ public class AnthropicClient {
      * @param config The configuration
      */
     public AnthropicClient(Configuration config) {
+        this.apiUrl = stripTrailingSlash(config.getAnthropicBaseUrl()) + MESSAGES_PATH;
+        this.batchesUrl = stripTrailingSlash(config.getAnthropicBaseUrl()) + MESSAGE_BATCHES_PATH;
         this.apiKey = config.getAnthropicApiKey();
         this.modelName = config.getModelName();
         this.maxTokens = config.getMaxTokens();
         this.temperature = config.getTemperature();
+        this.promptCacheEnabled = config.isPromptCacheEnabled();
         this.objectMapper = new ObjectMapper();
+        this.requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(config.getResponseTimeoutMs()))
+                .build();
+        this.httpClient = createHttpClient(config, requestConfig);
+        this.requestDeadlineMs = Math.max(0, config.getRequestDeadlineMs());
+        this.deadlineTimer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("request-deadline").daemon(true).factory());
+        this.deadlineTimer.setRemoveOnCancelPolicy(true);
         
         if (apiKey == null || apiKey.isEmpty()) {
             log.warn("Anthropic API key is not set. API requests will fail.");
@@ -55,75 +110,780 @@ public class AnthropicClient {
      * @throws IOException If an error occurs during the request
      */
     public String sendRequest(String prompt) throws IOException {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(API_URL);
-            
-            // Set headers
-            httpPost.setHeader("x-api-key", apiKey);
-            httpPost.setHeader("anthropic-version", ANTHROPIC_VERSION);
-            httpPost.setHeader("Content-Type", "application/json");
-            
-            // Create request body
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            requestBody.put("model", modelName);
-            requestBody.put("max_tokens", maxTokens);
-            requestBody.put("temperature", temperature);
-            
-            // Create messages array with system and user messages
-            requestBody.putArray("messages")
-                    .add(createMessage( prompt));
-            
-            // Set request body
-            httpPost.setEntity(new StringEntity(requestBody.toString(), ContentType.APPLICATION_JSON));
+        return sendMessage(prompt).getText();
+    }
+    
+    /**
+     * Sends a single user message to the Anthropic API.
+     * 
+     * @param prompt The prompt to send
+     * @return The API response
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    public ApiResponse sendMessage(String prompt) throws IOException {
+        return sendMessage(Prompt.of(prompt));
+    }
+    
+    /**
+     * Sends a request to the Anthropic API and returns the response text together with the token
+     * usage and the rate-limit state reported by the server.
+     * 
+     * @param prompt The prompt to send
+     * @return The API response
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    @Override
+    public ApiResponse sendMessage(Prompt prompt) throws IOException {
+        return sendMessage(prompt, null);
+    }
+    
+    /**
+     * Sends a request to the Anthropic API that can be aborted on its own with the given token.
+     * 
+     * @param prompt The prompt to send
+     * @param cancellation Aborts the request, or null
+     * @return The API response
+     * @throws ApiException If the API answers with an error status
+     * @throws RequestCancelledException If the request is cancelled
+     * @throws IOException If an error occurs during the request
+     */
+    @Override
+    public ApiResponse sendMessage(Prompt prompt, CancellationToken cancellation) throws IOException {
+        try {
+            HttpPost httpPost = new HttpPost(apiUrl);
+            setHeaders(httpPost);
+            httpPost.setEntity(new JsonRequestEntity(objectMapper, generator -> writeMessageParams(generator, prompt, false)));
             
             // Execute request
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                
-                // Check for errors
-                int statusCode = response.getCode();
-                if (statusCode != 200) {
-                    log.error("API request failed with status code {}: {}", statusCode, responseBody);
-                    throw new IOException("API request failed with status code " + statusCode);
-                }
-                
-                // Log raw response for debugging
-                log.debug("Raw API response: {}", responseBody);
-                
-                // Parse response
-                JsonNode responseJson = objectMapper.readTree(responseBody);
-                JsonNode contentNode = responseJson.path("content");
-                
-                if (contentNode.isArray() && !contentNode.isEmpty()) {
-                    StringBuilder result = new StringBuilder();
-                    for (JsonNode content : contentNode) {
-                        if (content.has("text")) {
-                            result.append(content.get("text").asText());
+            long startNanos = System.nanoTime();
+            return executeWithDeadline(httpPost, requestDeadlineMs, cancellation, () -> {
+                return httpClient.execute(httpPost, response -> {
+                    if (response.getCode() != 200) {
+                        checkStatus(response, EntityUtils.toString(response.getEntity()));
+                    }
+                    
+                    // Parse the response as it is read, without holding the body as a string or tree
+                    ApiResponse.ApiResponseBuilder message;
+                    try (JsonParser parser = objectMapper.createParser(response.getEntity().getContent())) {
+                        message = readMessage(parser);
+                    }
+                    return message.requestsRemaining(parseLongHeader(response, "requests-remaining"))
+                            .requestsReset(parseInstantHeader(response, "requests-reset"))
+                            .inputTokensRemaining(parseLongHeader(response, "input-tokens-remaining"))
+                            .inputTokensReset(parseInstantHeader(response, "input-tokens-reset"))
+                            .outputTokensRemaining(parseLongHeader(response, "output-tokens-remaining"))
+                            .outputTokensReset(parseInstantHeader(response, "output-tokens-reset"))
+                            .latencyMs(elapsedMs(startNanos))
+                            .build();
+                });
+            });
+        } catch (ApiException | InterruptedIOException e) {
+            // Status errors, timeouts and cancellations keep their type for the retry decision
+            throw e;
+        } catch (Exception e) {
+            log.error("Error sending request to Anthropic API: {}", e.getMessage());
+            throw new IOException("Error sending request to Anthropic API", e);
+        }
+    }
+    
+    /**
+     * Sends a request to the Anthropic API with server-sent events streaming and hands each
+     * piece of generated text, or of the tool input JSON if the prompt has a tool, to the consumer
+     * as soon as it arrives.
+     * 
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the text and tool input deltas in order
+     * @return The API response, with the complete text and the usage reported at the end of the stream
+     * @throws ApiException If the API answers with an error status or the stream reports an error
+     * @throws IOException If an error occurs during the request
+     */
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+        return streamMessage(prompt, textConsumer, null);
+    }
+    
+    /**
+     * Streams a request to the Anthropic API that can be aborted on its own with the given token.
+     * 
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the text and tool input deltas in order
+     * @param cancellation Aborts the request, or null
+     * @return The API response, with the complete text and the usage reported at the end of the stream
+     * @throws ApiException If the API answers with an error status or the stream reports an error
+     * @throws RequestCancelledException If the request is cancelled
+     * @throws IOException If an error occurs during the request
+     */
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer, CancellationToken cancellation)
+            throws IOException {
+        try {
+            HttpPost httpPost = new HttpPost(apiUrl);
+            setHeaders(httpPost);
+            httpPost.setHeader("Accept", "text/event-stream");
+            httpPost.setEntity(new JsonRequestEntity(objectMapper, generator -> writeMessageParams(generator, prompt, true)));
+            
+            long startNanos = System.nanoTime();
+            return executeWithDeadline(httpPost, requestDeadlineMs, cancellation, () -> {
+                return httpClient.execute(httpPost, response -> {
+                    if (response.getCode() != 200) {
+                        checkStatus(response, EntityUtils.toString(response.getEntity()));
+                    }
+                    
+                    StringBuilder text = new StringBuilder();
+                    StringBuilder toolInput = new StringBuilder();
+                    ApiResponse.ApiResponseBuilder result = ApiResponse.builder();
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+                        StringBuilder data = new StringBuilder();
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.startsWith("data:")) {
+                                data.append(line.substring(5).trim());
+                            } else if (line.isEmpty() && data.length() > 0) {
+                                handleStreamEvent(objectMapper.readTree(data.toString()), text, toolInput, result, textConsumer);
+                                data.setLength(0);
+                            }
+                        }
+                        if (data.length() > 0) {
+                            handleStreamEvent(objectMapper.readTree(data.toString()), text, toolInput, result, textConsumer);
                         }
                     }
-                    //log.info("Extracted API response text: {}", extractedText);
-                    return result.toString();
+                    
+                    return result.text(text.toString())
+                            .toolInput(toolInput.length() > 0 ? toolInput.toString() : null)
+                            .requestsRemaining(parseLongHeader(response, "requests-remaining"))
+                            .requestsReset(parseInstantHeader(response, "requests-reset"))
+                            .inputTokensRemaining(parseLongHeader(response, "input-tokens-remaining"))
+                            .inputTokensReset(parseInstantHeader(response, "input-tokens-reset"))
+                            .outputTokensRemaining(parseLongHeader(response, "output-tokens-remaining"))
+                            .outputTokensReset(parseInstantHeader(response, "output-tokens-reset"))
+                            .latencyMs(elapsedMs(startNanos))
+                            .build();
+                });
+            });
+        } catch (ApiException | InterruptedIOException e) {
+            // Status errors, timeouts and cancellations keep their type for the retry decision
+            throw e;
+        } catch (Exception e) {
+            log.error("Error streaming response from Anthropic API: {}", e.getMessage());
+            throw new IOException("Error streaming response from Anthropic API", e);
+        }
+    }
+    
+    /**
+     * Handles one server-sent event of a streamed message.
+     * 
+     * @param event The event data
+     * @param text The text received so far
+     * @param toolInput The tool input JSON received so far
+     * @param result Collects the usage of the message
+     * @param textConsumer Receives the text deltas
+     * @throws ApiException If the event reports an error
+     */
+    private static void handleStreamEvent(JsonNode event, StringBuilder text, StringBuilder toolInput,
+                                          ApiResponse.ApiResponseBuilder result, Consumer<String> textConsumer) throws ApiException {
+        switch (event.path("type").asText()) {
+            case "message_start" -> {
+                JsonNode usage = event.path("message").path("usage");
+                result.inputTokens(usage.path("input_tokens").asInt())
+                        .cacheCreationInputTokens(usage.path("cache_creation_input_tokens").asInt())
+                        .cacheReadInputTokens(usage.path("cache_read_input_tokens").asInt());
+            }
+            case "content_block_start" -> {
+                if ("tool_use".equals(event.path("content_block").path("type").asText())) {
+                    toolInput.setLength(0);
+                }
+            }
+            case "content_block_delta" -> {
+                JsonNode delta = event.path("delta");
+                switch (delta.path("type").asText()) {
+                    case "text_delta" -> {
+                        String deltaText = delta.path("text").asText();
+                        text.append(deltaText);
+                        textConsumer.accept(deltaText);
+                    }
+                    case "input_json_delta" -> {
+                        String partialJson = delta.path("partial_json").asText();
+                        toolInput.append(partialJson);
+                        textConsumer.accept(partialJson);
+                    }
+                    default -> {
+                        // Other deltas carry nothing we need
+                    }
+                }
+            }
+            case "message_delta" -> {
+                result.outputTokens(event.path("usage").path("output_tokens").asInt());
+                if (event.path("delta").hasNonNull("stop_reason")) {
+                    result.stopReason(event.path("delta").get("stop_reason").asText());
                 }
-                
-                log.error("Unexpected API response format: {}", responseBody);
-                throw new IOException("Unexpected API response format");
             }
+            case "error" -> {
+                String errorType = event.path("error").path("type").asText();
+                log.error("API stream failed with {}: {}", errorType, event.path("error").path("message").asText());
+                throw new ApiException(STREAM_ERROR_STATUS_CODES.getOrDefault(errorType, 500), -1,
+                        "API stream failed with " + errorType);
+            }
+            default -> {
+                // ping, content_block_stop and message_stop carry nothing we need
+            }
+        }
+    }
+    
+    /**
+     * Submits prompts as a job of the Message Batches API, which processes them asynchronously.
+     * 
+     * @param prompts The prompts by custom ID, which identifies each result in the results file
+     * @return The state of the new job
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    public MessageBatch createMessageBatch(Map<String, Prompt> prompts) throws IOException {
+        HttpPost httpPost = new HttpPost(batchesUrl);
+        setHeaders(httpPost);
+        httpPost.setEntity(new JsonRequestEntity(objectMapper, generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("requests");
+            for (Map.Entry<String, Prompt> entry : prompts.entrySet()) {
+                generator.writeStartObject();
+                generator.writeStringField("custom_id", entry.getKey());
+                generator.writeFieldName("params");
+                writeMessageParams(generator, entry.getValue(), false);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
+        return parseMessageBatch(executeJson(httpPost));
+    }
+    
+    /**
+     * Gets the current state of a Message Batches API job.
+     * 
+     * @param batchId The identifier of the job
+     * @return The state of the job
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    public MessageBatch getMessageBatch(String batchId) throws IOException {
+        HttpGet httpGet = new HttpGet(batchesUrl + "/" + batchId);
+        setHeaders(httpGet);
+        return parseMessageBatch(executeJson(httpGet));
+    }
+    
+    /**
+     * Cancels a Message Batches API job. Requests that are already being processed still
+     * complete; the job ends once they have. As this cleans up after a failed or cancelled run,
+     * it is sent even after {@link #cancelAll()}.
+     * 
+     * @param batchId The identifier of the job
+     * @return The state of the job, "canceling" until it has ended
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    public MessageBatch cancelMessageBatch(String batchId) throws IOException {
+        HttpPost httpPost = new HttpPost(batchesUrl + "/" + batchId + "/cancel");
+        setHeaders(httpPost);
+        return parseMessageBatch(executeJson(httpPost, false));
+    }
+    
+    /**
+     * Streams the results file of an ended Message Batches API job. The file is read line by
+     * line, so it is never held in memory as a whole. Results are in no particular order.
+     * 
+     * @param batch The ended job
+     * @param resultConsumer Receives each result
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    public void streamMessageBatchResults(MessageBatch batch, Consumer<MessageBatchResult> resultConsumer) throws IOException {
+        if (batch.getResultsUrl() == null) {
+            throw new IOException("Message batch " + batch.getId() + " has no results yet");
+        }
+        
+        HttpGet httpGet = new HttpGet(batch.getResultsUrl());
+        setHeaders(httpGet);
+        try {
+            // The results file can be large, so only cancellation and the socket timeout apply
+            executeWithDeadline(httpGet, 0, null, () -> {
+                return httpClient.execute(httpGet, response -> {
+                    if (response.getCode() != 200) {
+                        checkStatus(response, EntityUtils.toString(response.getEntity()));
+                    }
+                    
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (!line.isBlank()) {
+                                resultConsumer.accept(parseMessageBatchResult(objectMapper.readTree(line)));
+                            }
+                        }
+                    }
+                    return null;
+                });
+            });
+        } catch (ApiException e) {
+            throw e;
+        } catch (ParseException e) {
+            throw new IOException("Error reading message batch results", e);
+        }
+    }
+    
+    /**
+     * Closes the underlying HTTP client and its connection pool.
+     */
+    @Override
+    public void close() {
+        deadlineTimer.shutdownNow();
+        httpClient.close(CloseMode.GRACEFUL);
+        log.debug("Closed Anthropic HTTP client");
+    }
+    
+    /**
+     * Aborts the requests in flight and fails every later request with a
+     * {@link RequestCancelledException}.
+     */
+    @Override
+    public void cancelAll() {
+        cancelled = true;
+        int inflight = inflightRequests.size();
+        inflightRequests.forEach(HttpUriRequestBase::cancel);
+        log.info("Cancelled {} API requests in flight", inflight);
+    }
+    
+    /**
+     * Executes a request within a deadline. The request is aborted when the deadline passes, which
+     * fails it with a {@link DeadlineExceededException}, or when {@link #cancelAll()} is called
+     * or its cancellation token is cancelled, which fails it with a {@link RequestCancelledException}.
+     * The deadline covers the whole exchange, including a streamed response, unlike the socket
+     * timeout that only bounds the wait for the next bytes.
+     *
+     * @param request The request
+     * @param deadlineMs The deadline in milliseconds, or 0 for none
+     * @param cancellation Aborts this request alone, or null
+     * @param exchange Executes the request and reads its response
+     * @param <T> The type of the result
+     * @return The result of the exchange
+     * @throws IOException If the exchange fails, times out or is cancelled
+     * @throws ParseException If the response cannot be read
+     */
+    private <T> T executeWithDeadline(HttpUriRequestBase request, long deadlineMs, CancellationToken cancellation,
+            Exchange<T> exchange) throws IOException, ParseException {
+        return executeWithDeadline(request, deadlineMs, cancellation, true, exchange);
+    }
+    
+    /**
+     * Executes a request within a deadline, optionally exempt from {@link #cancelAll()}.
+     *
+     * @param request The request
+     * @param deadlineMs The deadline in milliseconds, or 0 for none
+     * @param cancellation Aborts this request alone, or null
+     * @param runCancellable Whether cancelling the run aborts the request
+     * @param exchange Executes the request and reads its response
+     * @param <T> The type of the result
+     * @return The result of the exchange
+     * @throws IOException If the exchange fails, times out or is cancelled
+     * @throws ParseException If the response cannot be read
+     */
+    private <T> T executeWithDeadline(HttpUriRequestBase request, long deadlineMs, CancellationToken cancellation,
+            boolean runCancellable, Exchange<T> exchange) throws IOException, ParseException {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> deadline = deadlineMs > 0
+                ? deadlineTimer.schedule(() -> {
+                    timedOut.set(true);
+                    request.cancel();
+                }, deadlineMs, TimeUnit.MILLISECONDS)
+                : null;
+        
+        // Registered before the check, so that a concurrent cancelAll() either is seen here or aborts the request
+        if (runCancellable) {
+            inflightRequests.add(request);
+        }
+        if (cancellation != null) {
+            cancellation.onCancel(request::cancel);
+            if (cancellation.getConnectionWaitMs() > 0) {
+                request.setConfig(RequestConfig.copy(requestConfig)
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(cancellation.getConnectionWaitMs()))
+                        .build());
+            }
+        }
+        try {
+            if (runCancellable && cancelled) {
+                throw new RequestCancelledException("API request not sent, the run has been cancelled");
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new RequestCancelledException("API request not sent, it has been cancelled");
+            }
+            return exchange.execute();
         } catch (Exception e) {
-            log.error("Error sending request to Anthropic API: {}", e.getMessage());
-            throw new IOException("Error sending request to Anthropic API", e);
+            if (timedOut.get()) {
+                log.warn("API request to {} aborted after its deadline of {} ms", request.getRequestUri(), deadlineMs);
+                DeadlineExceededException deadlineExceeded = new DeadlineExceededException(deadlineMs);
+                deadlineExceeded.initCause(e);
+                throw deadlineExceeded;
+            }
+            boolean requestCancelled = runCancellable && cancelled || cancellation != null && cancellation.isCancelled();
+            if (requestCancelled && !(e instanceof RequestCancelledException)) {
+                RequestCancelledException cancelledException = new RequestCancelledException("API request cancelled");
+                cancelledException.initCause(e);
+                throw cancelledException;
+            }
+            throw e;
+        } finally {
+            inflightRequests.remove(request);
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+        }
+    }
+    
+    /**
+     * Executes a request and reads its response.
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    private interface Exchange<T> {
+        T execute() throws IOException, ParseException;
+    }
+    
+    /**
+     * Creates the pooled HTTP client used for all requests of this instance.
+     * The pool is sized to the number of concurrent batch requests, plus room for the hedges of
+     * slow requests if hedging is enabled, as a hedge is sent while every batch request may still
+     * hold its connection. Idle connections are kept alive as long as the server allows and
+     * evicted after a while. Retries are left to the caller.
+     *
+     * @param config The configuration
+     * @param requestConfig The default configuration of the requests
+     * @return The HTTP client
+     */
+    private static CloseableHttpClient createHttpClient(Configuration config, RequestConfig requestConfig) {
+        int poolSize = Math.max(1, config.getBatchMaxInflight());
+        if (config.isHedgeEnabled()) {
+            poolSize += Math.max(1, (int) Math.ceil(poolSize * Math.max(0.0, config.getHedgeMaxRatio())));
+        }
+        
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(poolSize)
+                .setMaxConnPerRoute(poolSize)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(config.getResponseTimeoutMs()))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+        
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .evictExpiredConnections()
+                // 429 and 503 are handled by the request scheduler, which needs to see them
+                .disableAutomaticRetries()
+                .build();
+    }
+    
+    /**
+     * Writes the Messages API parameters for a prompt. The system part is sent as a system block
+     * marked for prompt caching, so that requests sharing it only pay for it once per cache lifetime.
+     * The prompt strings are encoded straight into the request body.
+     *
+     * @param generator The generator of the request body
+     * @param prompt The prompt
+     * @param stream Whether to ask for a streamed response
+     * @throws IOException If writing fails
+     */
+    private void writeMessageParams(JsonGenerator generator, Prompt prompt, boolean stream) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("model", modelName);
+        generator.writeNumberField("max_tokens", maxTokens);
+        generator.writeNumberField("temperature", temperature);
+        if (stream) {
+            generator.writeBooleanField("stream", true);
+        }
+        
+        if (prompt.getSystem() != null && !prompt.getSystem().isEmpty()) {
+            generator.writeArrayFieldStart("system");
+            generator.writeStartObject();
+            generator.writeStringField("type", "text");
+            generator.writeStringField("text", prompt.getSystem());
+            if (promptCacheEnabled) {
+                generator.writeObjectFieldStart("cache_control");
+                generator.writeStringField("type", "ephemeral");
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndArray();
+        }
+        
+        // Force the answer into the tool's input schema when one is given
+        if (prompt.getTool() != null) {
+            generator.writeArrayFieldStart("tools");
+            generator.writeTree(prompt.getTool());
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("tool_choice");
+            generator.writeStringField("type", "tool");
+            generator.writeStringField("name", prompt.getTool().path("name").asText());
+            generator.writeEndObject();
+        }
+        
+        // Create messages array with the user message
+        generator.writeArrayFieldStart("messages");
+        generator.writeStartObject();
+        generator.writeStringField("role", "user");
+        generator.writeStringField("content", prompt.getUser());
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * Sets the authentication and version headers of an API request.
+     *
+     * @param request The request
+     */
+    private void setHeaders(HttpUriRequestBase request) {
+        request.setHeader("x-api-key", apiKey);
+        request.setHeader("anthropic-version", ANTHROPIC_VERSION);
+        request.setHeader("Content-Type", "application/json");
+    }
+    
+    /**
+     * Executes a request and parses its JSON response.
+     *
+     * @param request The request
+     * @return The response body
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    private JsonNode executeJson(HttpUriRequestBase request) throws IOException {
+        return executeJson(request, true);
+    }
+    
+    /**
+     * Executes a request and parses its JSON response.
+     *
+     * @param request The request
+     * @param runCancellable Whether cancelling the run aborts the request
+     * @return The response body
+     * @throws ApiException If the API answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    private JsonNode executeJson(HttpUriRequestBase request, boolean runCancellable) throws IOException {
+        try {
+            return executeWithDeadline(request, requestDeadlineMs, null, runCancellable, () -> {
+                return httpClient.execute(request, response -> {
+                    String responseBody = EntityUtils.toString(response.getEntity());
+                    checkStatus(response, responseBody);
+                    return objectMapper.readTree(responseBody);
+                });
+            });
+        } catch (ApiException e) {
+            throw e;
+        } catch (ParseException e) {
+            throw new IOException("Error reading response of " + request.getRequestUri(), e);
+        }
+    }
+    
+    /**
+     * Throws an ApiException if a response has an error status.
+     *
+     * @param response The HTTP response
+     * @param responseBody The response body
+     * @throws ApiException If the status is not 200
+     */
+    private static void checkStatus(HttpResponse response, String responseBody) throws ApiException {
+        int statusCode = response.getCode();
+        if (statusCode != 200) {
+            log.error("API request failed with status code {}: {}", statusCode, responseBody);
+            throw new ApiException(statusCode, parseRetryAfter(response.getFirstHeader("retry-after")),
+                    "API request failed with status code " + statusCode);
+        }
+    }
+    
+    /**
+     * Reads the text content, stop reason and token usage of a message with a streaming parser,
+     * so the text is copied once from the response into the result. Only the input of a tool call,
+     * which is small, is read as a tree.
+     *
+     * @param parser The parser, positioned before the message object
+     * @return A response builder holding the text and usage
+     * @throws IOException If the message cannot be read or has no content
+     */
+    private static ApiResponse.ApiResponseBuilder readMessage(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected API response format");
+        }
+        
+        ApiResponse.ApiResponseBuilder builder = ApiResponse.builder();
+        StringBuilder text = new StringBuilder();
+        String toolInput = null;
+        int contentBlocks = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "content" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        contentBlocks++;
+                        String type = null;
+                        String blockText = null;
+                        String input = null;
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String blockField = parser.getCurrentName();
+                            parser.nextToken();
+                            switch (blockField) {
+                                case "type" -> type = parser.getText();
+                                case "text" -> blockText = parser.getText();
+                                case "input" -> input = parser.readValueAsTree().toString();
+                                default -> parser.skipChildren();
+                            }
+                        }
+                        if (blockText != null) {
+                            text.append(blockText);
+                        } else if ("tool_use".equals(type)) {
+                            toolInput = input;
+                        }
+                    }
+                }
+                case "stop_reason" -> builder.stopReason(value == JsonToken.VALUE_NULL ? null : parser.getText());
+                case "usage" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String usageField = parser.getCurrentName();
+                        parser.nextToken();
+                        switch (usageField) {
+                            case "input_tokens" -> builder.inputTokens(parser.getValueAsInt());
+                            case "output_tokens" -> builder.outputTokens(parser.getValueAsInt());
+                            case "cache_creation_input_tokens" -> builder.cacheCreationInputTokens(parser.getValueAsInt());
+                            case "cache_read_input_tokens" -> builder.cacheReadInputTokens(parser.getValueAsInt());
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        
+        if (contentBlocks == 0) {
+            log.error("Unexpected API response format: message without content");
+            throw new IOException("Unexpected API response format");
+        }
+        return builder.text(text.toString()).toolInput(toolInput);
+    }
+    
+    /**
+     * Parses a Message Batches API job object.
+     *
+     * @param json The job object
+     * @return The state of the job
+     */
+    private static MessageBatch parseMessageBatch(JsonNode json) {
+        JsonNode counts = json.path("request_counts");
+        return MessageBatch.builder()
+                .id(json.path("id").asText())
+                .processingStatus(json.path("processing_status").asText())
+                .resultsUrl(json.hasNonNull("results_url") ? json.get("results_url").asText() : null)
+                .processingCount(counts.path("processing").asInt())
+                .succeededCount(counts.path("succeeded").asInt())
+                .erroredCount(counts.path("errored").asInt() + counts.path("canceled").asInt() + counts.path("expired").asInt())
+                .build();
+    }
+    
+    /**
+     * Parses a line of a Message Batches API results file.
+     *
+     * @param json The result object
+     * @return The result
+     * @throws IOException If the message of a succeeded result cannot be read
+     */
+    private MessageBatchResult parseMessageBatchResult(JsonNode json) throws IOException {
+        JsonNode result = json.path("result");
+        MessageBatchResult.MessageBatchResultBuilder builder = MessageBatchResult.builder()
+                .customId(json.path("custom_id").asText())
+                .type(result.path("type").asText());
+        
+        if (MessageBatchResult.TYPE_SUCCEEDED.equals(result.path("type").asText())) {
+            builder.message(readMessage(result.path("message").traverse(objectMapper)).build());
+        } else if (result.has("error")) {
+            JsonNode error = result.path("error").path("error");
+            builder.error(error.isMissingNode() ? result.path("error").toString() : error.path("message").asText());
         }
+        return builder.build();
     }
     
     /**
-     * Creates a message object for the API request.
+     * Parses the {@code retry-after} header, which holds a number of seconds.
      *
-     * @param content The message content
-     * @return The message object
-     */
-    private ObjectNode createMessage(String content) {
-        ObjectNode message = objectMapper.createObjectNode();
-        message.put("role", "user");
-        message.put("content", content);
-        return message;
+     * @param header The header, or null
+     * @return The delay in milliseconds, or -1 if absent or not a number
+     */
+    private static long parseRetryAfter(Header header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return (long) (Double.parseDouble(header.getValue().trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+    
+    /**
+     * Parses a numeric rate-limit header.
+     *
+     * @param response The HTTP response
+     * @param name The header name without the {@code anthropic-ratelimit-} prefix
+     * @return The value, or null if absent or not a number
+     */
+    private static Long parseLongHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(RATE_LIMIT_HEADER_PREFIX + name);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(header.getValue().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Parses an RFC 3339 timestamp rate-limit header.
+     *
+     * @param response The HTTP response
+     * @param name The header name without the {@code anthropic-ratelimit-} prefix
+     * @return The value, or null if absent or malformed
+     */
+    private static Instant parseInstantHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(RATE_LIMIT_HEADER_PREFIX + name);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(header.getValue().trim()).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
     }
 }
@@ -0,0 +1,49 @@
+package com.docanalyzer.ai;
+
+import java.io.IOException;
+
+/**
+ * Signals that the Anthropic API answered a request with an error status.
+ */
+public class ApiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterMs;
+
+    /**
+     * Creates a new ApiException.
+     *
+     * @param statusCode The HTTP status code of the response
+     * @param retryAfterMs The delay requested by the {@code retry-after} header in milliseconds, or -1 if absent
+     * @param message The error message
+     */
+    public ApiException(int statusCode, long retryAfterMs, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the delay the server asked for before the next request.
+     *
+     * @return The delay in milliseconds, or -1 if the server did not send one
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * Checks whether the request was rejected by the rate limiter.
+     *
+     * @return True for status 429
+     */
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+}
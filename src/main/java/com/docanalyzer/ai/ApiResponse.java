@@ -0,0 +1,99 @@
+package com.docanalyzer.ai;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * A successful response of the Anthropic Messages API: the generated text, the token usage and
+ * the rate-limit state reported in the response headers.
+ */
+@Data
+@Builder(toBuilder = true)
+public class ApiResponse {
+
+    /**
+     * The stop reason of a response that hit the output token limit.
+     */
+    public static final String STOP_REASON_MAX_TOKENS = "max_tokens";
+
+    /**
+     * The concatenated text content of the response.
+     */
+    private String text;
+
+    /**
+     * The JSON input of the tool call the model answered with, or null if it answered with text.
+     */
+    private String toolInput;
+
+    /**
+     * Why generation stopped: "end_turn", "tool_use", "max_tokens", ..., or null if not reported.
+     */
+    private String stopReason;
+
+    /**
+     * The number of uncached input tokens of the request.
+     */
+    private int inputTokens;
+    
+    /**
+     * The number of input tokens written to the prompt cache.
+     */
+    private int cacheCreationInputTokens;
+    
+    /**
+     * The number of input tokens read from the prompt cache.
+     */
+    private int cacheReadInputTokens;
+
+    /**
+     * The number of output tokens generated.
+     */
+    private int outputTokens;
+
+    /**
+     * Requests left in the current rate-limit window, or null if not reported.
+     */
+    private Long requestsRemaining;
+
+    /**
+     * When the request limit is fully replenished, or null if not reported.
+     */
+    private Instant requestsReset;
+
+    /**
+     * Input tokens left in the current rate-limit window, or null if not reported.
+     */
+    private Long inputTokensRemaining;
+
+    /**
+     * When the input token limit is fully replenished, or null if not reported.
+     */
+    private Instant inputTokensReset;
+
+    /**
+     * Output tokens left in the current rate-limit window, or null if not reported.
+     */
+    private Long outputTokensRemaining;
+
+    /**
+     * When the output token limit is fully replenished, or null if not reported.
+     */
+    private Instant outputTokensReset;
+
+    /**
+     * How long the request took, from sending it until the complete response was read.
+     */
+    private long latencyMs;
+
+    /**
+     * Checks whether generation stopped at the output token limit, so the answer is cut off.
+     *
+     * @return True if the response is truncated
+     */
+    public boolean isTruncated() {
+        return STOP_REASON_MAX_TOKENS.equals(stopReason);
+    }
+}
@@ -0,0 +1,82 @@
+package com.docanalyzer.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancels a single request, e.g. the slower of two hedged requests, without affecting other
+ * requests of the same client. Thread-safe.
+ */
+public class CancellationToken {
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private final long connectionWaitMs;
+    private boolean cancelled;
+
+    /**
+     * Creates a token for a request that waits for a connection as long as the client allows.
+     */
+    public CancellationToken() {
+        this(0);
+    }
+
+    /**
+     * Creates a token for a request that is only worth sending right away, such as a hedge.
+     *
+     * @param connectionWaitMs The longest time the request may wait for a pooled connection before
+     *                         it fails, or 0 for the client's default
+     */
+    public CancellationToken(long connectionWaitMs) {
+        this.connectionWaitMs = connectionWaitMs;
+    }
+
+    /**
+     * Gets the longest time the request may wait for a pooled connection.
+     *
+     * @return The wait in milliseconds, or 0 for the client's default
+     */
+    public long getConnectionWaitMs() {
+        return connectionWaitMs;
+    }
+
+    /**
+     * Cancels the request: the registered callbacks abort it if it is in flight.
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(Runnable::run);
+    }
+
+    /**
+     * Checks whether the request has been cancelled.
+     *
+     * @return True once {@link #cancel()} has been called
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registers a callback that aborts the request. It runs at once if the request has already
+     * been cancelled.
+     *
+     * @param callback The callback
+     */
+    public void onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+}
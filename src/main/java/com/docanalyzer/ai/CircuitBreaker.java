@@ -0,0 +1,184 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses dispatch to the API while it is failing.
+ * <p>
+ * The breaker tracks the outcome of the most recent calls. When the failure rate over that window
+ * reaches the threshold it opens, and callers block in {@link #acquirePermission()} instead of
+ * sending requests. After the open period a single trial call is let through: success closes the
+ * breaker, failure opens it again. A call that is cancelled says nothing about the API and only
+ * gives its permission back.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    /**
+     * The breaker states.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] outcomes;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int recordedCalls;
+    private int nextOutcome;
+    private int failures;
+    private long openUntilNanos;
+    private boolean trialInFlight;
+    private int timesOpened;
+
+    /**
+     * Creates a new CircuitBreaker with the settings of the configuration.
+     *
+     * @param config The configuration
+     */
+    public CircuitBreaker(Configuration config) {
+        this(config.getCircuitBreakerWindowSize(), config.getCircuitBreakerFailureRate(), config.getCircuitBreakerOpenMs());
+    }
+
+    /**
+     * Creates a new CircuitBreaker.
+     *
+     * @param windowSize The number of recent calls the failure rate is computed over
+     * @param failureRateThreshold The failure rate (0-1) at which the breaker opens
+     * @param openMs How long the breaker stays open before a trial call
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openMs) {
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, outcomes.length / 2);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    /**
+     * Waits until a call may be sent: immediately while closed, after the open period when open,
+     * and while half-open only once the trial call has completed.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public synchronized void acquirePermission() throws InterruptedIOException {
+        try {
+            while (true) {
+                if (state == State.CLOSED) {
+                    return;
+                }
+
+                long now = System.nanoTime();
+                if (state == State.OPEN && now >= openUntilNanos) {
+                    state = State.HALF_OPEN;
+                    log.info("Circuit breaker half-open, sending a trial request");
+                }
+
+                if (state == State.HALF_OPEN && !trialInFlight) {
+                    trialInFlight = true;
+                    return;
+                }
+
+                long waitNanos = state == State.OPEN ? openUntilNanos - now : openNanos;
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while the circuit breaker was open");
+        }
+    }
+
+    /**
+     * Records a call that reached a healthy API, including calls rejected for client errors.
+     */
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info("Circuit breaker closed, resuming dispatch");
+            state = State.CLOSED;
+            trialInFlight = false;
+            resetWindow();
+            notifyAll();
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * Records a call that failed because the API was unavailable or overloaded.
+     */
+    public synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            open();
+            return;
+        }
+
+        record(true);
+        if (state == State.CLOSED && recordedCalls >= minimumCalls
+                && (double) failures / recordedCalls >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Releases the permission of a call that ended without an outcome, such as a cancelled or
+     * interrupted call. A half-open trial is handed to the next caller without closing the breaker.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && trialInFlight) {
+            trialInFlight = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets how often the breaker has opened.
+     *
+     * @return The number of times the breaker opened
+     */
+    public synchronized int getTimesOpened() {
+        return timesOpened;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntilNanos = System.nanoTime() + openNanos;
+        timesOpened++;
+        resetWindow();
+        notifyAll();
+        log.warn("Circuit breaker open, pausing dispatch for {} ms", TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == outcomes.length) {
+            if (outcomes[nextOutcome]) {
+                failures--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        outcomes[nextOutcome] = failure;
+        if (failure) {
+            failures++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+    }
+
+    private void resetWindow() {
+        recordedCalls = 0;
+        nextOutcome = 0;
+        failures = 0;
+    }
+}
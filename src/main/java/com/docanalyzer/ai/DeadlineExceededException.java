@@ -0,0 +1,28 @@
+package com.docanalyzer.ai;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Signals that a request was aborted because it did not complete within its deadline. Like other
+ * timeouts it is transient, so the request is retried.
+ */
+public class DeadlineExceededException extends SocketTimeoutException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long deadlineMs;
+
+    /**
+     * Creates a new DeadlineExceededException.
+     *
+     * @param deadlineMs The deadline the request exceeded, in milliseconds
+     */
+    public DeadlineExceededException(long deadlineMs) {
+        super("Request did not complete within its deadline of " + deadlineMs + " ms");
+        this.deadlineMs = deadlineMs;
+    }
+
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+}
@@ -0,0 +1,252 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.util.TokenCounter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process provider for benchmarks and load tests that answers evaluation prompts without
+ * network access or token costs. It reads the methods and metrics from the prompt and returns
+ * well-formed evaluations in the format the prompt asks for, as formatted text or as the input
+ * of the evaluation tool, so the whole pipeline runs as it would against the API.
+ * <p>
+ * Requests take a log-normally distributed time to the first token plus the time to generate
+ * the output at the configured speed; streamed responses are delivered in chunks over that time.
+ * A configurable share of requests fails with an overloaded error or is rejected as rate
+ * limited, and responses longer than the output token limit are truncated, to exercise the
+ * retry, throttling and splitting paths. Thread-safe.
+ */
+@Slf4j
+public class FakeLlmClient implements LlmClient {
+
+    private static final Pattern METHOD_PATTERN = Pattern.compile("^METHOD (\\d+):\\n```java\\n([^\\n]*)", Pattern.MULTILINE);
+    private static final Pattern METHOD_NAME_PATTERN = Pattern.compile("(\\w+)\\s*\\(");
+    private static final Pattern METRIC_FORMAT_PATTERN = Pattern.compile("^([A-Za-z][A-Za-z ]+): \\[rating score\\]$", Pattern.MULTILINE);
+    private static final String STOP_REASON_END_TURN = "end_turn";
+    private static final String STOP_REASON_TOOL_USE = "tool_use";
+    private static final int STREAM_CHUNK_CHARS = 64;
+    private static final long THROTTLE_RETRY_AFTER_MS = 1000;
+
+    private final long latencyMs;
+    private final double latencySigma;
+    private final int outputTokensPerSecond;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int maxTokens;
+    private final TokenCounter tokenCounter;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a new FakeLlmClient with the specified configuration.
+     *
+     * @param config The configuration
+     */
+    public FakeLlmClient(Configuration config) {
+        this.latencyMs = Math.max(0, config.getFakeLatencyMs());
+        this.latencySigma = Math.max(0, config.getFakeLatencySigma());
+        this.outputTokensPerSecond = Math.max(0, config.getFakeOutputTokensPerSecond());
+        this.errorRate = config.getFakeErrorRate();
+        this.throttleRate = config.getFakeThrottleRate();
+        this.maxTokens = config.getMaxTokens();
+        this.tokenCounter = new TokenCounter();
+        this.objectMapper = new ObjectMapper();
+        log.info("Using the fake LLM provider: median latency {} ms, {} output tokens/s, error rate {}, throttle rate {}",
+                latencyMs, outputTokensPerSecond, errorRate, throttleRate);
+    }
+
+    @Override
+    public ApiResponse sendMessage(Prompt prompt) throws IOException {
+        return streamMessage(prompt, null);
+    }
+
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+        long startNanos = System.nanoTime();
+        failRandomly();
+
+        boolean tool = prompt.getTool() != null;
+        String content = tool ? generateToolInput(prompt) : generateText(prompt);
+        String stopReason = tool ? STOP_REASON_TOOL_USE : STOP_REASON_END_TURN;
+        if (tokenCounter.estimateTokenCount(content) > maxTokens) {
+            content = tokenCounter.truncateToTokenLimit(content, maxTokens);
+            stopReason = ApiResponse.STOP_REASON_MAX_TOKENS;
+        }
+
+        sleep(sampleLatencyMs());
+        if (textConsumer == null) {
+            sleep(generationMs(content));
+        } else {
+            for (int start = 0; start < content.length(); start += STREAM_CHUNK_CHARS) {
+                String chunk = content.substring(start, Math.min(content.length(), start + STREAM_CHUNK_CHARS));
+                sleep(generationMs(chunk));
+                textConsumer.accept(chunk);
+            }
+        }
+
+        return ApiResponse.builder()
+                .text(tool ? "" : content)
+                .toolInput(tool ? content : null)
+                .stopReason(stopReason)
+                .inputTokens(prompt.estimateTokens(tokenCounter))
+                .outputTokens(tokenCounter.estimateTokenCount(content))
+                .latencyMs((System.nanoTime() - startNanos) / 1_000_000)
+                .build();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Fails the request with the configured probabilities, the way the API does under load.
+     *
+     * @throws ApiException If the request is chosen to fail
+     */
+    private void failRandomly() throws ApiException {
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < throttleRate) {
+            throw new ApiException(429, THROTTLE_RETRY_AFTER_MS, "Rate limit exceeded (fake provider)");
+        }
+        if (draw < throttleRate + errorRate) {
+            throw new ApiException(529, -1, "Overloaded (fake provider)");
+        }
+    }
+
+    /**
+     * Draws the time to the first token from a log-normal distribution with the configured median.
+     *
+     * @return The latency in milliseconds
+     */
+    private long sampleLatencyMs() {
+        if (latencyMs == 0 || latencySigma == 0) {
+            return latencyMs;
+        }
+        return Math.round(latencyMs * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private long generationMs(String output) {
+        return outputTokensPerSecond == 0 ? 0 : tokenCounter.estimateTokenCount(output) * 1000L / outputTokensPerSecond;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating the fake response");
+        }
+    }
+
+    /**
+     * Generates the formatted text evaluations of all methods of the prompt.
+     *
+     * @param prompt The prompt
+     * @return The response text
+     */
+    private String generateText(Prompt prompt) {
+        List<String> metrics = new ArrayList<>();
+        Matcher metricMatcher = METRIC_FORMAT_PATTERN.matcher(prompt.getSystem() == null ? "" : prompt.getSystem());
+        while (metricMatcher.find()) {
+            metrics.add(metricMatcher.group(1));
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, String> method : methods(prompt).entrySet()) {
+            if (!text.isEmpty()) {
+                text.append("---\n\n");
+            }
+            String name = method.getValue();
+            Random random = new Random(name.hashCode());
+            text.append("METHOD ").append(method.getKey()).append(" [").append(name).append("] EVALUATION:\n");
+            for (String metric : metrics) {
+                text.append(metric).append(": ").append(1 + random.nextInt(5)).append("\n");
+                text.append("Justification: ").append(justification(name, metric)).append("\n\n");
+            }
+            text.append("Overall Assessment: The documentation of ").append(name).append(" is usable but incomplete.\n\n");
+            text.append("Recommendations:\n");
+            List<String> recommendations = recommendations(name);
+            for (int i = 0; i < recommendations.size(); i++) {
+                text.append(i + 1).append(". ").append(recommendations.get(i)).append("\n");
+            }
+            text.append("\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates the input of the evaluation tool for all methods of the prompt.
+     *
+     * @param prompt The prompt
+     * @return The tool input JSON
+     */
+    private String generateToolInput(Prompt prompt) {
+        List<String> metrics = new ArrayList<>();
+        JsonNode names = prompt.getTool().at("/input_schema/properties/evaluations/items/properties/metrics/items/properties/name/enum");
+        names.forEach(name -> metrics.add(name.asText()));
+
+        ObjectNode input = objectMapper.createObjectNode();
+        ArrayNode evaluations = input.putArray("evaluations");
+        for (Map.Entry<Integer, String> method : methods(prompt).entrySet()) {
+            String name = method.getValue();
+            Random random = new Random(name.hashCode());
+            ObjectNode evaluation = evaluations.addObject();
+            evaluation.put("method", method.getKey());
+            ArrayNode metricScores = evaluation.putArray("metrics");
+            for (String metric : metrics) {
+                metricScores.addObject()
+                        .put("name", metric)
+                        .put("score", 1 + random.nextInt(5))
+                        .put("justification", justification(name, metric));
+            }
+            ArrayNode recommendations = evaluation.putArray("recommendations");
+            recommendations(name).forEach(recommendations::add);
+        }
+        return input.toString();
+    }
+
+    /**
+     * Reads the numbers and names of the methods from the prompt.
+     *
+     * @param prompt The prompt
+     * @return The method names by method number, in prompt order
+     */
+    private static Map<Integer, String> methods(Prompt prompt) {
+        Map<Integer, String> methods = new LinkedHashMap<>();
+        Matcher matcher = METHOD_PATTERN.matcher(prompt.getUser());
+        while (matcher.find()) {
+            Matcher name = METHOD_NAME_PATTERN.matcher(matcher.group(2));
+            methods.put(Integer.parseInt(matcher.group(1)), name.find() ? name.group(1) : "method" + matcher.group(1));
+        }
+        return methods;
+    }
+
+    private static String justification(String method, String metric) {
+        return "The Javadoc of " + method + " covers the " + metric.toLowerCase()
+                + " aspects of its purpose, but the parameters, return value and exceptions are described only briefly.";
+    }
+
+    private static List<String> recommendations(String method) {
+        return List.of("Describe each parameter of " + method + " and its valid values.",
+                "Document the exceptions " + method + " throws and when.");
+    }
+}
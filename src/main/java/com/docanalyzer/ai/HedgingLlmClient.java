@@ -0,0 +1,513 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.RunStatistics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cuts the tail latency of another client with hedged requests. A request that has not answered
+ * by the configured percentile of the latencies observed so far is sent a second time, the first
+ * of the two to answer is used and the other one is cancelled. A streamed request is hedged when
+ * it has not started answering by the percentile of the observed times to the first delta, and the
+ * winner is the first to deliver a delta, so the consumer only ever sees the deltas of one of them.
+ * <p>
+ * Hedging starts once enough latencies have been observed and is capped at a share of all
+ * requests, so a generally slow API is not sent twice the traffic. The caller can send both
+ * attempts of a request through an {@link AttemptSender}, which keeps the hedge within the rate
+ * limits and the budget of the run and charges the cost of the attempt that lost. Hedged requests
+ * and the hedges that won are counted in the run statistics. Thread-safe.
+ */
+@Slf4j
+public class HedgingLlmClient implements LlmClient {
+
+    /**
+     * The number of most recent latencies the percentile is taken from.
+     */
+    static final int LATENCY_WINDOW_SIZE = 200;
+
+    /**
+     * The longest time a hedge waits for a pooled connection. A hedge that cannot be sent right
+     * away would not answer sooner than the request it duplicates, so it is dropped instead.
+     */
+    static final long HEDGE_CONNECTION_WAIT_MS = 100;
+
+    /**
+     * Sends the attempts of a hedged request, e.g. within the rate limits and the budget of a run.
+     * The original request and its hedge are sent from different threads.
+     */
+    public interface AttemptSender {
+
+        /**
+         * Sends the original request.
+         *
+         * @param call Sends the request
+         * @return The response
+         * @throws IOException If the request fails
+         */
+        ApiResponse send(RequestScheduler.ApiCall call) throws IOException;
+
+        /**
+         * Sends the hedge of a request, unless the limits of the run do not allow it.
+         *
+         * @param call Sends the hedge
+         * @return The response, or null if the hedge may not be sent
+         * @throws IOException If the hedge fails
+         */
+        ApiResponse sendHedge(RequestScheduler.ApiCall call) throws IOException;
+    }
+
+    /**
+     * Sends both attempts right away, without limits.
+     */
+    private static final AttemptSender DIRECT = new AttemptSender() {
+        @Override
+        public ApiResponse send(RequestScheduler.ApiCall call) throws IOException {
+            return call.call();
+        }
+
+        @Override
+        public ApiResponse sendHedge(RequestScheduler.ApiCall call) throws IOException {
+            return call.call();
+        }
+    };
+
+    private final LlmClient delegate;
+    private final double latencyPercentile;
+    private final double maxRatio;
+    private final int minSamples;
+    private final RunStatistics runStatistics;
+    private final ExecutorService executor;
+    private final LatencyWindow responseLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+    private final LatencyWindow firstDeltaLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+    private long requests;
+    private long hedges;
+    private int runningAttempts;
+
+    /**
+     * Creates a new HedgingLlmClient.
+     *
+     * @param delegate The client whose requests are hedged
+     * @param config The configuration
+     * @param runStatistics The statistics the hedged requests are counted in
+     */
+    public HedgingLlmClient(LlmClient delegate, Configuration config, RunStatistics runStatistics) {
+        this.delegate = delegate;
+        this.latencyPercentile = Math.min(1.0, Math.max(0.0, config.getHedgeLatencyPercentile()));
+        this.maxRatio = Math.max(0.0, config.getHedgeMaxRatio());
+        this.minSamples = Math.max(1, config.getHedgeMinSamples());
+        this.runStatistics = runStatistics;
+        this.executor = createExecutor(config, maxRatio);
+        log.info("Hedging requests slower than the p{} latency, at most {}% of requests",
+                Math.round(latencyPercentile * 100), Math.round(maxRatio * 100));
+    }
+
+    /**
+     * Creates the executor the attempts run on. It has a thread for every concurrent batch
+     * request plus the same room for hedges as the connection pool of the client, and further
+     * attempts queue for a thread. Idle threads end after a while.
+     *
+     * @param config The configuration
+     * @param maxRatio The maximum share of hedged requests
+     * @return The executor
+     */
+    private static ExecutorService createExecutor(Configuration config, double maxRatio) {
+        int inflight = Math.max(1, config.getBatchMaxInflight());
+        int threads = inflight + Math.max(1, (int) Math.ceil(inflight * maxRatio));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Thread.ofPlatform().name("hedged-request-", 1).daemon(true).factory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public ApiResponse sendMessage(Prompt prompt) throws IOException {
+        return sendMessage(prompt, DIRECT);
+    }
+
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+        return streamMessage(prompt, textConsumer, DIRECT);
+    }
+
+    /**
+     * Sends a prompt, hedging it if it is slow.
+     *
+     * @param prompt The prompt to send
+     * @param sender Sends the original request and its hedge
+     * @return The response of the request that answered first
+     * @throws IOException If the request fails, or both requests fail if it was hedged
+     */
+    public ApiResponse sendMessage(Prompt prompt, AttemptSender sender) throws IOException {
+        return execute(prompt, null, responseLatencies, sender);
+    }
+
+    /**
+     * Streams a prompt, hedging it if it is slow to start answering. The consumer is not reset
+     * between the attempts, as it only receives the deltas of the request that answered first.
+     *
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the text and tool input deltas in order
+     * @param sender Sends the original request and its hedge
+     * @return The response of the request that started answering first
+     * @throws IOException If the request fails, or both requests fail if it was hedged
+     */
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer, AttemptSender sender)
+            throws IOException {
+        return execute(prompt, textConsumer, firstDeltaLatencies, sender);
+    }
+
+    @Override
+    public void cancelAll() {
+        delegate.cancelAll();
+    }
+
+    /**
+     * Waits until the requests that lost their race have ended as well. They are cancelled as soon
+     * as the other request answers, but their outcome, such as the cost of a cancelled request, is
+     * only known once they have ended.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized void awaitAttempts() throws InterruptedException {
+        while (runningAttempts > 0) {
+            wait();
+        }
+    }
+
+    long responseLatencyPercentile(double percentile) {
+        return responseLatencies.percentile(percentile, 1);
+    }
+
+    private synchronized void attemptStarted() {
+        runningAttempts++;
+    }
+
+    private synchronized void attemptEnded() {
+        if (--runningAttempts == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the requests in flight and closes the hedged client.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        delegate.close();
+    }
+
+    /**
+     * Sends a request and hedges it if it is slow.
+     *
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the deltas of the winning request, or null to send the request unstreamed
+     * @param latencies The latencies the hedge delay is taken from and those of the attempts are added to
+     * @param sender Sends the original request and its hedge
+     * @return The response of the winning request
+     * @throws IOException If the request fails, or both requests fail if it was hedged
+     */
+    private ApiResponse execute(Prompt prompt, Consumer<String> textConsumer, LatencyWindow latencies,
+                                AttemptSender sender) throws IOException {
+        long hedgeDelayMs = latencies.percentile(latencyPercentile, minSamples);
+        synchronized (this) {
+            requests++;
+        }
+
+        Race race = new Race(prompt, textConsumer, latencies, sender);
+        race.start();
+        try {
+            if (hedgeDelayMs >= 0 && !race.awaitWinner(hedgeDelayMs) && race.hedge()) {
+                log.debug("Hedged a request that has not answered within {} ms", hedgeDelayMs);
+            }
+            return race.awaitResult();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.cancel();
+            throw new RequestCancelledException("Hedged request interrupted");
+        }
+    }
+
+    /**
+     * Reserves a hedge if the share of hedged requests stays within the limit.
+     *
+     * @return True if the request may be hedged
+     */
+    private synchronized boolean reserveHedge() {
+        if (hedges + 1 > maxRatio * requests) {
+            return false;
+        }
+        hedges++;
+        return true;
+    }
+
+    /**
+     * A request and its hedge, racing for the first answer. The winner is decided by the first
+     * delta of a streamed request or by the response of an unstreamed one; the other request is
+     * cancelled then and its outcome ignored.
+     */
+    private final class Race {
+
+        private final Prompt prompt;
+        private final Consumer<String> textConsumer;
+        private final LatencyWindow latencies;
+        private final AttemptSender sender;
+        private final CancellationToken[] cancellations = {
+                new CancellationToken(), new CancellationToken(HEDGE_CONNECTION_WAIT_MS)};
+        private final boolean[] answered = new boolean[2];
+        private long sentNanos;
+        private boolean sent;
+        private int started;
+        private int failed;
+        private int winner = -1;
+        private boolean hedgeSent;
+        private boolean done;
+        private ApiResponse response;
+        private Throwable failure;
+
+        Race(Prompt prompt, Consumer<String> textConsumer, LatencyWindow latencies, AttemptSender sender) {
+            this.prompt = prompt;
+            this.textConsumer = textConsumer;
+            this.latencies = latencies;
+            this.sender = sender;
+        }
+
+        /**
+         * Sends the original request.
+         */
+        synchronized void start() {
+            launch();
+        }
+
+        /**
+         * Sends the hedge, unless the race is already decided or the hedge limit is reached.
+         *
+         * @return True if the hedge was sent
+         */
+        synchronized boolean hedge() {
+            if (winner >= 0 || done || !reserveHedge()) {
+                return false;
+            }
+            launch();
+            return true;
+        }
+
+        private void launch() {
+            int attempt = started++;
+            attemptStarted();
+            try {
+                executor.execute(() -> run(attempt));
+            } catch (RuntimeException e) {
+                attemptEnded();
+                throw e;
+            }
+        }
+
+        private void run(int attempt) {
+            try {
+                RequestScheduler.ApiCall call = () -> call(attempt);
+                ApiResponse result = attempt == 0 ? sender.send(call) : sender.sendHedge(call);
+                if (result != null) {
+                    complete(attempt, result);
+                } else {
+                    fail(attempt, new RequestCancelledException("Hedge not sent, the limits of the run do not allow it"));
+                }
+            } catch (Throwable e) {
+                fail(attempt, e);
+            } finally {
+                attemptEnded();
+            }
+        }
+
+        private ApiResponse call(int attempt) throws IOException {
+            // A hedge may only get through the rate limits once the race is decided
+            if (cancellations[attempt].isCancelled()) {
+                throw new RequestCancelledException("Hedge not sent, the original request answered first");
+            }
+            sent(attempt);
+            return textConsumer == null
+                    ? delegate.sendMessage(prompt, cancellations[attempt])
+                    : delegate.streamMessage(prompt, delta -> forward(attempt, delta), cancellations[attempt]);
+        }
+
+        /**
+         * Starts the clock of the race once its first attempt, normally the original request, is
+         * past the rate limits, so that the time it was queued for does not count as latency.
+         *
+         * @param attempt The attempt
+         */
+        private synchronized void sent(int attempt) {
+            if (!sent) {
+                sent = true;
+                sentNanos = System.nanoTime();
+            }
+            if (attempt > 0 && !hedgeSent) {
+                hedgeSent = true;
+                runStatistics.recordHedged();
+            }
+        }
+
+        private void forward(int attempt, String delta) {
+            // Only the winner's thread gets past the claim, so the consumer is never called concurrently
+            if (claim(attempt)) {
+                textConsumer.accept(delta);
+            }
+        }
+
+        /**
+         * Makes the attempt the winner if there is none yet, and cancels the other one. The
+         * latency of every attempt that answers is recorded, a loser's as well, so that the window
+         * is not skewed towards the fast answers.
+         *
+         * @param attempt The attempt
+         * @return True if the attempt is the winner
+         */
+        private synchronized boolean claim(int attempt) {
+            if (!answered[attempt]) {
+                answered[attempt] = true;
+                latencies.record((System.nanoTime() - sentNanos) / 1_000_000);
+            }
+            if (winner < 0) {
+                winner = attempt;
+                if (attempt > 0) {
+                    runStatistics.recordHedgeWon();
+                }
+                for (int other = 0; other < started; other++) {
+                    if (other != attempt) {
+                        cancellations[other].cancel();
+                    }
+                }
+                notifyAll();
+            }
+            return winner == attempt;
+        }
+
+        private synchronized void complete(int attempt, ApiResponse result) {
+            if (claim(attempt)) {
+                response = result;
+                failure = null;
+                done = true;
+                notifyAll();
+            }
+        }
+
+        private synchronized void fail(int attempt, Throwable e) {
+            if (attempt > 0 && winner < 0) {
+                log.debug("Hedge failed, waiting for the original request: {}", e.getMessage());
+            }
+            if (winner == attempt) {
+                failure = e;
+                done = true;
+            } else if (winner < 0) {
+                // A failure only decides the race once no other attempt can still answer, and the
+                // error of the original request is the one reported
+                if (attempt == 0 || failure == null) {
+                    failure = e;
+                }
+                done = ++failed == started;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits until a winner is decided or all attempts failed.
+         *
+         * @param timeoutMs The longest time to wait in milliseconds
+         * @return True if the race was decided in time
+         * @throws InterruptedException If the thread is interrupted while waiting
+         */
+        synchronized boolean awaitWinner(long timeoutMs) throws InterruptedException {
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (winner < 0 && !done) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                wait(remainingMs);
+            }
+            return true;
+        }
+
+        /**
+         * Waits for the response of the winner.
+         *
+         * @return The response
+         * @throws IOException If the winner failed, or all attempts failed
+         * @throws InterruptedException If the thread is interrupted while waiting
+         */
+        synchronized ApiResponse awaitResult() throws IOException, InterruptedException {
+            while (!done) {
+                wait();
+            }
+            if (failure instanceof IOException e) {
+                throw e;
+            }
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+            if (failure instanceof Error e) {
+                throw e;
+            }
+            if (failure != null) {
+                throw new IOException("Hedged request failed", failure);
+            }
+            return response;
+        }
+
+        synchronized void cancel() {
+            for (int attempt = 0; attempt < started; attempt++) {
+                cancellations[attempt].cancel();
+            }
+        }
+    }
+
+    /**
+     * The most recent latencies, for their percentiles. Thread-safe.
+     */
+    static final class LatencyWindow {
+
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        /**
+         * Adds a latency, replacing the oldest one once the window is full.
+         *
+         * @param latencyMs The latency in milliseconds
+         */
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * Gets a percentile of the latencies in the window.
+         *
+         * @param percentile The percentile, between 0 and 1
+         * @param minSamples The number of latencies needed for a percentile
+         * @return The percentile in milliseconds, or -1 if there are fewer latencies than needed
+         */
+        synchronized long percentile(double percentile, int minSamples) {
+            if (count == 0 || count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
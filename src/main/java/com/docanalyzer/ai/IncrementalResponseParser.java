@@ -0,0 +1,87 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.model.MetricsResult;
+
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+
+/**
+ * Parses a batch response while it is being streamed. The evaluation of a method is complete as
+ * soon as the header of the next method arrives, so each result is handed out while the later
+ * methods are still being generated; the last one is handed out by {@link #finish()}.
+ * Evaluations are split and parsed exactly like {@link ResponseParser#parseBatchResponse}.
+ */
+public class IncrementalResponseParser implements ResultStreamParser {
+
+    private final ResponseParser responseParser;
+    private final BiConsumer<Integer, MetricsResult> resultConsumer;
+    private final StringBuilder buffer = new StringBuilder();
+    private int currentIndex = -1;
+    private int currentStart;
+    private int resultCount;
+
+    /**
+     * Creates a new IncrementalResponseParser.
+     *
+     * @param responseParser The parser for single method evaluations
+     * @param resultConsumer Receives the method index (starting at 1) and result of each complete evaluation
+     */
+    public IncrementalResponseParser(ResponseParser responseParser, BiConsumer<Integer, MetricsResult> resultConsumer) {
+        this.responseParser = responseParser;
+        this.resultConsumer = resultConsumer;
+    }
+
+    @Override
+    public void append(CharSequence delta) {
+        int previousLength = buffer.length();
+        buffer.append(delta);
+
+        // A header never spans lines, so one not found yet must start after the last complete line
+        int scanFrom = Math.max(currentStart, buffer.lastIndexOf("\n", previousLength) + 1);
+        Matcher matcher = ResponseParser.METHOD_PATTERN.matcher(buffer);
+        while (matcher.find(scanFrom)) {
+            if (currentIndex >= 0) {
+                emit(ResponseParser.extractEvaluation(buffer, currentStart, matcher.end()));
+            }
+
+            // Drop the completed evaluation so the buffer only holds the method being generated
+            int headerStart = matcher.start();
+            currentIndex = Integer.parseInt(matcher.group(1));
+            currentStart = matcher.end() - headerStart;
+            buffer.delete(0, headerStart);
+            scanFrom = currentStart;
+            matcher = ResponseParser.METHOD_PATTERN.matcher(buffer);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (currentIndex >= 0) {
+            emit(ResponseParser.extractEvaluation(buffer, currentStart, -1));
+            currentIndex = -1;
+        }
+        buffer.setLength(0);
+        currentStart = 0;
+    }
+
+    @Override
+    public void reset() {
+        buffer.setLength(0);
+        currentIndex = -1;
+        currentStart = 0;
+    }
+
+    /**
+     * Gets the number of evaluations handed out so far.
+     *
+     * @return The number of results
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    private void emit(String methodEvaluation) {
+        resultCount++;
+        resultConsumer.accept(currentIndex, responseParser.parseMethodEvaluation(methodEvaluation));
+    }
+}
@@ -0,0 +1,94 @@
+package com.docanalyzer.ai;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A JSON request body that is generated straight onto the connection while the request is sent.
+ * Large prompts are encoded from their strings into the connection buffer, instead of first being
+ * copied into a JSON tree, then into the JSON string and then into its bytes. The body is sent
+ * with chunked transfer encoding, as its length is not known in advance. The entity can be
+ * written any number of times.
+ */
+class JsonRequestEntity extends AbstractHttpEntity {
+
+    /**
+     * Writes the JSON body.
+     */
+    @FunctionalInterface
+    interface BodyWriter {
+
+        /**
+         * Writes the complete JSON value of the body.
+         *
+         * @param generator The generator writing to the connection
+         * @throws IOException If writing fails
+         */
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private final ObjectMapper objectMapper;
+    private final BodyWriter bodyWriter;
+
+    /**
+     * Creates a new JsonRequestEntity.
+     *
+     * @param objectMapper The object mapper, which writes the JSON trees embedded in the body
+     * @param bodyWriter Writes the body
+     */
+    JsonRequestEntity(ObjectMapper objectMapper, BodyWriter bodyWriter) {
+        super(ContentType.APPLICATION_JSON, null, true);
+        this.objectMapper = objectMapper;
+        this.bodyWriter = bodyWriter;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        // The connection owns the stream, so it is flushed here but left open
+        try (JsonGenerator generator = objectMapper.createGenerator(outputStream)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            bodyWriter.write(generator);
+        }
+    }
+
+    /**
+     * Generates the body into memory. Only used by code that reads an entity instead of writing it.
+     *
+     * @return The body
+     * @throws IOException If writing fails
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeTo(body);
+        return new ByteArrayInputStream(body.toByteArray());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        // Nothing is held between writes
+    }
+}
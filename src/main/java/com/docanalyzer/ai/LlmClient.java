@@ -0,0 +1,133 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * A provider of model responses for evaluation prompts. The batch processing only depends on
+ * this interface, so the pipeline can be run against the Anthropic API or, for benchmarks and
+ * load tests without network access or token costs, against {@link FakeLlmClient} or a
+ * recording of an earlier run served by {@link ReplayLlmClient}.
+ */
+public interface LlmClient extends Closeable {
+
+    /**
+     * The provider that sends requests to the Anthropic Messages API.
+     */
+    String PROVIDER_ANTHROPIC = "anthropic";
+
+    /**
+     * The in-process provider that generates evaluations locally.
+     */
+    String PROVIDER_FAKE = "fake";
+
+    /**
+     * The provider that serves responses from a recording of an earlier run.
+     */
+    String PROVIDER_REPLAY = "replay";
+
+    /**
+     * Sends a prompt and waits for the complete response.
+     *
+     * @param prompt The prompt to send
+     * @return The response
+     * @throws ApiException If the provider answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    ApiResponse sendMessage(Prompt prompt) throws IOException;
+
+    /**
+     * Sends a prompt and hands each piece of the generated text, or of the tool input JSON if the
+     * prompt has a tool, to the consumer as soon as it is generated.
+     *
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the text and tool input deltas in order
+     * @return The response, with the complete text
+     * @throws ApiException If the provider answers with an error status
+     * @throws IOException If an error occurs during the request
+     */
+    ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException;
+
+    /**
+     * Sends a prompt that can be aborted on its own, e.g. as the losing half of a hedged request.
+     * Clients that answer locally ignore the token and finish the request.
+     *
+     * @param prompt The prompt to send
+     * @param cancellation Aborts the request
+     * @return The response
+     * @throws ApiException If the provider answers with an error status
+     * @throws IOException If an error occurs during the request, or it is cancelled
+     */
+    default ApiResponse sendMessage(Prompt prompt, CancellationToken cancellation) throws IOException {
+        return sendMessage(prompt);
+    }
+
+    /**
+     * Streams a prompt that can be aborted on its own, e.g. as the losing half of a hedged request.
+     * Clients that answer locally ignore the token and finish the request.
+     *
+     * @param prompt The prompt to send
+     * @param textConsumer Receives the text and tool input deltas in order
+     * @param cancellation Aborts the request
+     * @return The response, with the complete text
+     * @throws ApiException If the provider answers with an error status
+     * @throws IOException If an error occurs during the request, or it is cancelled
+     */
+    default ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer, CancellationToken cancellation)
+            throws IOException {
+        return streamMessage(prompt, textConsumer);
+    }
+
+    /**
+     * Aborts the requests in flight and fails every later request with a
+     * {@link RequestCancelledException}, when the run is aborted. Clients that answer locally
+     * finish their requests instead.
+     */
+    default void cancelAll() {
+        // Local requests complete quickly
+    }
+
+    /**
+     * Releases the resources of the client.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates the client of the configured provider. If a recording path is configured, the
+     * exchanges of the client are recorded there.
+     *
+     * @param config The configuration
+     * @return The client
+     * @throws IllegalArgumentException If the provider is unknown
+     * @throws UncheckedIOException If the recording cannot be opened
+     */
+    static LlmClient create(Configuration config) {
+        String provider = config.getLlmProvider();
+        try {
+            if (PROVIDER_REPLAY.equalsIgnoreCase(provider)) {
+                return new ReplayLlmClient(Path.of(config.getLlmReplayPath()), config.isLlmReplayTiming());
+            }
+
+            LlmClient client;
+            if (provider == null || provider.isBlank() || PROVIDER_ANTHROPIC.equalsIgnoreCase(provider)) {
+                client = new AnthropicClient(config);
+            } else if (PROVIDER_FAKE.equalsIgnoreCase(provider)) {
+                client = new FakeLlmClient(config);
+            } else {
+                throw new IllegalArgumentException("Unknown LLM provider: " + provider + " (expected "
+                        + PROVIDER_ANTHROPIC + ", " + PROVIDER_FAKE + " or " + PROVIDER_REPLAY + ")");
+            }
+
+            String recordPath = config.getLlmRecordPath();
+            return recordPath == null || recordPath.isBlank() ? client : new RecordingLlmClient(client, Path.of(recordPath));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
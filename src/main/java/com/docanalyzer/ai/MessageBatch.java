@@ -0,0 +1,56 @@
+package com.docanalyzer.ai;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The state of a job of the Message Batches API.
+ */
+@Data
+@Builder
+public class MessageBatch {
+
+    /**
+     * The processing status once all requests of the job are done.
+     */
+    public static final String STATUS_ENDED = "ended";
+
+    /**
+     * The identifier of the job.
+     */
+    private String id;
+
+    /**
+     * The processing status: "in_progress", "canceling" or "ended".
+     */
+    private String processingStatus;
+
+    /**
+     * The URL of the results file, or null until the job has ended.
+     */
+    private String resultsUrl;
+
+    /**
+     * The number of requests still being processed.
+     */
+    private int processingCount;
+
+    /**
+     * The number of requests that completed successfully.
+     */
+    private int succeededCount;
+
+    /**
+     * The number of requests that failed.
+     */
+    private int erroredCount;
+
+    /**
+     * Checks whether all requests of the job are done and the results can be fetched.
+     *
+     * @return True if the job has ended
+     */
+    public boolean isEnded() {
+        return STATUS_ENDED.equals(processingStatus);
+    }
+}
@@ -0,0 +1,46 @@
+package com.docanalyzer.ai;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The result of a single request of a Message Batches API job.
+ */
+@Data
+@Builder
+public class MessageBatchResult {
+
+    /**
+     * The result type of a request that completed successfully.
+     */
+    public static final String TYPE_SUCCEEDED = "succeeded";
+
+    /**
+     * The custom ID the request was submitted with.
+     */
+    private String customId;
+
+    /**
+     * The result type: "succeeded", "errored", "canceled" or "expired".
+     */
+    private String type;
+
+    /**
+     * The message of a successful request, or null.
+     */
+    private ApiResponse message;
+
+    /**
+     * The error message of a failed request, or null.
+     */
+    private String error;
+
+    /**
+     * Checks whether the request completed successfully.
+     *
+     * @return True if the result holds a message
+     */
+    public boolean isSucceeded() {
+        return TYPE_SUCCEEDED.equals(type);
+    }
+}
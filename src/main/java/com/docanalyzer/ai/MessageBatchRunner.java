@@ -0,0 +1,216 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Evaluates prompts through the asynchronous Message Batches API: the prompts are submitted as
+ * one or more jobs, the jobs are polled with a growing interval until they have ended, and their
+ * results files are streamed back. Jobs are billed at a discount but may take up to a day, so this
+ * is meant for offline runs where latency does not matter.
+ * <p>
+ * Submitting a job is not idempotent: a submit that timed out or failed with a server error may
+ * have created the job anyway, so it is only sent again if it never reached the API. Otherwise
+ * the run fails. Whenever a run fails or is cancelled, the jobs that have not ended yet are
+ * cancelled rather than left to be billed for results nobody collects.
+ */
+@Slf4j
+public class MessageBatchRunner {
+
+    private final AnthropicClient anthropicClient;
+    private final RetryPolicy retryPolicy;
+    private final int maxRequestsPerJob;
+    private final long pollIntervalMs;
+    private final long maxPollIntervalMs;
+
+    /**
+     * Creates a new MessageBatchRunner with the settings of the configuration.
+     *
+     * @param config The configuration
+     * @param anthropicClient The API client
+     * @param retryPolicy The policy for retrying failed submit, poll and download calls
+     */
+    public MessageBatchRunner(Configuration config, AnthropicClient anthropicClient, RetryPolicy retryPolicy) {
+        this(anthropicClient, retryPolicy, config.getMessageBatchMaxRequests(),
+                config.getMessageBatchPollIntervalMs(), config.getMessageBatchMaxPollIntervalMs());
+    }
+
+    /**
+     * Creates a new MessageBatchRunner.
+     *
+     * @param anthropicClient The API client
+     * @param retryPolicy The policy for retrying failed submit, poll and download calls
+     * @param maxRequestsPerJob The maximum number of prompts submitted in one job
+     * @param pollIntervalMs The delay before the first status poll, doubled after every poll
+     * @param maxPollIntervalMs The maximum delay between two status polls
+     */
+    public MessageBatchRunner(AnthropicClient anthropicClient, RetryPolicy retryPolicy, int maxRequestsPerJob,
+                              long pollIntervalMs, long maxPollIntervalMs) {
+        this.anthropicClient = anthropicClient;
+        this.retryPolicy = retryPolicy;
+        this.maxRequestsPerJob = Math.max(1, maxRequestsPerJob);
+        this.pollIntervalMs = Math.max(1, pollIntervalMs);
+        this.maxPollIntervalMs = Math.max(this.pollIntervalMs, maxPollIntervalMs);
+    }
+
+    /**
+     * Submits the prompts, waits for all jobs to end and hands every result to the consumer.
+     * All jobs are submitted before the first is polled, so they are processed concurrently.
+     * Each result is handed over once, even if a results file is downloaded again after a failure.
+     *
+     * @param prompts The prompts by custom ID
+     * @param resultConsumer Receives each result, identified by the custom ID of its prompt
+     * @throws IOException If a job cannot be submitted, polled or downloaded, or the run is cancelled
+     */
+    public void run(Map<String, Prompt> prompts, Consumer<MessageBatchResult> resultConsumer) throws IOException {
+        List<MessageBatch> jobs = new ArrayList<>();
+        int endedJobs = 0;
+        try {
+            for (Map<String, Prompt> chunk : split(prompts)) {
+                jobs.add(submit(chunk));
+            }
+
+            Set<String> delivered = new HashSet<>();
+            Consumer<MessageBatchResult> deliverOnce = result -> {
+                if (delivered.add(result.getCustomId())) {
+                    resultConsumer.accept(result);
+                }
+            };
+            for (MessageBatch job : jobs) {
+                MessageBatch ended = awaitEnd(job);
+                endedJobs++;
+                log.info("Message batch {} ended: {} succeeded, {} failed", ended.getId(), ended.getSucceededCount(),
+                        ended.getErroredCount());
+                retryPolicy.execute(() -> {
+                    anthropicClient.streamMessageBatchResults(ended, deliverOnce);
+                    return ended;
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            // Ended jobs are billed already, only the ones still processing can be stopped
+            cancel(jobs.subList(endedJobs, jobs.size()));
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a chunk of prompts as a job.
+     *
+     * @param chunk The prompts by custom ID
+     * @return The state of the new job
+     * @throws IOException If the job cannot be submitted
+     */
+    private MessageBatch submit(Map<String, Prompt> chunk) throws IOException {
+        MessageBatch job;
+        try {
+            job = retryPolicy.execute(() -> anthropicClient.createMessageBatch(chunk), MessageBatchRunner::isUnsent);
+        } catch (IOException e) {
+            if (retryPolicy.isRetryable(e) && !isUnsent(e)) {
+                log.warn("Submitting a message batch of {} requests failed after it may have been received; "
+                        + "check the recent message batches of the workspace for a job created anyway", chunk.size());
+            }
+            throw e;
+        }
+        log.info("Submitted message batch {} with {} requests", job.getId(), chunk.size());
+        return job;
+    }
+
+    /**
+     * Cancels submitted jobs after the run failed or was cancelled. Cancelling is best effort:
+     * a job that cannot be cancelled is logged and left to end on its own.
+     *
+     * @param jobs The submitted jobs that have not ended
+     */
+    private void cancel(List<MessageBatch> jobs) {
+        // The connection pool refuses to lease to an interrupted thread, so the flag is restored afterwards
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (MessageBatch job : jobs) {
+                try {
+                    anthropicClient.cancelMessageBatch(job.getId());
+                    log.info("Cancelled message batch {}", job.getId());
+                } catch (IOException e) {
+                    log.warn("Could not cancel message batch {}: {}", job.getId(), e.getMessage());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failed request never reached the API, because no connection could be made.
+     *
+     * @param e The error
+     * @return True if the request can be sent again without being received twice
+     */
+    private static boolean isUnsent(IOException e) {
+        return RetryPolicy.hasCause(e, ConnectException.class) || RetryPolicy.hasCause(e, UnknownHostException.class)
+                || RetryPolicy.hasCause(e, ConnectTimeoutException.class);
+    }
+
+    /**
+     * Polls a job until it has ended, doubling the delay between polls up to the maximum.
+     *
+     * @param job The submitted job
+     * @return The state of the ended job
+     * @throws IOException If polling fails or the thread is interrupted
+     */
+    private MessageBatch awaitEnd(MessageBatch job) throws IOException {
+        long delayMs = pollIntervalMs;
+        while (!job.isEnded()) {
+            sleep(delayMs);
+            String id = job.getId();
+            job = retryPolicy.execute(() -> anthropicClient.getMessageBatch(id));
+            log.debug("Message batch {} is {} ({} requests processing)", id, job.getProcessingStatus(), job.getProcessingCount());
+            delayMs = Math.min(maxPollIntervalMs, delayMs * 2);
+        }
+        return job;
+    }
+
+    /**
+     * Splits the prompts into chunks that fit into one job each.
+     *
+     * @param prompts The prompts by custom ID
+     * @return The chunks, in the order of the prompts
+     */
+    private List<Map<String, Prompt>> split(Map<String, Prompt> prompts) {
+        List<Map<String, Prompt>> chunks = new ArrayList<>();
+        Map<String, Prompt> chunk = new LinkedHashMap<>();
+        for (Map.Entry<String, Prompt> entry : prompts.entrySet()) {
+            if (chunk.size() >= maxRequestsPerJob) {
+                chunks.add(chunk);
+                chunk = new LinkedHashMap<>();
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static void sleep(long delayMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for message batch");
+        }
+    }
+}
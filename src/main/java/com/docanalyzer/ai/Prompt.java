@@ -0,0 +1,144 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.util.TokenCounter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A prompt split into a system part that is identical for every batch of a run and a user part
+ * that holds the methods of one batch. Keeping the shared part byte-for-byte stable lets the API
+ * serve it from its prompt cache.
+ * <p>
+ * Token estimates and the hash are computed part by part, so the full prompt text is never
+ * built for them. The estimate of the shared parts is cached, as a prompt is estimated several
+ * times on its way to the API.
+ */
+@Data
+public class Prompt {
+
+    private static final byte[] SEPARATOR = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The instructions and guidelines shared by all batches, or null for none.
+     */
+    private String system;
+
+    /**
+     * The batch-specific part of the prompt.
+     */
+    private String user;
+
+    /**
+     * The definition of the tool the model must answer with, or null for a plain text answer.
+     */
+    private ObjectNode tool;
+
+    /**
+     * The estimated tokens of the tool definition and the system part, or -1 if not estimated yet.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int sharedTokens = -1;
+
+    /**
+     * Creates a prompt.
+     *
+     * @param system The instructions and guidelines shared by all batches, or null for none
+     * @param user The batch-specific part of the prompt
+     * @param tool The definition of the tool the model must answer with, or null for a plain text answer
+     */
+    public Prompt(String system, String user, ObjectNode tool) {
+        this.system = system;
+        this.user = user;
+        this.tool = tool;
+    }
+
+    /**
+     * Creates a prompt that is answered with plain text.
+     *
+     * @param system The instructions and guidelines shared by all batches, or null for none
+     * @param user The batch-specific part of the prompt
+     */
+    public Prompt(String system, String user) {
+        this(system, user, null);
+    }
+
+    /**
+     * Creates a prompt that only has a user part.
+     *
+     * @param user The prompt text
+     * @return The prompt
+     */
+    public static Prompt of(String user) {
+        return new Prompt(null, user);
+    }
+
+    public void setSystem(String system) {
+        this.system = system;
+        this.sharedTokens = -1;
+    }
+
+    public void setTool(ObjectNode tool) {
+        this.tool = tool;
+        this.sharedTokens = -1;
+    }
+
+    /**
+     * Estimates the input tokens of the prompt: the tool definition, the system part and the user part.
+     *
+     * @param tokenCounter The token counter
+     * @return The estimated token count
+     */
+    public int estimateTokens(TokenCounter tokenCounter) {
+        if (sharedTokens < 0) {
+            sharedTokens = tokenCounter.estimateTokenCount(system)
+                    + (tool == null ? 0 : tokenCounter.estimateTokenCount(tool.toString()));
+        }
+        return sharedTokens + tokenCounter.estimateTokenCount(user);
+    }
+
+    /**
+     * Gets the complete prompt text, for logging.
+     *
+     * @return The tool definition, system and user parts joined by blank lines
+     */
+    public String getText() {
+        String text = system == null || system.isEmpty() ? user : system + "\n\n" + user;
+        return tool == null ? text : tool + "\n\n" + text;
+    }
+
+    /**
+     * Computes a hash that identifies the prompt, for matching recorded responses to requests.
+     *
+     * @return The hex SHA-256 hash of the tool definition, system and user parts
+     */
+    public String hash() {
+        try {
+            // The same bytes as the complete prompt text, fed part by part
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (tool != null) {
+                digest.update(tool.toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(SEPARATOR);
+            }
+            if (system != null && !system.isEmpty()) {
+                digest.update(system.getBytes(StandardCharsets.UTF_8));
+                digest.update(SEPARATOR);
+            }
+            return HexFormat.of().formatHex(digest.digest(String.valueOf(user).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.docanalyzer.metrics.MetricsManager;
 import com.docanalyzer.model.Method;
 import com.docanalyzer.model.Metric;
 import com.docanalyzer.util.TokenCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -15,6 +18,8 @@ import java.util.List;
 public class PromptGenerator {
     
     private final MetricsManager metricsManager;
+    private final boolean structuredOutput;
+    private final ObjectMapper objectMapper = new ObjectMapper();
     
     /**
      * Creates a new PromptGenerator with the specified MetricsManager.
@@ -22,27 +27,34 @@ public class PromptGenerator {
      * @param metricsManager The metrics manager to use for dynamic metric generation
      */
     public PromptGenerator(MetricsManager metricsManager) {
+        this(metricsManager, false);
+    }
+    
+    /**
+     * Creates a new PromptGenerator.
+     * 
+     * @param metricsManager The metrics manager to use for dynamic metric generation
+     * @param structuredOutput True to request the evaluations as JSON through the
+     *                         {@value StructuredResponseParser#TOOL_NAME} tool instead of formatted text
+     */
+    public PromptGenerator(MetricsManager metricsManager, boolean structuredOutput) {
         this.metricsManager = metricsManager;
+        this.structuredOutput = structuredOutput;
     }
 
     /**
      * Generates a prompt for a batch of methods.
+     * The instructions, guidelines and response format go into the system part, which does not
+     * depend on the batch and can therefore be cached by the API; the methods go into the user part.
      * 
      * @param methods The methods to include in the prompt
      * @param guidelines The evaluation guidelines
      * @return The generated prompt
      */
-    public String generateBatchPrompt(List<Method> methods, String guidelines) {
+    public Prompt generateBatchPrompt(List<Method> methods, String guidelines) {
+        String system = generateSystemPrompt(guidelines);
         StringBuilder promptBuilder = new StringBuilder();
         
-        // Add introduction
-        promptBuilder.append("You are a documentation quality evaluator. Your task is to evaluate the quality of Javadoc documentation for Java methods.\n\n");
-        
-        // Add guidelines
-        promptBuilder.append("EVALUATION GUIDELINES:\n");
-        promptBuilder.append(guidelines);
-        promptBuilder.append("\n\n");
-        
         // Add methods
         promptBuilder.append("METHODS TO EVALUATE:\n\n");
         
@@ -53,6 +65,49 @@ public class PromptGenerator {
             promptBuilder.append("\n\n");
         }
         
+        promptBuilder.append("Evaluate all ").append(methods.size())
+                .append(methods.size() == 1 ? " method" : " methods")
+                .append(structuredOutput
+                        ? " above, in order, and record the evaluations with the " + StructuredResponseParser.TOOL_NAME + " tool.\n"
+                        : " above, in order, using the response format from the instructions.\n");
+        
+        String user = promptBuilder.toString();
+        log.debug("Generated prompt with {} methods, {} characters ({} shared)", methods.size(),
+                system.length() + user.length(), system.length());
+        
+        return new Prompt(system, user, structuredOutput ? generateEvaluationTool() : null);
+    }
+    
+    /**
+     * Generates the part of the prompt that is shared by all batches.
+     * It must only depend on the guidelines and the loaded metrics, so that it stays identical
+     * between requests.
+     * 
+     * @param guidelines The evaluation guidelines
+     * @return The system prompt
+     */
+    public String generateSystemPrompt(String guidelines) {
+        StringBuilder promptBuilder = new StringBuilder();
+        
+        // Add introduction
+        promptBuilder.append("You are a documentation quality evaluator. Your task is to evaluate the quality of Javadoc documentation for Java methods.\n\n");
+        
+        // Add guidelines
+        promptBuilder.append("EVALUATION GUIDELINES:\n");
+        promptBuilder.append(guidelines);
+        promptBuilder.append("\n\n");
+        
+        if (structuredOutput) {
+            promptBuilder.append("RESPONSE FORMAT:\n");
+            promptBuilder.append("Record your evaluations by calling the ").append(StructuredResponseParser.TOOL_NAME)
+                    .append(" tool once, with one entry per method in the order the methods are given.\n");
+            promptBuilder.append("- method: the method number N\n");
+            promptBuilder.append("- metrics: one entry for each of the metrics ");
+            promptBuilder.append(String.join(", ", metricNames())).append(", with the score and a justification\n");
+            promptBuilder.append("- recommendations: concrete improvements to the documentation (may be empty)\n");
+            return promptBuilder.toString();
+        }
+        
         // Add formatting requirements
         promptBuilder.append("IMPORTANT FORMATTING REQUIREMENTS:\n");
         promptBuilder.append("- Use PLAIN TEXT only - NO markdown formatting (no **, *, etc.)\n");
@@ -61,33 +116,68 @@ public class PromptGenerator {
         promptBuilder.append("- Use consistent formatting throughout your response\n");
         promptBuilder.append("- Each metric should be on its own line followed by justification\n\n");
         
-        // Add response format instructions
-        promptBuilder.append("FORMAT YOUR RESPONSE AS:\n\n");
+        // Add response format instructions, repeated for each method N of the batch
+        promptBuilder.append("FORMAT YOUR RESPONSE AS FOLLOWS, ONE SECTION PER METHOD, WHERE N IS THE METHOD NUMBER:\n\n");
+        promptBuilder.append("METHOD N [method name] EVALUATION:\n");
         
-        for (int i = 0; i < methods.size(); i++) {
-            promptBuilder.append("METHOD ").append(i + 1).append(" [method name] EVALUATION:\n");
-            
-            // Dynamically generate metric format based on loaded metrics
-            for (Metric metric : metricsManager.getAllMetrics()) {
-                promptBuilder.append(metric.getName()).append(": [rating score]\n");
-                promptBuilder.append("Justification: [explanation]\n\n");
-            }
-            
-            promptBuilder.append("Overall Assessment: [brief summary]\n\n");
-            promptBuilder.append("Recommendations:\n");
-            promptBuilder.append("1. [recommendation 1]\n");
-            promptBuilder.append("2. [recommendation 2]\n");
-            promptBuilder.append("... (if any)\n\n");
-
-            if (i < methods.size() - 1) {
-                promptBuilder.append("---\n\n");
-            }
+        // Dynamically generate metric format based on loaded metrics
+        for (Metric metric : metricsManager.getAllMetrics()) {
+            promptBuilder.append(metric.getName()).append(": [rating score]\n");
+            promptBuilder.append("Justification: [explanation]\n\n");
         }
         
-        String prompt = promptBuilder.toString();
-        log.debug("Generated prompt with {} methods, {} characters", methods.size(), prompt.length());
+        promptBuilder.append("Overall Assessment: [brief summary]\n\n");
+        promptBuilder.append("Recommendations:\n");
+        promptBuilder.append("1. [recommendation 1]\n");
+        promptBuilder.append("2. [recommendation 2]\n");
+        promptBuilder.append("... (if any)\n\n");
+        promptBuilder.append("Separate the sections of consecutive methods with a line containing only ---\n");
+        
+        return promptBuilder.toString();
+    }
+    
+    /**
+     * Generates the definition of the tool the evaluations are recorded with. It only depends on
+     * the loaded metrics, so it is identical for all batches and part of the cached prefix.
+     * 
+     * @return The tool definition
+     */
+    public ObjectNode generateEvaluationTool() {
+        ObjectNode tool = objectMapper.createObjectNode();
+        tool.put("name", StructuredResponseParser.TOOL_NAME);
+        tool.put("description", "Records the documentation quality evaluations of all methods of the request.");
+        
+        ObjectNode schema = tool.putObject("input_schema");
+        schema.put("type", "object");
+        schema.putArray("required").add("evaluations");
+        ObjectNode evaluations = schema.putObject("properties").putObject("evaluations");
+        evaluations.put("type", "array");
+        
+        ObjectNode evaluation = evaluations.putObject("items");
+        evaluation.put("type", "object");
+        evaluation.putArray("required").add("method").add("metrics").add("recommendations");
+        ObjectNode properties = evaluation.putObject("properties");
+        properties.putObject("method").put("type", "integer").put("description", "The method number N");
         
-        return prompt;
+        ObjectNode metrics = properties.putObject("metrics");
+        metrics.put("type", "array");
+        ObjectNode metric = metrics.putObject("items");
+        metric.put("type", "object");
+        metric.putArray("required").add("name").add("score").add("justification");
+        ObjectNode metricProperties = metric.putObject("properties");
+        ArrayNode names = metricProperties.putObject("name").put("type", "string").putArray("enum");
+        metricNames().forEach(names::add);
+        metricProperties.putObject("score").put("type", "integer").put("minimum", 1).put("maximum", 5);
+        metricProperties.putObject("justification").put("type", "string");
+        
+        ObjectNode recommendations = properties.putObject("recommendations");
+        recommendations.put("type", "array");
+        recommendations.putObject("items").put("type", "string");
+        return tool;
+    }
+    
+    private List<String> metricNames() {
+        return metricsManager.getAllMetrics().stream().map(Metric::getName).toList();
     }
     
     /**
@@ -132,8 +222,9 @@ public class PromptGenerator {
             }
         }
         
-        // Add return type
-        if (!"void".equals(method.getReturnType())) {
+        // Add return type (constructors have none)
+        if (method.getReturnType() != null && !method.getReturnType().isEmpty()
+                && !"void".equals(method.getReturnType())) {
             promptBuilder.append("Return Type: ").append(method.getReturnType()).append("\n");
         }
     }
@@ -0,0 +1,147 @@
+package com.docanalyzer.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Records the exchanges of another client, so that a run can later be reproduced without API
+ * access by {@link ReplayLlmClient}.
+ * <p>
+ * Every successful exchange is appended as one JSON line holding the prompt hash, the request,
+ * the response, its latency and its token usage, and flushed right away, so the recording of a
+ * run that dies part-way is still usable. Failed requests are not recorded. Thread-safe.
+ */
+@Slf4j
+public class RecordingLlmClient implements LlmClient {
+
+    static final String PROMPT_HASH = "promptHash";
+    static final String REQUEST = "request";
+    static final String RESPONSE = "response";
+    static final String LATENCY_MS = "latencyMs";
+    static final String USAGE = "usage";
+
+    private final LlmClient delegate;
+    private final Path recordingPath;
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+    private int exchanges;
+
+    /**
+     * Opens a recording, appending to an existing file.
+     *
+     * @param delegate The client whose exchanges are recorded
+     * @param recordingPath The recording file
+     * @throws IOException If the recording cannot be opened for writing
+     */
+    public RecordingLlmClient(LlmClient delegate, Path recordingPath) throws IOException {
+        this.delegate = delegate;
+        this.recordingPath = recordingPath;
+        this.objectMapper = new ObjectMapper();
+        if (recordingPath.getParent() != null) {
+            Files.createDirectories(recordingPath.getParent());
+        }
+        this.writer = Files.newBufferedWriter(recordingPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("Recording API exchanges in {}", recordingPath);
+    }
+
+    @Override
+    public ApiResponse sendMessage(Prompt prompt) throws IOException {
+        ApiResponse response = delegate.sendMessage(prompt);
+        record(prompt, response);
+        return response;
+    }
+
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+        ApiResponse response = delegate.streamMessage(prompt, textConsumer);
+        record(prompt, response);
+        return response;
+    }
+
+    @Override
+    public ApiResponse sendMessage(Prompt prompt, CancellationToken cancellation) throws IOException {
+        ApiResponse response = delegate.sendMessage(prompt, cancellation);
+        record(prompt, response);
+        return response;
+    }
+
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer, CancellationToken cancellation)
+            throws IOException {
+        ApiResponse response = delegate.streamMessage(prompt, textConsumer, cancellation);
+        record(prompt, response);
+        return response;
+    }
+
+    @Override
+    public void cancelAll() {
+        delegate.cancelAll();
+    }
+
+    /**
+     * Closes the recording and the recorded client.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            try {
+                writer.close();
+                log.info("Recorded {} API exchanges in {}", exchanges, recordingPath);
+            } catch (IOException e) {
+                log.error("Failed to close recording {}: {}", recordingPath, e.getMessage());
+            }
+        }
+        delegate.close();
+    }
+
+    /**
+     * Appends an exchange to the recording. A failed write is logged and does not fail the request.
+     *
+     * @param prompt The prompt
+     * @param response The response
+     */
+    private void record(Prompt prompt, ApiResponse response) {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put(PROMPT_HASH, prompt.hash());
+        line.put("recordedAt", Instant.now().toString());
+
+        ObjectNode request = line.putObject(REQUEST);
+        request.put("system", prompt.getSystem());
+        request.put("user", prompt.getUser());
+        request.set("tool", prompt.getTool());
+
+        ObjectNode recorded = line.putObject(RESPONSE);
+        recorded.put("text", response.getText());
+        recorded.put("toolInput", response.getToolInput());
+        recorded.put("stopReason", response.getStopReason());
+        line.put(LATENCY_MS, response.getLatencyMs());
+
+        ObjectNode usage = line.putObject(USAGE);
+        usage.put("inputTokens", response.getInputTokens());
+        usage.put("outputTokens", response.getOutputTokens());
+        usage.put("cacheCreationInputTokens", response.getCacheCreationInputTokens());
+        usage.put("cacheReadInputTokens", response.getCacheReadInputTokens());
+
+        synchronized (this) {
+            try {
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.newLine();
+                writer.flush();
+                exchanges++;
+            } catch (IOException e) {
+                log.error("Failed to write to recording {}: {}", recordingPath, e.getMessage());
+            }
+        }
+    }
+}
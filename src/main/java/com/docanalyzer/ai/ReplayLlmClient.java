@@ -0,0 +1,151 @@
+package com.docanalyzer.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Serves responses from a recording made by {@link RecordingLlmClient}, for reproducible runs
+ * of the parsing, batching and reporting without API access.
+ * <p>
+ * Responses are looked up by the hash of the prompt. A prompt recorded more than once is
+ * answered with its recorded responses in order, and with the last one after that. With timing
+ * enabled each response takes as long as it did when it was recorded, and streamed responses
+ * are delivered in chunks spread over that time. A prompt missing from the recording fails like
+ * a request the API rejects, so it is not retried. Thread-safe.
+ */
+@Slf4j
+public class ReplayLlmClient implements LlmClient {
+
+    private static final int STREAM_CHUNK_CHARS = 64;
+
+    private final Path recordingPath;
+    private final boolean timing;
+    private final Map<String, List<ApiResponse>> responses = new HashMap<>();
+    private final Map<String, Integer> served = new HashMap<>();
+
+    /**
+     * Loads a recording.
+     *
+     * @param recordingPath The recording file
+     * @param timing Whether to reproduce the recorded latencies
+     * @throws IOException If the recording cannot be read
+     */
+    public ReplayLlmClient(Path recordingPath, boolean timing) throws IOException {
+        this.recordingPath = recordingPath;
+        this.timing = timing;
+        load();
+    }
+
+    @Override
+    public ApiResponse sendMessage(Prompt prompt) throws IOException {
+        ApiResponse response = next(prompt);
+        sleep(timing ? response.getLatencyMs() : 0);
+        return response;
+    }
+
+    @Override
+    public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+        ApiResponse response = next(prompt);
+        String content = response.getToolInput() != null ? response.getToolInput() : response.getText();
+        int chunks = Math.max(1, (content.length() + STREAM_CHUNK_CHARS - 1) / STREAM_CHUNK_CHARS);
+        long chunkDelayMs = timing ? response.getLatencyMs() / chunks : 0;
+
+        for (int start = 0; start < content.length(); start += STREAM_CHUNK_CHARS) {
+            sleep(chunkDelayMs);
+            textConsumer.accept(content.substring(start, Math.min(content.length(), start + STREAM_CHUNK_CHARS)));
+        }
+        return response;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Gets the next recorded response for a prompt.
+     *
+     * @param prompt The prompt
+     * @return A copy of the recorded response
+     * @throws ApiException If the prompt is not in the recording
+     */
+    private synchronized ApiResponse next(Prompt prompt) throws ApiException {
+        String hash = prompt.hash();
+        List<ApiResponse> recorded = responses.get(hash);
+        if (recorded == null) {
+            throw new ApiException(404, -1, "No recorded response for prompt " + hash + " in " + recordingPath);
+        }
+        int index = served.merge(hash, 1, Integer::sum) - 1;
+        return recorded.get(Math.min(index, recorded.size() - 1)).toBuilder().build();
+    }
+
+    /**
+     * Loads the exchanges of the recording. Unreadable lines, such as a partial last line left by
+     * a crash, are skipped.
+     *
+     * @throws IOException If the recording cannot be read
+     */
+    private void load() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        int lineNumber = 0;
+        int exchanges = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(recordingPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    JsonNode response = node.get(RecordingLlmClient.RESPONSE);
+                    JsonNode usage = node.get(RecordingLlmClient.USAGE);
+                    ApiResponse apiResponse = ApiResponse.builder()
+                            .text(response.path("text").asText(""))
+                            .toolInput(response.hasNonNull("toolInput") ? response.get("toolInput").asText() : null)
+                            .stopReason(response.hasNonNull("stopReason") ? response.get("stopReason").asText() : null)
+                            .inputTokens(usage.path("inputTokens").asInt())
+                            .outputTokens(usage.path("outputTokens").asInt())
+                            .cacheCreationInputTokens(usage.path("cacheCreationInputTokens").asInt())
+                            .cacheReadInputTokens(usage.path("cacheReadInputTokens").asInt())
+                            .latencyMs(node.path(RecordingLlmClient.LATENCY_MS).asLong())
+                            .build();
+                    responses.computeIfAbsent(node.get(RecordingLlmClient.PROMPT_HASH).asText(), hash -> new ArrayList<>())
+                            .add(apiResponse);
+                    exchanges++;
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Skipping unreadable recorded exchange at {}:{}: {}", recordingPath, lineNumber, e.getMessage());
+                }
+            }
+        }
+
+        log.info("Loaded {} recorded API exchanges for {} prompts from {}", exchanges, responses.size(), recordingPath);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying a response");
+        }
+    }
+}
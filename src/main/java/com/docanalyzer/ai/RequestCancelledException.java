@@ -0,0 +1,21 @@
+package com.docanalyzer.ai;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Signals that a request was aborted, or not sent, because the run is being cancelled or the
+ * request itself was cancelled, e.g. as the slower half of a hedged request. It is not retried.
+ */
+public class RequestCancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new RequestCancelledException.
+     *
+     * @param message The error message
+     */
+    public RequestCancelledException(String message) {
+        super(message);
+    }
+}
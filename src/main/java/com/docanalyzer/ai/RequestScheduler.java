@@ -0,0 +1,243 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.RunStatistics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces API requests so that they stay within the rate limits of the account.
+ * <p>
+ * Requests per minute, input tokens per minute and output tokens per minute each have a token
+ * bucket when a client-side limit is configured. A request waits until every bucket can cover
+ * it; output tokens are reserved at {@code max_tokens} and the unused part is returned once the
+ * actual usage is known. The rate-limit headers of each response lower the buckets to what the
+ * server reports as remaining, and an exhausted limit pauses all requests until its reset time.
+ * A 429 response pauses all requests for the {@code retry-after} delay (or an exponential backoff
+ * when the header is missing) and the request is queued again instead of failing its batch.
+ * The tokens reserved for a request that fails are returned, so retries do not drain the buckets.
+ */
+@Slf4j
+public class RequestScheduler {
+
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    /**
+     * A single API request.
+     */
+    @FunctionalInterface
+    public interface ApiCall {
+        ApiResponse call() throws IOException;
+    }
+
+    private final TokenBucket requestBucket;
+    private final TokenBucket inputTokenBucket;
+    private final TokenBucket outputTokenBucket;
+    private final int maxRetries;
+    private final RunStatistics runStatistics;
+    private long pausedUntilNanos;
+
+    /**
+     * Creates a new RequestScheduler with the limits of the configuration.
+     *
+     * @param config The configuration
+     * @param runStatistics The statistics to record rate-limited responses in
+     */
+    public RequestScheduler(Configuration config, RunStatistics runStatistics) {
+        this(config.getRateLimitRequestsPerMinute(), config.getRateLimitInputTokensPerMinute(),
+                config.getRateLimitOutputTokensPerMinute(), config.getRateLimitMaxRetries(), runStatistics);
+    }
+
+    /**
+     * Creates a new RequestScheduler.
+     *
+     * @param requestsPerMinute The request limit per minute (0 = none)
+     * @param inputTokensPerMinute The input token limit per minute (0 = none)
+     * @param outputTokensPerMinute The output token limit per minute (0 = none)
+     * @param maxRetries The number of times a rate-limited request is queued again
+     * @param runStatistics The statistics to record rate-limited responses in
+     */
+    public RequestScheduler(int requestsPerMinute, int inputTokensPerMinute, int outputTokensPerMinute,
+                            int maxRetries, RunStatistics runStatistics) {
+        long now = System.nanoTime();
+        this.requestBucket = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute, now) : null;
+        this.inputTokenBucket = inputTokensPerMinute > 0 ? new TokenBucket(inputTokensPerMinute, now) : null;
+        this.outputTokenBucket = outputTokensPerMinute > 0 ? new TokenBucket(outputTokensPerMinute, now) : null;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.runStatistics = runStatistics;
+        this.pausedUntilNanos = now;
+    }
+
+    /**
+     * Executes a request once the rate limits allow it, queueing it again while it is rate-limited.
+     *
+     * @param inputTokens The estimated input tokens of the request
+     * @param maxOutputTokens The maximum output tokens of the request
+     * @param call The request
+     * @return The response
+     * @throws IOException If the request fails, or is still rate-limited after the configured retries
+     */
+    public ApiResponse execute(int inputTokens, int maxOutputTokens, ApiCall call) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            acquire(inputTokens, maxOutputTokens);
+
+            ApiResponse response;
+            try {
+                response = call.call();
+            } catch (IOException | RuntimeException e) {
+                release(inputTokens, maxOutputTokens);
+                if (!(e instanceof ApiException apiException) || !apiException.isRateLimited() || attempt >= maxRetries) {
+                    throw e;
+                }
+                onRateLimited(apiException, attempt);
+                continue;
+            }
+            onResponse(response, inputTokens, maxOutputTokens);
+            return response;
+        }
+    }
+
+    /**
+     * Waits until every bucket can cover the request and takes its budget.
+     *
+     * @param inputTokens The estimated input tokens
+     * @param maxOutputTokens The maximum output tokens
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    private synchronized void acquire(int inputTokens, int maxOutputTokens) throws InterruptedIOException {
+        while (true) {
+            long now = System.nanoTime();
+            long waitNanos = Math.max(pausedUntilNanos - now, 0);
+            if (requestBucket != null) {
+                waitNanos = Math.max(waitNanos, requestBucket.waitNanos(1, now));
+            }
+            if (inputTokenBucket != null) {
+                waitNanos = Math.max(waitNanos, inputTokenBucket.waitNanos(inputTokens, now));
+            }
+            if (outputTokenBucket != null) {
+                waitNanos = Math.max(waitNanos, outputTokenBucket.waitNanos(maxOutputTokens, now));
+            }
+
+            if (waitNanos == 0) {
+                if (requestBucket != null) {
+                    requestBucket.take(1, now);
+                }
+                if (inputTokenBucket != null) {
+                    inputTokenBucket.take(inputTokens, now);
+                }
+                if (outputTokenBucket != null) {
+                    outputTokenBucket.take(maxOutputTokens, now);
+                }
+                return;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit");
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens reserved for a request that failed. The request itself still counts
+     * towards the request limit, as it was sent.
+     *
+     * @param reservedInputTokens The input tokens reserved for the request
+     * @param reservedOutputTokens The output tokens reserved for the request
+     */
+    private synchronized void release(int reservedInputTokens, int reservedOutputTokens) {
+        long now = System.nanoTime();
+        if (inputTokenBucket != null) {
+            inputTokenBucket.take(-reservedInputTokens, now);
+        }
+        if (outputTokenBucket != null) {
+            outputTokenBucket.take(-reservedOutputTokens, now);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Settles the reservation of a completed request and adapts to the reported rate-limit state.
+     *
+     * @param response The response
+     * @param reservedInputTokens The input tokens reserved for the request
+     * @param reservedOutputTokens The output tokens reserved for the request
+     */
+    private synchronized void onResponse(ApiResponse response, int reservedInputTokens, int reservedOutputTokens) {
+        long now = System.nanoTime();
+
+        // Cache reads do not count towards the input token limit, cache writes do
+        int countedInputTokens = response.getInputTokens() + response.getCacheCreationInputTokens();
+        if (inputTokenBucket != null && countedInputTokens > 0) {
+            inputTokenBucket.take(countedInputTokens - reservedInputTokens, now);
+        }
+        if (outputTokenBucket != null) {
+            outputTokenBucket.take(response.getOutputTokens() - reservedOutputTokens, now);
+        }
+
+        adapt(requestBucket, response.getRequestsRemaining(), response.getRequestsReset(), now);
+        adapt(inputTokenBucket, response.getInputTokensRemaining(), response.getInputTokensReset(), now);
+        adapt(outputTokenBucket, response.getOutputTokensRemaining(), response.getOutputTokensReset(), now);
+
+        notifyAll();
+    }
+
+    /**
+     * Applies one reported limit: the bucket never holds more than the server has left, and an
+     * exhausted limit pauses all requests until it resets.
+     *
+     * @param bucket The bucket of the limit, or null if no client-side limit is configured
+     * @param remaining The remaining budget reported by the server, or null
+     * @param reset When the limit resets, or null
+     * @param now The current time in nanoseconds
+     */
+    private void adapt(TokenBucket bucket, Long remaining, Instant reset, long now) {
+        if (remaining == null) {
+            return;
+        }
+        if (bucket != null) {
+            bucket.limitTo(remaining, now);
+        }
+        if (remaining <= 0 && reset != null) {
+            long delayMs = Math.min(MAX_BACKOFF_MS, Math.max(0, Duration.between(Instant.now(), reset).toMillis()));
+            pauseFor(delayMs, now);
+        }
+    }
+
+    /**
+     * Pauses all requests after a 429 response.
+     *
+     * @param e The rate-limit error
+     * @param attempt The number of earlier attempts of the request
+     */
+    private synchronized void onRateLimited(ApiException e, int attempt) {
+        long delayMs = e.getRetryAfterMs() >= 0
+                ? e.getRetryAfterMs()
+                : Math.min(MAX_BACKOFF_MS, 1000L << Math.min(attempt, 16));
+
+        if (runStatistics != null) {
+            runStatistics.recordRateLimited();
+        }
+        log.warn("Rate limited by the API, pausing requests for {} ms (attempt {}/{})", delayMs, attempt + 1, maxRetries);
+        pauseFor(delayMs, System.nanoTime());
+    }
+
+    synchronized double availableInputTokens() {
+        return inputTokenBucket != null ? inputTokenBucket.available(System.nanoTime()) : 0;
+    }
+
+    synchronized double availableOutputTokens() {
+        return outputTokenBucket != null ? outputTokenBucket.available(System.nanoTime()) : 0;
+    }
+
+    private void pauseFor(long delayMs, long now) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(delayMs));
+    }
+}
@@ -20,7 +20,7 @@ public class ResponseParser {
     private final MetricsValidator metricsValidator;
     
     // Patterns for extracting information from the API response
-    private static final Pattern METHOD_PATTERN = Pattern.compile("METHOD (\\d+) [^\\n]+ EVALUATION:", Pattern.CASE_INSENSITIVE);
+    static final Pattern METHOD_PATTERN = Pattern.compile("METHOD (\\d+) [^\\n]+ EVALUATION:", Pattern.CASE_INSENSITIVE);
     private static final Pattern METRIC_PATTERN = Pattern.compile("(?:^|\\n)\\s*([A-Za-z][A-Za-z ]+?):\\s*(\\d+)(?:\\s|$)", Pattern.MULTILINE);
     private static final Pattern JUSTIFICATION_PATTERN = Pattern.compile("Justification:\\s*(.+?)(?=\\n\\n|\\n[A-Z]|$)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
     private static final Pattern RECOMMENDATIONS_PATTERN = Pattern.compile("Recommendations:\\s*(.+?)(?=\\n\\n|\\n[A-Z]|$|---)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
@@ -67,20 +67,8 @@ public class ResponseParser {
             // Process each method
             for (int i = 0; i < methodIndices.size(); i++) {
                 int methodIndex = methodIndices.get(i);
-                int start = methodStarts.get(i);
-                int end = (i + 1 < methodStarts.size()) ? 
-                    response.lastIndexOf("---", methodStarts.get(i + 1)) : response.length();
-                
-                // If we couldn't find the separator, use the start of next method
-                if (end == -1 || end <= start) {
-                    end = (i + 1 < methodStarts.size()) ? methodStarts.get(i + 1) : response.length();
-                }
-                
-                String methodEvaluation = response.substring(start, end).trim();
-                // Remove the trailing separator if present
-                if (methodEvaluation.endsWith("---")) {
-                    methodEvaluation = methodEvaluation.substring(0, methodEvaluation.length() - 3).trim();
-                }
+                int nextStart = (i + 1 < methodStarts.size()) ? methodStarts.get(i + 1) : -1;
+                String methodEvaluation = extractEvaluation(response, methodStarts.get(i), nextStart);
                 
                 results.put(methodIndex, parseMethodEvaluation(methodEvaluation));
             }
@@ -98,13 +86,39 @@ public class ResponseParser {
         }
     }
     
+    /**
+     * Extracts the evaluation text of one method: everything after its header up to the separator
+     * before the next header, or up to the end of the response for the last method.
+     * 
+     * @param response The API response
+     * @param start The end of the method's header
+     * @param nextStart The end of the next method's header, or -1 for the last method
+     * @return The method evaluation text
+     */
+    static String extractEvaluation(CharSequence response, int start, int nextStart) {
+        String text = response.toString();
+        int end = nextStart >= 0 ? text.lastIndexOf("---", nextStart) : text.length();
+        
+        // If we couldn't find the separator, use the start of next method
+        if (end == -1 || end <= start) {
+            end = nextStart >= 0 ? nextStart : text.length();
+        }
+        
+        String methodEvaluation = text.substring(start, end).trim();
+        // Remove the trailing separator if present
+        if (methodEvaluation.endsWith("---")) {
+            methodEvaluation = methodEvaluation.substring(0, methodEvaluation.length() - 3).trim();
+        }
+        return methodEvaluation;
+    }
+    
     /**
      * Parses a method evaluation from the API response.
      * 
      * @param methodEvaluation The method evaluation text
      * @return The metrics result
      */
-    private MetricsResult parseMethodEvaluation(String methodEvaluation) {
+    MetricsResult parseMethodEvaluation(String methodEvaluation) {
         MetricsResult result = new MetricsResult();
         
         try {
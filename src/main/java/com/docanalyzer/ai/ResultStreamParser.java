@@ -0,0 +1,25 @@
+package com.docanalyzer.ai;
+
+/**
+ * Parses a batch response piece by piece and hands out the result of each method as soon as
+ * its evaluation is complete.
+ */
+public interface ResultStreamParser {
+
+    /**
+     * Appends the next piece of the response and hands out every evaluation it completes.
+     *
+     * @param delta The content received since the last call
+     */
+    void append(CharSequence delta);
+
+    /**
+     * Hands out the remaining evaluations once the response is complete.
+     */
+    void finish();
+
+    /**
+     * Discards a partially received response, so the parser can be used for a retried request.
+     */
+    void reset();
+}
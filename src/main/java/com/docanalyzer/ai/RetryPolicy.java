@@ -0,0 +1,249 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.RunStatistics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retries API calls that fail with a transient error.
+ * <p>
+ * Overloaded (529) and server errors, timeouts (connect, response and request deadline) and I/O
+ * failures such as connection resets are retried with exponential backoff and full jitter, up to
+ * a maximum number of attempts; a {@code retry-after} header raises the delay to at least what the
+ * server asked for. Client errors (400, 401, 403, 404, 413, ...) and cancelled requests fail
+ * immediately. Rate limiting (429) is queued by the
+ * {@link RequestScheduler} and is not retried again here. Every attempt passes through the
+ * {@link CircuitBreaker}, so dispatch pauses while the API keeps failing.
+ */
+@Slf4j
+public class RetryPolicy {
+
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(408, 409, 500, 502, 503, 504, 529);
+
+    /**
+     * A call that can be retried.
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final CircuitBreaker circuitBreaker;
+    private final RunStatistics runStatistics;
+
+    /**
+     * Creates a new RetryPolicy with the settings of the configuration.
+     *
+     * @param config The configuration
+     * @param circuitBreaker The circuit breaker guarding every attempt, or null for none
+     * @param runStatistics The statistics to record retries in, or null
+     */
+    public RetryPolicy(Configuration config, CircuitBreaker circuitBreaker, RunStatistics runStatistics) {
+        this(config.getRetryMaxAttempts(), config.getRetryBaseDelayMs(), config.getRetryMaxDelayMs(), circuitBreaker, runStatistics);
+    }
+
+    /**
+     * Creates a new RetryPolicy.
+     *
+     * @param maxAttempts The maximum number of attempts, including the first
+     * @param baseDelayMs The delay before the first retry, doubled for each later one
+     * @param maxDelayMs The maximum delay between two attempts
+     * @param circuitBreaker The circuit breaker guarding every attempt, or null for none
+     * @param runStatistics The statistics to record retries in, or null
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, CircuitBreaker circuitBreaker,
+                       RunStatistics runStatistics) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(0, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.circuitBreaker = circuitBreaker;
+        this.runStatistics = runStatistics;
+    }
+
+    /**
+     * Executes a call, retrying it while it fails with a transient error.
+     *
+     * @param call The call
+     * @param <T> The type of the result
+     * @return The result of the first successful attempt
+     * @throws IOException The error of the last attempt if it was fatal or the attempts are used up
+     */
+    public <T> T execute(Call<T> call) throws IOException {
+        return execute(call, e -> true);
+    }
+
+    /**
+     * Executes a call that may only be sent again after some of its transient errors, such as a
+     * request that is not idempotent and must not be repeated once the API may have received it.
+     *
+     * @param call The call
+     * @param resendable Decides whether a transient error leaves the call safe to send again
+     * @param <T> The type of the result
+     * @return The result of the first successful attempt
+     * @throws IOException The error of the last attempt if it was fatal, the call is not safe to
+     *                     send again or the attempts are used up
+     */
+    public <T> T execute(Call<T> call, Predicate<IOException> resendable) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquirePermission();
+            }
+
+            T response;
+            try {
+                response = call.call();
+            } catch (IOException e) {
+                boolean retryable = isRetryable(e);
+                if (isCancellation(e)) {
+                    // Says nothing about the health of the API
+                    if (circuitBreaker != null) {
+                        circuitBreaker.releasePermission();
+                    }
+                } else {
+                    recordOutcome(!retryable);
+                }
+                if (runStatistics != null && isTimeout(e)) {
+                    runStatistics.recordTimeout();
+                }
+
+                if (!retryable || !resendable.test(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                long delayMs = backoffDelay(attempt, e);
+                if (runStatistics != null) {
+                    runStatistics.recordRetry();
+                }
+                log.warn("API call failed ({}), retrying in {} ms (attempt {}/{})", describe(e), delayMs, attempt, maxAttempts);
+                sleep(delayMs);
+                continue;
+            } catch (RuntimeException e) {
+                recordOutcome(false);
+                throw e;
+            }
+
+            recordOutcome(true);
+            return response;
+        }
+    }
+
+    /**
+     * Reports the outcome of an attempt to the circuit breaker.
+     *
+     * @param healthy True if the API answered, even with a client error
+     */
+    private void recordOutcome(boolean healthy) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (healthy) {
+            circuitBreaker.recordSuccess();
+        } else {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+     * Classifies an error as transient or fatal.
+     *
+     * @param e The error
+     * @return True if the call may succeed when sent again
+     */
+    public boolean isRetryable(IOException e) {
+        if (e instanceof ApiException apiException) {
+            return RETRYABLE_STATUS_CODES.contains(apiException.getStatusCode());
+        }
+        if (isTimeout(e)) {
+            return true;
+        }
+
+        // Interrupts and cancelled requests mean the run is stopping
+        return !isCancellation(e);
+    }
+
+    /**
+     * Checks whether an error is a cancellation: a cancelled request or an interrupt, but not a timeout.
+     *
+     * @param e The error
+     * @return True for cancellations
+     */
+    static boolean isCancellation(IOException e) {
+        return !isTimeout(e) && (hasCause(e, InterruptedIOException.class) || hasCause(e, InterruptedException.class));
+    }
+
+    /**
+     * Checks whether an error is a timeout: a connect or response timeout of the HTTP client, or a
+     * request aborted at its {@link DeadlineExceededException deadline}.
+     *
+     * @param e The error
+     * @return True for timeouts
+     */
+    public static boolean isTimeout(IOException e) {
+        return hasCause(e, SocketTimeoutException.class);
+    }
+
+    /**
+     * Checks whether an error or one of its causes has a type. The whole chain is searched, as
+     * AnthropicClient wraps transport errors, while an aborted request wraps the socket error
+     * that its abort caused.
+     *
+     * @param e The error
+     * @param type The type
+     * @return True if the error or a cause is of the type
+     */
+    static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the delay before the next attempt: a random value up to the exponential backoff
+     * ("full jitter"), but never less than the server's {@code retry-after}.
+     *
+     * @param attempt The number of the failed attempt, starting at 1
+     * @param e The error of the failed attempt
+     * @return The delay in milliseconds
+     */
+    long backoffDelay(int attempt, IOException e) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+        long delay = ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+        if (e instanceof ApiException apiException && apiException.getRetryAfterMs() > delay) {
+            delay = Math.min(apiException.getRetryAfterMs(), maxDelayMs);
+        }
+        return delay;
+    }
+
+    private static String describe(IOException e) {
+        if (e instanceof ApiException apiException) {
+            return "status " + apiException.getStatusCode();
+        }
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    private static void sleep(long delayMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.metrics.MetricsValidator;
+import com.docanalyzer.model.MetricsResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Parses the evaluations of a batch returned as structured JSON through the
+ * {@value #TOOL_NAME} tool:
+ * <pre>
+ * {"evaluations": [
+ *   {"method": 1,
+ *    "metrics": [{"name": "Completeness", "score": 4, "justification": "..."}],
+ *    "recommendations": ["..."]}
+ * ]}
+ * </pre>
+ * The input is read with Jackson's non-blocking parser, so it can be fed piece by piece while it
+ * is streamed and every evaluation is handed out as soon as its object is closed. Parsing is a
+ * single pass over the input. An evaluation that does not match the schema or fails validation
+ * is reported as failed without affecting the other methods of the batch.
+ */
+@Slf4j
+public class StructuredResponseParser implements ResultStreamParser {
+
+    /**
+     * The name of the tool the evaluations are recorded with.
+     */
+    public static final String TOOL_NAME = "record_evaluations";
+
+    private static final String EVALUATIONS_FIELD = "evaluations";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final MetricsValidator metricsValidator;
+    private final BiConsumer<Integer, MetricsResult> resultConsumer;
+    private final List<Integer> failedMethods = new ArrayList<>();
+    private JsonParser parser;
+    private TokenBuffer evaluation;
+    private int evaluationDepth;
+    private int evaluationCount;
+    private boolean malformed;
+
+    /**
+     * Creates a new StructuredResponseParser.
+     *
+     * @param metricsValidator The validator for metric names and scores, or null for none
+     * @param resultConsumer Receives the method index (starting at 1) and result of each valid evaluation
+     */
+    public StructuredResponseParser(MetricsValidator metricsValidator, BiConsumer<Integer, MetricsResult> resultConsumer) {
+        this.metricsValidator = metricsValidator;
+        this.resultConsumer = resultConsumer;
+        reset();
+    }
+
+    @Override
+    public void append(CharSequence delta) {
+        if (malformed) {
+            return;
+        }
+        byte[] bytes = delta.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (IOException e) {
+            markMalformed(e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (!malformed) {
+            try {
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+                drain();
+            } catch (IOException e) {
+                markMalformed(e);
+            }
+        }
+        if (evaluation != null && !malformed) {
+            log.warn("Structured response ended inside evaluation {}", evaluationCount + 1);
+        }
+    }
+
+    @Override
+    public final void reset() {
+        try {
+            parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create JSON parser", e);
+        }
+        evaluation = null;
+        evaluationDepth = 0;
+        evaluationCount = 0;
+        malformed = false;
+        failedMethods.clear();
+    }
+
+    /**
+     * Gets the methods whose evaluation was present but invalid.
+     *
+     * @return The method indices, starting at 1
+     */
+    public List<Integer> getFailedMethods() {
+        return Collections.unmodifiableList(failedMethods);
+    }
+
+    /**
+     * Checks whether the input stopped being valid JSON. Evaluations completed before the error
+     * have been handed out.
+     *
+     * @return True if the input is malformed
+     */
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Reads all tokens that are available, buffering the tokens of the evaluation being read.
+     *
+     * @throws IOException If the input is not valid JSON
+     */
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (evaluation == null && token == JsonToken.START_OBJECT && isEvaluationObject(parser.getParsingContext())) {
+                evaluation = new TokenBuffer(parser);
+                evaluationDepth = 0;
+            }
+            if (evaluation == null) {
+                continue;
+            }
+
+            evaluation.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                evaluationDepth++;
+            } else if (token.isStructEnd() && --evaluationDepth == 0) {
+                completeEvaluation();
+            }
+        }
+    }
+
+    /**
+     * Checks whether an object is an element of the top-level evaluations array.
+     *
+     * @param context The context of the object
+     * @return True for an evaluation object
+     */
+    private static boolean isEvaluationObject(JsonStreamContext context) {
+        JsonStreamContext array = context.getParent();
+        if (array == null || !array.inArray()) {
+            return false;
+        }
+        JsonStreamContext root = array.getParent();
+        return root != null && root.inObject() && EVALUATIONS_FIELD.equals(root.getCurrentName())
+                && root.getParent() != null && root.getParent().inRoot();
+    }
+
+    /**
+     * Parses a buffered evaluation and hands out its result.
+     *
+     * @throws IOException If reading the buffered tokens fails
+     */
+    private void completeEvaluation() throws IOException {
+        evaluationCount++;
+        try (JsonParser evaluationParser = evaluation.asParser()) {
+            evaluationParser.nextToken();
+            MetricsResult result = new MetricsResult();
+            int methodIndex = readEvaluation(evaluationParser, result, evaluationCount);
+            resultConsumer.accept(methodIndex, result);
+        } catch (InvalidEvaluationException e) {
+            log.warn("Invalid evaluation for method {}: {}", e.methodIndex, e.getMessage());
+            failedMethods.add(e.methodIndex);
+        } finally {
+            evaluation = null;
+        }
+    }
+
+    /**
+     * Reads one evaluation object into a result.
+     *
+     * @param p The parser, positioned on the start of the object
+     * @param result The result to fill
+     * @param position The position of the evaluation in the array, used when it has no method index
+     * @return The method index of the evaluation
+     * @throws IOException If reading fails
+     * @throws InvalidEvaluationException If the evaluation does not match the schema or fails validation
+     */
+    private int readEvaluation(JsonParser p, MetricsResult result, int position) throws IOException, InvalidEvaluationException {
+        int methodIndex = position;
+        boolean hasMetrics = false;
+        String error = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "method" -> {
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        methodIndex = p.getIntValue();
+                    } else {
+                        error = "method is not an integer";
+                    }
+                }
+                case "metrics" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        error = "metrics is not an array";
+                        p.skipChildren();
+                        break;
+                    }
+                    JsonToken element;
+                    while ((element = p.nextToken()) != JsonToken.END_ARRAY && element != null) {
+                        String metricError = element == JsonToken.START_OBJECT ? readMetric(p, result) : "metric is not an object";
+                        if (metricError != null && error == null) {
+                            error = metricError;
+                        }
+                        p.skipChildren();
+                        hasMetrics = true;
+                    }
+                }
+                case "recommendations" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        p.skipChildren();
+                        break;
+                    }
+                    JsonToken element;
+                    while ((element = p.nextToken()) != JsonToken.END_ARRAY && element != null) {
+                        if (element == JsonToken.VALUE_STRING && !p.getText().isBlank()) {
+                            result.addRecommendation(p.getText().trim());
+                        }
+                        p.skipChildren();
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (error == null && !hasMetrics) {
+            error = "no metrics";
+        }
+        if (error != null) {
+            throw new InvalidEvaluationException(methodIndex, error);
+        }
+        return methodIndex;
+    }
+
+    /**
+     * Reads one metric object and adds it to the result.
+     *
+     * @param p The parser, positioned on the start of the object
+     * @param result The result to add the metric to
+     * @return An error message if the metric is invalid, otherwise null
+     * @throws IOException If reading fails
+     */
+    private String readMetric(JsonParser p, MetricsResult result) throws IOException {
+        String name = null;
+        Integer score = null;
+        String justification = "";
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken value = p.nextToken();
+            if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                name = p.getText().trim();
+            } else if ("score".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                score = p.getIntValue();
+            } else if ("justification".equals(field) && value == JsonToken.VALUE_STRING) {
+                justification = p.getText().trim();
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (name == null || name.isEmpty() || score == null) {
+            return "metric without name or integer score";
+        }
+        if (metricsValidator != null) {
+            MetricsValidator.ValidationResult validation = metricsValidator.validateMetricResult(name, score);
+            if (!validation.isSuccess()) {
+                return validation.getErrorMessage();
+            }
+        }
+        result.addMetricResult(name, score, justification);
+        return null;
+    }
+
+    private void markMalformed(IOException e) {
+        malformed = true;
+        log.warn("Structured response is not valid JSON after {} evaluations: {}", evaluationCount, e.getMessage());
+    }
+
+    /**
+     * Signals an evaluation that does not match the schema.
+     */
+    private static class InvalidEvaluationException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int methodIndex;
+
+        InvalidEvaluationException(int methodIndex, String message) {
+            super(message);
+            this.methodIndex = methodIndex;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.docanalyzer.ai;
+
+/**
+ * Token bucket for a per-minute budget.
+ * <p>
+ * The bucket holds up to one minute of budget and refills continuously. It may go negative when
+ * the actual cost of a request turns out higher than reserved; later requests then wait until the
+ * debt is paid back. Not thread-safe; {@link RequestScheduler} guards it.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    private final long capacity;
+    private double available;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param perMinute The budget per minute
+     * @param nowNanos The current time in nanoseconds
+     */
+    TokenBucket(long perMinute, long nowNanos) {
+        this.capacity = perMinute;
+        this.available = perMinute;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Computes how long a request of the given cost has to wait. A cost above the capacity is
+     * treated as the full capacity, so oversized requests wait for a full bucket instead of forever.
+     *
+     * @param cost The cost of the request
+     * @param nowNanos The current time in nanoseconds
+     * @return The wait in nanoseconds, or 0 if the request can go now
+     */
+    long waitNanos(long cost, long nowNanos) {
+        refill(nowNanos);
+        double deficit = Math.min(cost, capacity) - available;
+        return deficit <= 0 ? 0 : (long) Math.ceil(deficit * NANOS_PER_MINUTE / capacity);
+    }
+
+    /**
+     * Takes budget out of the bucket.
+     *
+     * @param cost The amount to take; negative amounts return budget
+     * @param nowNanos The current time in nanoseconds
+     */
+    void take(long cost, long nowNanos) {
+        refill(nowNanos);
+        available = Math.min(capacity, available - cost);
+    }
+
+    /**
+     * Lowers the available budget to what the server reports as remaining.
+     *
+     * @param remaining The remaining budget reported by the server
+     * @param nowNanos The current time in nanoseconds
+     */
+    void limitTo(long remaining, long nowNanos) {
+        refill(nowNanos);
+        available = Math.min(available, remaining);
+    }
+
+    double available(long nowNanos) {
+        refill(nowNanos);
+        return available;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            available = Math.min(capacity, available + (double) elapsed * capacity / NANOS_PER_MINUTE);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
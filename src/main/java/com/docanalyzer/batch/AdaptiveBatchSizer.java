@@ -0,0 +1,85 @@
+package com.docanalyzer.batch;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adjusts the batch size during a run from the outcome of each request. Larger batches share
+ * the guidelines prefix among more methods, but take longer and are more likely to come back
+ * truncated or with methods missing.
+ * <p>
+ * The size grows by one after every full batch that came back complete within the target
+ * latency, and is halved after a batch that was truncated, slow, or had too many methods
+ * missing from its response. A batch planned before the size went down only brings it down to
+ * half its own size, so concurrent batches that fail together halve the size once, not once
+ * each. The size always stays within the configured bounds; with equal bounds it is fixed.
+ * Thread-safe, shared by concurrent batch workers.
+ */
+@Slf4j
+public class AdaptiveBatchSizer {
+
+    // The share of methods missing from a response that is put down to a too large batch
+    private static final double MAX_INCOMPLETE_RATIO = 0.2;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyMs;
+    private int batchSize;
+
+    /**
+     * Creates a new AdaptiveBatchSizer.
+     *
+     * @param initialBatchSize The batch size to start with
+     * @param minBatchSize The smallest batch size
+     * @param maxBatchSize The largest batch size
+     * @param targetLatencyMs The latency a batch request should stay below
+     */
+    public AdaptiveBatchSizer(int initialBatchSize, int minBatchSize, int maxBatchSize, long targetLatencyMs) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.targetLatencyMs = targetLatencyMs;
+        this.batchSize = Math.min(this.maxBatchSize, Math.max(this.minBatchSize, initialBatchSize));
+    }
+
+    /**
+     * Records the outcome of a batch request.
+     *
+     * @param methods The number of methods in the batch
+     * @param latencyMs How long the request took
+     * @param incomplete The number of methods missing from the response or missing metrics
+     * @param truncated Whether the response hit the output token limit
+     */
+    public synchronized void record(int methods, long latencyMs, int incomplete, boolean truncated) {
+        if (methods <= 0) {
+            return;
+        }
+
+        if (truncated) {
+            decrease(methods, "response truncated");
+        } else if (latencyMs > targetLatencyMs) {
+            decrease(methods, "latency " + latencyMs + " ms above target of " + targetLatencyMs + " ms");
+        } else if ((double) incomplete / methods > MAX_INCOMPLETE_RATIO) {
+            decrease(methods, incomplete + " of " + methods + " methods incomplete");
+        } else if (incomplete == 0 && methods >= batchSize && batchSize < maxBatchSize) {
+            // Only a full batch shows that the current size works
+            batchSize++;
+            log.info("Batch size increased to {} (batch of {} methods complete in {} ms)", batchSize, methods, latencyMs);
+        }
+    }
+
+    /**
+     * Gets the current batch size.
+     *
+     * @return The number of methods to put into a batch
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    private void decrease(int methods, String reason) {
+        int decreased = Math.max(minBatchSize, Math.max(batchSize, methods) / 2);
+        if (decreased < batchSize) {
+            log.info("Batch size decreased from {} to {} ({})", batchSize, decreased, reason);
+            batchSize = decreased;
+        }
+    }
+}
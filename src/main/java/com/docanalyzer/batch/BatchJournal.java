@@ -0,0 +1,219 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Write-ahead journal of evaluated methods.
+ * <p>
+ * Every evaluated method is appended as one JSON line holding the method identity, the method
+ * details needed for the report and its {@link MetricsResult}. The journal is flushed after each
+ * batch, so a run that dies part-way can be resumed: opening an existing journal loads its
+ * entries, already evaluated methods are skipped and new results are appended to the same file.
+ * A truncated last line left by a crash is ignored.
+ */
+@Slf4j
+public class BatchJournal implements Closeable {
+
+    private final Path journalPath;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Method> entries = new LinkedHashMap<>();
+    private final BufferedWriter writer;
+    private boolean closed;
+
+    /**
+     * The method body and code are not needed to resume or to write the report, so they are
+     * left out of the journal to keep it small.
+     */
+    @JsonIgnoreProperties(value = {"body", "fullCode", "metricsResult"}, ignoreUnknown = true)
+    private abstract static class JournalMethod {
+    }
+
+    /**
+     * Opens a journal, loading the entries of an existing file and appending to it.
+     *
+     * @param journalPath The journal file
+     * @throws IOException If the journal cannot be read or opened for writing
+     */
+    public BatchJournal(Path journalPath) throws IOException {
+        this.journalPath = journalPath;
+        this.objectMapper = new ObjectMapper()
+                .addMixIn(Method.class, JournalMethod.class)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        if (Files.exists(journalPath)) {
+            load();
+        } else if (journalPath.getParent() != null) {
+            Files.createDirectories(journalPath.getParent());
+        }
+
+        boolean truncated = endsWithPartialLine(journalPath);
+        this.writer = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (truncated) {
+            // Terminate the partial line so the next entry starts on a line of its own
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Gets the journaled result of a method.
+     *
+     * @param method The method
+     * @return The journaled result, or empty if the method has not been evaluated yet
+     */
+    public synchronized Optional<MetricsResult> get(Method method) {
+        Method entry = entries.get(key(method));
+        return entry == null ? Optional.empty() : Optional.ofNullable(entry.getMetricsResult());
+    }
+
+    /**
+     * Appends the evaluated methods of a batch and flushes them to disk.
+     * Methods without a result are skipped.
+     *
+     * @param methods The methods of the batch
+     */
+    public synchronized void record(List<Method> methods) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            for (Method method : methods) {
+                if (method.getMetricsResult() == null) {
+                    continue;
+                }
+
+                ObjectNode line = objectMapper.createObjectNode();
+                line.put("key", key(method));
+                line.set("method", objectMapper.valueToTree(method));
+                line.set("result", objectMapper.valueToTree(method.getMetricsResult()));
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            log.error("Failed to write to journal {}: {}", journalPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the methods loaded from the journal when it was opened, with their results.
+     *
+     * @return The journaled methods in the order they were evaluated
+     */
+    public synchronized List<Method> getLoadedMethods() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Gets the number of methods loaded from the journal when it was opened.
+     *
+     * @return The number of loaded methods
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * Flushes and closes the journal. Later calls to {@link #record(List)} are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error("Failed to close journal {}: {}", journalPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the entries of an existing journal. Later entries for the same method replace earlier ones.
+     *
+     * @throws IOException If the journal cannot be read
+     */
+    private void load() throws IOException {
+        int lineNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    Method method = objectMapper.treeToValue(node.get("method"), Method.class);
+                    method.setMetricsResult(objectMapper.treeToValue(node.get("result"), MetricsResult.class));
+                    entries.put(node.get("key").asText(), method);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Skipping unreadable journal entry at {}:{}: {}", journalPath, lineNumber, e.getMessage());
+                }
+            }
+        }
+
+        log.info("Loaded {} evaluated methods from journal {}", entries.size(), journalPath);
+    }
+
+    /**
+     * Checks whether a file ends in the middle of a line.
+     *
+     * @param file The file
+     * @return True if the file is not empty and does not end with a newline
+     * @throws IOException If the file cannot be read
+     */
+    private static boolean endsWithPartialLine(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return false;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) != '\n';
+        }
+    }
+
+    /**
+     * Builds the identity of a method from its file, class and signature.
+     *
+     * @param method The method
+     * @return The method key
+     */
+    private static String key(Method method) {
+        return method.getFilePath() + "#" + method.getClassName() + "#" + method.getSignature();
+    }
+}
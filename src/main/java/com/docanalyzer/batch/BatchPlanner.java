@@ -0,0 +1,146 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.Method;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Packs methods into as few batches as possible with first-fit decreasing: the largest methods
+ * are placed first, each into the first batch with room for it, so small methods fill the gaps
+ * left by large ones instead of a large method closing a half-empty batch. A batch is limited by
+ * an input token capacity and a maximum number of methods.
+ * <p>
+ * Optionally the methods of a class are packed as one unit, so they share a batch wherever the
+ * class fits into one. Methods keep their original order within a batch, and batches are
+ * ordered by their first method.
+ */
+@Slf4j
+public class BatchPlanner {
+
+    // Methods this close to the capacity are sent on their own
+    private static final int OVERSIZED_MARGIN_TOKENS = 500;
+
+    private final boolean groupByClass;
+    private final ToIntFunction<Method> tokenEstimator;
+
+    /**
+     * Creates a new BatchPlanner.
+     *
+     * @param groupByClass Whether the methods of a class are kept in the same batch where they fit
+     * @param tokenEstimator Estimates the input tokens a method adds to a prompt
+     */
+    public BatchPlanner(boolean groupByClass, ToIntFunction<Method> tokenEstimator) {
+        this.groupByClass = groupByClass;
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * Packs methods into batches.
+     *
+     * @param methods The methods to batch
+     * @param tokenCapacity The input tokens available for methods in one request
+     * @param maxMethods The maximum number of methods in one batch
+     * @return The batches
+     */
+    public List<List<Method>> plan(List<Method> methods, int tokenCapacity, int maxMethods) {
+        int capacity = Math.max(1, tokenCapacity);
+        int maxSize = Math.max(1, maxMethods);
+
+        List<Unit> oversized = new ArrayList<>();
+        List<Unit> units = new ArrayList<>();
+        for (List<Item> group : group(methods)) {
+            Unit unit = new Unit();
+            for (Item item : group) {
+                if (item.tokens > capacity - OVERSIZED_MARGIN_TOKENS) {
+                    log.warn("Method {} exceeds token limit ({} tokens). It will be processed individually with possible truncation.",
+                            item.method.getName(), item.tokens);
+                    Unit single = new Unit();
+                    single.add(item);
+                    oversized.add(single);
+                    continue;
+                }
+                // A class too large for one batch is split into consecutive units that each fit
+                if (unit.tokens + item.tokens > capacity || unit.items.size() >= maxSize) {
+                    units.add(unit);
+                    unit = new Unit();
+                }
+                unit.add(item);
+            }
+            if (!unit.items.isEmpty()) {
+                units.add(unit);
+            }
+        }
+
+        List<Unit> bins = new ArrayList<>();
+        units.sort(Comparator.comparingInt((Unit unit) -> unit.tokens).reversed());
+        for (Unit unit : units) {
+            Unit target = null;
+            for (Unit bin : bins) {
+                if (bin.tokens + unit.tokens <= capacity && bin.items.size() + unit.items.size() <= maxSize) {
+                    target = bin;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Unit();
+                bins.add(target);
+            }
+            unit.items.forEach(target::add);
+        }
+        bins.addAll(oversized);
+
+        bins.forEach(bin -> bin.items.sort(Comparator.comparingInt(item -> item.index)));
+        bins.sort(Comparator.comparingInt(bin -> bin.items.get(0).index));
+
+        List<List<Method>> batches = new ArrayList<>();
+        double fill = 0;
+        for (Unit bin : bins) {
+            batches.add(new ArrayList<>(bin.items.stream().map(item -> item.method).toList()));
+            fill += Math.min(1.0, Math.max((double) bin.tokens / capacity, (double) bin.items.size() / maxSize));
+        }
+        if (!batches.isEmpty()) {
+            log.info("Planned {} batches for {} methods, average fill {}%", batches.size(), methods.size(),
+                    String.format("%.1f", fill / batches.size() * 100));
+        }
+        return batches;
+    }
+
+    /**
+     * Groups methods into the units of packing: one per class when grouping by class, otherwise
+     * one per method.
+     *
+     * @param methods The methods
+     * @return The groups, in order of their first method
+     */
+    private List<List<Item>> group(List<Method> methods) {
+        Map<Object, List<Item>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            Object key = groupByClass ? method.getPackageName() + "." + method.getClassName() : i;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(new Item(method, i, tokenEstimator.applyAsInt(method)));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private record Item(Method method, int index, int tokens) {
+    }
+
+    /**
+     * Methods that are placed together, either as a unit of packing or as a batch being filled.
+     */
+    private static class Unit {
+        final List<Item> items = new ArrayList<>();
+        int tokens;
+
+        void add(Item item) {
+            items.add(item);
+            tokens += item.tokens;
+        }
+    }
+}
@@ -1,33 +1,98 @@
 package com.docanalyzer.batch;
 
 import com.docanalyzer.ai.AnthropicClient;
+import com.docanalyzer.ai.ApiException;
+import com.docanalyzer.ai.ApiResponse;
+import com.docanalyzer.ai.CircuitBreaker;
+import com.docanalyzer.ai.HedgingLlmClient;
+import com.docanalyzer.ai.IncrementalResponseParser;
+import com.docanalyzer.ai.LlmClient;
+import com.docanalyzer.ai.MessageBatchResult;
+import com.docanalyzer.ai.MessageBatchRunner;
+import com.docanalyzer.ai.Prompt;
 import com.docanalyzer.ai.PromptGenerator;
+import com.docanalyzer.ai.RequestCancelledException;
+import com.docanalyzer.ai.RequestScheduler;
+import com.docanalyzer.ai.RetryPolicy;
 import com.docanalyzer.ai.ResponseParser;
+import com.docanalyzer.ai.ResultStreamParser;
+import com.docanalyzer.ai.StructuredResponseParser;
+import com.docanalyzer.cache.EvaluationCache;
 import com.docanalyzer.config.Configuration;
+import com.docanalyzer.config.ModelPrice;
 import com.docanalyzer.metrics.MetricsManager;
 import com.docanalyzer.metrics.MetricsValidator;
 import com.docanalyzer.model.Method;
+import com.docanalyzer.model.Metric;
 import com.docanalyzer.model.MetricsResult;
+import com.docanalyzer.model.RunStatistics;
 import com.docanalyzer.util.TokenCounter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Processes methods in batches for efficient API usage.
  */
 @Slf4j
-public class BatchProcessor {
+public class BatchProcessor implements Closeable {
+    
+    /**
+     * The processing mode that sends batches through the asynchronous Message Batches API.
+     */
+    public static final String MODE_ASYNC_BATCH = "async-batch";
+    
+    /**
+     * The output format that requests the evaluations as JSON through a tool call.
+     */
+    public static final String OUTPUT_FORMAT_JSON = "json";
+    
+    // Message Batches API requests are billed at half the list price
+    private static final double MESSAGE_BATCH_PRICE_FACTOR = 0.5;
     
-    private final int defaultBatchSize;
     private final int maxTokensPerRequest;
+    private final int maxInflight;
+    private final int maxOutputTokens;
+    private final boolean streamingEnabled;
+    private final boolean promptCacheEnabled;
+    private final boolean structuredOutput;
+    private final int reaskMaxAttempts;
+    private final Set<String> expectedMetrics;
     private final TokenCounter tokenCounter;
-    private final AnthropicClient anthropicClient;
+    private final LlmClient llmClient;
+    private final HedgingLlmClient hedgingClient;
+    private final RequestScheduler requestScheduler;
+    private final RetryPolicy retryPolicy;
+    private final MessageBatchRunner messageBatchRunner;
     private final PromptGenerator promptGenerator;
+    private final EvaluationCache evaluationCache;
+    private final OutputSizeEstimator outputSizeEstimator;
+    private final BatchPlanner batchPlanner;
+    private final AdaptiveBatchSizer batchSizer;
+    private final BudgetGovernor budgetGovernor;
+    private final RunStatistics runStatistics = new RunStatistics();
     private ResponseParser responseParser;
+    private MetricsValidator metricsValidator;
+    private BatchJournal journal;
+    private boolean dryRun;
+    private volatile boolean cancelled;
+    private boolean projectedCacheWrite;
     
     /**
      * Creates a new BatchProcessor with the specified configuration and metrics manager.
@@ -36,15 +101,47 @@ public class BatchProcessor {
      * @param metricsManager The metrics manager for dynamic metric handling
      */
     public BatchProcessor(Configuration config, MetricsManager metricsManager) {
-        this.defaultBatchSize = config.getBatchSize();
         this.maxTokensPerRequest = config.getMaxTokensPerRequest();
+        this.maxInflight = Math.max(1, config.getBatchMaxInflight());
+        this.maxOutputTokens = config.getMaxTokens();
+        this.streamingEnabled = config.isStreamingEnabled();
+        this.promptCacheEnabled = config.isPromptCacheEnabled();
+        this.structuredOutput = OUTPUT_FORMAT_JSON.equalsIgnoreCase(config.getOutputFormat());
+        this.reaskMaxAttempts = Math.max(0, config.getBatchReaskMaxAttempts());
+        this.expectedMetrics = metricsManager.getAllMetrics().stream().map(Metric::getName).collect(Collectors.toSet());
         this.tokenCounter = new TokenCounter();
-        this.anthropicClient = new AnthropicClient(config);
-        this.promptGenerator = new PromptGenerator(metricsManager);
+        LlmClient client = LlmClient.create(config);
+        this.requestScheduler = new RequestScheduler(config, runStatistics);
+        this.retryPolicy = new RetryPolicy(config, new CircuitBreaker(config), runStatistics);
+        this.messageBatchRunner = MODE_ASYNC_BATCH.equals(config.getProcessingMode())
+                ? new MessageBatchRunner(config, requireAnthropicClient(client), retryPolicy)
+                : null;
+        // Message batches take hours anyway, so only requests of the sync mode are hedged
+        this.hedgingClient = config.isHedgeEnabled() && messageBatchRunner == null
+                ? new HedgingLlmClient(client, config, runStatistics)
+                : null;
+        this.llmClient = hedgingClient != null ? hedgingClient : client;
+        this.promptGenerator = new PromptGenerator(metricsManager, structuredOutput);
+        this.outputSizeEstimator = new OutputSizeEstimator(maxOutputTokens, expectedMetrics.size());
+        this.batchPlanner = new BatchPlanner(config.isBatchGroupByClass(), this::estimateMethodTokens);
+        this.batchSizer = config.isBatchAdaptiveEnabled()
+                ? new AdaptiveBatchSizer(config.getBatchSize(), config.getBatchSizeMin(), config.getBatchSizeMax(),
+                        config.getBatchTargetLatencyMs())
+                : new AdaptiveBatchSizer(config.getBatchSize(), config.getBatchSize(), config.getBatchSize(), Long.MAX_VALUE);
+        ModelPrice price = config.findModelPrice(config.getModelName()).orElse(null);
+        if (price == null && config.getBudgetMaxCostUsd() > 0) {
+            throw new IllegalArgumentException("No price configured for model " + config.getModelName()
+                    + ", add pricing." + config.getModelName() + "=<input>,<output> to enforce budget.max.cost.usd");
+        }
+        this.budgetGovernor = new BudgetGovernor(price, config.getBudgetMaxCostUsd(),
+                messageBatchRunner != null ? MESSAGE_BATCH_PRICE_FACTOR : 1.0);
+        this.evaluationCache = config.isCacheEnabled() && config.getCachePath() != null
+                ? new EvaluationCache(config, metricsManager.getFormattedGuidelines())
+                : null;
         
         // Create MetricsValidator and pass it to ResponseParser
         try {
-            MetricsValidator metricsValidator = MetricsValidator.fromConfiguration(config);
+            this.metricsValidator = MetricsValidator.fromConfiguration(config);
             this.responseParser = new ResponseParser(metricsValidator);
             log.info("BatchProcessor initialized with metrics validation enabled");
         } catch (Exception e) {
@@ -55,93 +152,772 @@ public class BatchProcessor {
     
     /**
      * Processes a list of methods in batches.
+     * Up to {@code batch.max.inflight} batches are sent to the API concurrently; each batch
+     * assigns its results to its own methods, so completion order does not matter.
+     * In async-batch mode all batches are submitted together as Message Batches API jobs instead.
+     * Once the API budget is exhausted, the remaining methods are left without a result.
      * 
      * @param methods The methods to process
      * @param guidelines The evaluation guidelines
      */
     public void processBatches(List<Method> methods, String guidelines) {
-        List<List<Method>> batches = createBatches(methods, guidelines);
+        List<Method> pendingMethods = applyCachedResults(applyJournaledResults(methods));
+        List<List<Method>> batches = createBatches(pendingMethods, guidelines);
+        
+        if (dryRun) {
+            batches.forEach(batch -> projectUsage(batch, guidelines));
+            return;
+        }
+        
+        if (messageBatchRunner != null) {
+            processMessageBatch(batches, guidelines);
+            return;
+        }
+        
         AtomicInteger processedCount = new AtomicInteger(0);
-        int totalMethods = methods.size();
+        AtomicInteger completedBatches = new AtomicInteger(0);
+        int totalMethods = pendingMethods.size();
+        int workers = Math.min(maxInflight, batches.size());
         
-        log.info("Processing {} methods in {} batches", totalMethods, batches.size());
+        log.info("Processing {} methods in {} batches ({} in flight)", totalMethods, batches.size(), workers);
         
-        for (List<Method> batch : batches) {
-            try {
-                String prompt = promptGenerator.generateBatchPrompt(batch, guidelines);
-                String response = anthropicClient.sendRequest(prompt);
-                Map<Integer, MetricsResult> results = responseParser.parseBatchResponse(response, batch.size());
-                
-                // Assign results to methods
-                for (int i = 0; i < batch.size(); i++) {
-                    Method method = batch.get(i);
-                    MetricsResult result = results.get(i + 1);
-                    
-                    if (result != null) {
-                        method.setMetricsResult(result);
-                    } else {
-                        log.error("No result found for method {} in batch", method.getName());
-                    }
+        try {
+            if (workers <= 1) {
+                for (List<Method> batch : batches) {
+                    processBatch(batch, guidelines, processedCount, completedBatches, totalMethods, batches.size());
                 }
-                
-                int processed = processedCount.addAndGet(batch.size());
-                log.info("Processed {}/{} methods", processed, totalMethods,
-                        (double) processed / totalMethods * 100);
-                
-            } catch (Exception e) {
-                log.error("Error processing batch: {}", e.getMessage(), e);
+            } else {
+                processConcurrently(batches, guidelines, workers, processedCount, completedBatches, totalMethods);
             }
+        } finally {
+            awaitHedgedAttempts();
         }
     }
     
     /**
-     * Creates batches of methods based on token limits and batch size.
+     * Processes batches on a pool of workers.
      * 
-     * @param methods The methods to batch
-     * @param guidelines The evaluation guidelines
-     * @return A list of method batches
+     * @param batches The batches to process
+     * @param guidelines The formatted guidelines
+     * @param workers The number of batches in flight
+     * @param processedCount The count of processed methods
+     * @param completedBatches The count of completed batches
+     * @param totalMethods The number of methods to process
      */
-    private List<List<Method>> createBatches(List<Method> methods, String guidelines) {
-        List<List<Method>> batches = new ArrayList<>();
-        List<Method> currentBatch = new ArrayList<>();
-        int guidelinesTokens = tokenCounter.estimateTokenCount(guidelines);
-        int currentBatchTokens = guidelinesTokens;
-        int maxMethodTokens = maxTokensPerRequest - guidelinesTokens - 500; // 500 tokens buffer
+    private void processConcurrently(List<List<Method>> batches, String guidelines, int workers,
+                                     AtomicInteger processedCount, AtomicInteger completedBatches, int totalMethods) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+                Thread.ofPlatform().name("batch-worker-", 1).daemon(true).factory());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<Method> batch : batches) {
+                futures.add(executor.submit(() ->
+                        processBatch(batch, guidelines, processedCount, completedBatches, totalMethods, batches.size())));
+            }
+            
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Batch processing interrupted after {}/{} methods", processedCount.get(), totalMethods);
+        } catch (ExecutionException e) {
+            log.error("Unexpected error in batch worker: {}", e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Waits for the requests that lost a hedged race, so that their cost is in the statistics
+     * once the batches are processed.
+     */
+    private void awaitHedgedAttempts() {
+        if (hedgingClient == null) {
+            return;
+        }
+        try {
+            hedgingClient.awaitAttempts();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Assigns results recorded in the journal of an interrupted run that is being resumed.
+     * Results that lack metrics, as journaled by earlier versions, are evaluated again.
+     * 
+     * @param methods The methods to process
+     * @return The methods that have not been evaluated yet
+     */
+    private List<Method> applyJournaledResults(List<Method> methods) {
+        if (journal == null || journal.size() == 0) {
+            return methods;
+        }
         
+        List<Method> pending = new ArrayList<>();
         for (Method method : methods) {
-            int methodTokens = estimateMethodTokens(method);
-            
-            // If adding this method would exceed the token limit or batch size, start a new batch
-            if ((currentBatchTokens + methodTokens > maxTokensPerRequest) || 
-                (currentBatch.size() >= defaultBatchSize)) {
+            Optional<MetricsResult> journaled = journal.get(method);
+            if (journaled.isPresent() && isComplete(journaled.get())) {
+                method.setMetricsResult(journaled.get());
+                outputSizeEstimator.recordEvaluation(journaled.get());
+                runStatistics.recordResumed();
+            } else {
+                pending.add(method);
+            }
+        }
+        
+        if (pending.size() < methods.size()) {
+            log.info("Resumed {} methods from journal, {} left to evaluate", methods.size() - pending.size(), pending.size());
+        }
+        return pending;
+    }
+    
+    /**
+     * Assigns cached results to methods that were evaluated in an earlier run.
+     * 
+     * @param methods The methods to process
+     * @return The methods that still need to be sent to the API
+     */
+    private List<Method> applyCachedResults(List<Method> methods) {
+        if (evaluationCache == null) {
+            return methods;
+        }
+        
+        List<Method> hits = new ArrayList<>();
+        List<Method> misses = new ArrayList<>();
+        for (Method method : methods) {
+            Optional<MetricsResult> cached = evaluationCache.get(method);
+            if (cached.isPresent()) {
+                method.setMetricsResult(cached.get());
+                outputSizeEstimator.recordEvaluation(cached.get());
+                hits.add(method);
+                runStatistics.recordCacheHit();
+            } else {
+                misses.add(method);
+                runStatistics.recordCacheMiss();
+            }
+        }
+        
+        if (journal != null && !hits.isEmpty()) {
+            journal.record(hits);
+        }
+        
+        log.info("Evaluation cache: {} hits, {} misses", methods.size() - misses.size(), misses.size());
+        return misses;
+    }
+    
+    /**
+     * Sends a single batch to the API and assigns the parsed results to its methods.
+     * Methods missing from the response, or missing some of their metrics, are sent again in a
+     * smaller follow-up batch, up to {@code batch.reask.max.attempts} times. A response cut off at
+     * the output token limit is not counted as a re-ask: its unfinished methods are split in half
+     * and both halves are sent again. Batches that are larger than the current adaptive batch size
+     * or than the output token limit is learned to allow are split before they are sent.
+     * 
+     * @param batch The methods in the batch
+     * @param guidelines The evaluation guidelines
+     * @param processedCount Counter of methods processed so far across all batches
+     * @param completedBatches Counter of batches completed so far
+     * @param totalMethods The total number of methods in the run
+     * @param totalBatches The total number of batches in the run
+     */
+    private void processBatch(List<Method> batch, String guidelines, AtomicInteger processedCount,
+                              AtomicInteger completedBatches, int totalMethods, int totalBatches) {
+        try {
+            Deque<List<Method>> queue = new ArrayDeque<>();
+            queue.add(batch);
+            int reasks = 0;
+            while (!queue.isEmpty() && !cancelled) {
+                List<Method> pending = queue.poll();
+                int maxMethods = maxBatchSize();
+                if (pending.size() > maxMethods) {
+                    pushFirst(queue, partition(pending, maxMethods));
+                    continue;
+                }
                 
-                if (!currentBatch.isEmpty()) {
-                    batches.add(new ArrayList<>(currentBatch));
-                    currentBatch.clear();
-                    currentBatchTokens = guidelinesTokens;
+                ApiResponse response = sendBatch(pending, guidelines);
+                if (response == null) {
+                    int skipped = pending.size() + queue.stream().mapToInt(List::size).sum();
+                    log.debug("Skipping {} methods, the API budget is exhausted", skipped);
+                    runStatistics.recordBudgetSkipped(skipped);
+                    break;
                 }
+                List<Method> incomplete = recordOutputSize(pending, response);
+                batchSizer.record(pending.size(), response.getLatencyMs(), incomplete.size(), response.isTruncated());
+                if (response.isTruncated() && incomplete.size() > 1) {
+                    List<List<Method>> halves = partition(incomplete, (incomplete.size() + 1) / 2);
+                    log.info("Response truncated at {} output tokens, re-sending {} unfinished methods as {} and {}",
+                            response.getOutputTokens(), incomplete.size(), halves.get(0).size(), halves.get(1).size());
+                    pushFirst(queue, halves);
+                } else if (!incomplete.isEmpty() && reasks < reaskMaxAttempts) {
+                    reasks++;
+                    log.info("Re-asking {} of {} methods missing from the response (attempt {}/{})",
+                            incomplete.size(), pending.size(), reasks, reaskMaxAttempts);
+                    runStatistics.recordReasked(incomplete.size());
+                    queue.addFirst(incomplete);
+                }
+            }
+        } catch (RequestCancelledException e) {
+            log.debug("Batch of {} methods cancelled", batch.size());
+        } catch (Exception e) {
+            log.error("Error processing batch: {}", e.getMessage(), e);
+        }
+        completeBatch(batch);
+        
+        int processed = processedCount.addAndGet(batch.size());
+        int batchesDone = completedBatches.incrementAndGet();
+        log.info("Processed {}/{} methods ({}/{} batches, {}%)", processed, totalMethods, batchesDone, totalBatches,
+                String.format("%.1f", (double) processed / totalMethods * 100));
+    }
+    
+    /**
+     * Sends one request for a batch and assigns the results it contains.
+     * 
+     * @param batch The methods in the batch
+     * @param guidelines The evaluation guidelines
+     * @return The API response, without its content when streamed, or null if the API budget
+     *         does not allow the request
+     * @throws IOException If the request fails after all retries
+     */
+    private ApiResponse sendBatch(List<Method> batch, String guidelines) throws IOException {
+        Prompt prompt = promptGenerator.generateBatchPrompt(batch, guidelines);
+        int inputTokens = prompt.estimateTokens(tokenCounter);
+        double reservation = budgetGovernor.cost(inputTokens, maxOutputTokens, 0, 0);
+        if (!budgetGovernor.tryReserve(reservation)) {
+            return null;
+        }
+        
+        AttemptBudget budget = new AttemptBudget(inputTokens, reservation);
+        try {
+            return send(batch, prompt, budget);
+        } finally {
+            budget.release();
+        }
+    }
+    
+    /**
+     * Sends the request for a batch, streamed or not, and assigns the results it contains.
+     * 
+     * @param batch The methods in the batch
+     * @param prompt The prompt of the batch
+     * @param budget The budget of the attempts of the request
+     * @return The API response, without its content when streamed
+     * @throws IOException If the request fails after all retries
+     */
+    private ApiResponse send(List<Method> batch, Prompt prompt, AttemptBudget budget) throws IOException {
+        // Retries transient failures; each attempt waits for rate-limit budget and is requeued on 429
+        ApiResponse apiResponse;
+        if (streamingEnabled) {
+            // Each method's result is assigned as soon as its evaluation has been streamed
+            ResultStreamParser parser = createResultParser(batch);
+            apiResponse = retryPolicy.execute(() -> {
+                if (hedgingClient != null) {
+                    // Only the deltas of the attempt that answers first reach the parser
+                    parser.reset();
+                    return hedgingClient.streamMessage(prompt, parser::append, budget);
+                }
+                return budget.send(() -> {
+                    parser.reset();
+                    return llmClient.streamMessage(prompt, parser::append);
+                });
+            });
+            parser.finish();
+            recordTokens(apiResponse);
+        } else {
+            apiResponse = retryPolicy.execute(() -> hedgingClient != null
+                    ? hedgingClient.sendMessage(prompt, budget)
+                    : budget.send(() -> llmClient.sendMessage(prompt)));
+            recordTokens(apiResponse);
+            assignResults(batch, apiResponse);
+        }
+        return apiResponse;
+    }
+    
+    /**
+     * Sends one attempt of a request, or the hedge of one, once the rate limits allow it and
+     * settles its reservation at the cost of the attempt: the usage it reported if it completed,
+     * nothing if the API rejected it, and its input estimate if it failed otherwise, as a request
+     * that was cut off, aborted or cancelled after it may have been sent is billed for its prompt at
+     * least. The cost is added to the run statistics here, the tokens of the response used by its caller.
+     * 
+     * @param inputTokens The estimated input tokens of the request
+     * @param reservation The cost reserved for the attempt, or 0
+     * @param call The request
+     * @return The response
+     * @throws IOException If the attempt fails
+     */
+    private ApiResponse sendAttempt(int inputTokens, double reservation, RequestScheduler.ApiCall call) throws IOException {
+        ApiResponse response = null;
+        boolean mayBeBilled = false;
+        try {
+            response = requestScheduler.execute(inputTokens, maxOutputTokens, call);
+            return response;
+        } catch (ApiException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            mayBeBilled = true;
+            throw e;
+        } finally {
+            double cost = response != null ? budgetGovernor.cost(response)
+                    : mayBeBilled ? budgetGovernor.cost(inputTokens, 0, 0, 0) : 0;
+            budgetGovernor.settle(reservation, cost);
+            runStatistics.recordCost(cost);
+        }
+    }
+    
+    /**
+     * The budget of the attempts of one request. The first attempt uses the reservation made
+     * before the request was planned; retries are settled at their own cost without a
+     * reservation, as they are not refused once the request has been started. A hedge reserves
+     * its own worst-case cost and is not sent if that does not fit the budget.
+     */
+    private final class AttemptBudget implements HedgingLlmClient.AttemptSender {
+        
+        private final int inputTokens;
+        private double reservation;
+        
+        AttemptBudget(int inputTokens, double reservation) {
+            this.inputTokens = inputTokens;
+            this.reservation = reservation;
+        }
+        
+        @Override
+        public ApiResponse send(RequestScheduler.ApiCall call) throws IOException {
+            return sendAttempt(inputTokens, takeReservation(), call);
+        }
+        
+        @Override
+        public ApiResponse sendHedge(RequestScheduler.ApiCall call) throws IOException {
+            double hedgeReservation = budgetGovernor.cost(inputTokens, maxOutputTokens, 0, 0);
+            if (!budgetGovernor.tryReserveOptional(hedgeReservation)) {
+                return null;
+            }
+            return sendAttempt(inputTokens, hedgeReservation, call);
+        }
+        
+        /**
+         * Releases the reservation if no attempt was sent, e.g. while the circuit breaker is open.
+         */
+        void release() {
+            budgetGovernor.settle(takeReservation(), 0);
+        }
+        
+        private synchronized double takeReservation() {
+            double reserved = reservation;
+            reservation = 0;
+            return reserved;
+        }
+    }
+    
+    /**
+     * Finds the unfinished methods of a batch after its response and lets the output size
+     * estimate learn from the response. For a truncated text response the last evaluation
+     * received is discarded as well, since it may have been cut off after its metrics.
+     * 
+     * @param batch The methods in the batch
+     * @param response The API response
+     * @return The unfinished methods, in batch order
+     */
+    private List<Method> recordOutputSize(List<Method> batch, ApiResponse response) {
+        if (!response.isTruncated()) {
+            List<Method> incomplete = findIncomplete(batch);
+            outputSizeEstimator.recordComplete(batch.size() - incomplete.size(), response.getOutputTokens());
+            return incomplete;
+        }
+        
+        if (!structuredOutput) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (batch.get(i).getMetricsResult() != null) {
+                    batch.get(i).setMetricsResult(null);
+                    break;
+                }
+            }
+        }
+        List<Method> incomplete = findIncomplete(batch);
+        runStatistics.recordTruncated();
+        outputSizeEstimator.recordTruncated(batch.size() - incomplete.size());
+        return incomplete;
+    }
+    
+    /**
+     * Splits methods into consecutive chunks.
+     * 
+     * @param methods The methods
+     * @param size The maximum size of a chunk
+     * @return The chunks, in method order
+     */
+    private static List<List<Method>> partition(List<Method> methods, int size) {
+        List<List<Method>> chunks = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i += size) {
+            chunks.add(methods.subList(i, Math.min(methods.size(), i + size)));
+        }
+        return chunks;
+    }
+    
+    /**
+     * Puts chunks at the head of the queue so they are sent next, in their order.
+     *
+     * @param queue The queue of batches to send
+     * @param chunks The chunks
+     */
+    private static void pushFirst(Deque<List<Method>> queue, List<List<Method>> chunks) {
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            queue.addFirst(chunks.get(i));
+        }
+    }
+    
+    /**
+     * Submits all batches as Message Batches API jobs and assigns the results as they are
+     * streamed back. Methods missing from the results are collected into a follow-up job, up to
+     * {@code batch.reask.max.attempts} times. Follow-up batches are sized to the output token
+     * limit learned from truncated results.
+     * 
+     * @param batches The batches
+     * @param guidelines The evaluation guidelines
+     */
+    private void processMessageBatch(List<List<Method>> batches, String guidelines) {
+        List<List<Method>> pending = batches;
+        try {
+            for (int attempt = 1; !pending.isEmpty(); attempt++) {
+                submitMessageBatch(pending, guidelines);
                 
-                // If a single method is too large, process it individually with truncation
-                if (methodTokens > maxMethodTokens) {
-                    log.warn("Method {} exceeds token limit ({} tokens). It will be processed individually with possible truncation.", 
-                            method.getName(), methodTokens);
-                    List<Method> singleMethodBatch = new ArrayList<>();
-                    singleMethodBatch.add(method);
-                    batches.add(singleMethodBatch);
-                    continue;
+                List<Method> incomplete = pending.stream().flatMap(batch -> findIncomplete(batch).stream()).toList();
+                if (incomplete.isEmpty() || attempt > reaskMaxAttempts || budgetGovernor.isExhausted() || cancelled) {
+                    break;
                 }
+                log.info("Re-asking {} methods missing from the message batch results (attempt {}/{})",
+                        incomplete.size(), attempt, reaskMaxAttempts);
+                runStatistics.recordReasked(incomplete.size());
+                pending = createBatches(incomplete, guidelines);
             }
-            
-            currentBatch.add(method);
-            currentBatchTokens += methodTokens;
+        } catch (IOException e) {
+            log.error("Error processing message batch: {}", e.getMessage(), e);
+        }
+        batches.forEach(this::completeBatch);
+    }
+    
+    /**
+     * Submits batches as one Message Batches API run and assigns the results. Each batch is
+     * identified by its index as the custom ID of its request. Only the batches that fit into
+     * the API budget are submitted.
+     * 
+     * @param batches The batches
+     * @param guidelines The evaluation guidelines
+     * @throws IOException If a job cannot be submitted, polled or downloaded
+     */
+    private void submitMessageBatch(List<List<Method>> batches, String guidelines) throws IOException {
+        Map<String, List<Method>> batchesById = new HashMap<>();
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        Map<String, Double> reservations = new HashMap<>();
+        for (int i = 0; i < batches.size(); i++) {
+            Prompt prompt = promptGenerator.generateBatchPrompt(batches.get(i), guidelines);
+            double reservation = budgetGovernor.cost(prompt.estimateTokens(tokenCounter), maxOutputTokens, 0, 0);
+            if (!budgetGovernor.tryReserve(reservation)) {
+                runStatistics.recordBudgetSkipped(batches.subList(i, batches.size()).stream().mapToInt(List::size).sum());
+                break;
+            }
+            String customId = "batch-" + i;
+            batchesById.put(customId, batches.get(i));
+            prompts.put(customId, prompt);
+            reservations.put(customId, reservation);
+        }
+        if (prompts.isEmpty()) {
+            return;
+        }
+        log.info("Submitting {} batches to the Message Batches API", prompts.size());
+        
+        AtomicInteger processedCount = new AtomicInteger(0);
+        int totalMethods = batchesById.values().stream().mapToInt(List::size).sum();
+        try {
+            messageBatchRunner.run(prompts, result -> assignMessageBatchResult(result, batchesById, reservations,
+                    processedCount, totalMethods));
+        } finally {
+            // Requests without a result are not billed
+            reservations.values().forEach(reservation -> budgetGovernor.settle(reservation, 0));
+        }
+    }
+    
+    /**
+     * Assigns the results of one request of a Message Batches API run.
+     * 
+     * @param result The result of the request
+     * @param batchesById The submitted batches by custom ID
+     * @param reservations The budget reserved for the requests without a result yet, by custom ID
+     * @param processedCount Counter of methods processed so far in the run
+     * @param totalMethods The number of methods submitted in the run
+     */
+    private void assignMessageBatchResult(MessageBatchResult result, Map<String, List<Method>> batchesById,
+                                          Map<String, Double> reservations, AtomicInteger processedCount, int totalMethods) {
+        List<Method> batch = batchesById.get(result.getCustomId());
+        if (batch == null) {
+            log.warn("Ignoring message batch result with unknown custom ID {}", result.getCustomId());
+            return;
+        }
+        
+        Double reservation = reservations.remove(result.getCustomId());
+        double cost = result.isSucceeded() ? budgetGovernor.cost(result.getMessage()) : 0;
+        budgetGovernor.settle(reservation != null ? reservation : 0, cost);
+        
+        if (result.isSucceeded()) {
+            recordUsage(result.getMessage());
+            assignResults(batch, result.getMessage());
+            if (result.getMessage().isTruncated()) {
+                log.warn("Message batch request {} was truncated at {} output tokens", result.getCustomId(),
+                        result.getMessage().getOutputTokens());
+            }
+            recordOutputSize(batch, result.getMessage());
+        } else {
+            log.error("Message batch request {} {}: {}", result.getCustomId(), result.getType(), result.getError());
+        }
+        
+        int processed = processedCount.addAndGet(batch.size());
+        log.info("Processed {}/{} methods", processed, totalMethods);
+    }
+    
+    /**
+     * Parses a complete batch response and assigns the results to the methods of the batch.
+     * 
+     * @param batch The methods in the batch
+     * @param response The API response
+     */
+    private void assignResults(List<Method> batch, ApiResponse response) {
+        String content = structuredOutput ? response.getToolInput() : response.getText();
+        if (content == null) {
+            log.error("Response for batch of {} methods has no {}", batch.size(), structuredOutput ? "tool call" : "text");
+        } else {
+            ResultStreamParser parser = createResultParser(batch);
+            parser.append(content);
+            parser.finish();
+        }
+    }
+    
+    /**
+     * Creates the parser for the response to a batch, which assigns each result as soon as it is parsed.
+     * 
+     * @param batch The methods in the batch
+     * @return A parser for formatted text, or for the tool input JSON with structured output
+     */
+    private ResultStreamParser createResultParser(List<Method> batch) {
+        return structuredOutput
+                ? new StructuredResponseParser(metricsValidator, (index, result) -> assignResult(batch, index, result))
+                : new IncrementalResponseParser(responseParser, (index, result) -> assignResult(batch, index, result));
+    }
+    
+    /**
+     * Assigns the result of one method of a batch.
+     * 
+     * @param batch The methods in the batch
+     * @param index The index of the method in the response, starting at 1
+     * @param result The parsed result
+     */
+    private void assignResult(List<Method> batch, int index, MetricsResult result) {
+        if (index < 1 || index > batch.size()) {
+            log.warn("Ignoring result for method {} of a batch of {}", index, batch.size());
+            return;
         }
         
-        // Add the last batch if not empty
-        if (!currentBatch.isEmpty()) {
-            batches.add(currentBatch);
+        batch.get(index - 1).setMetricsResult(result);
+        outputSizeEstimator.recordEvaluation(result);
+    }
+    
+    /**
+     * Finds the methods of a batch that received no result, or a result without all metrics.
+     * 
+     * @param batch The methods in the batch
+     * @return The incomplete methods, in batch order
+     */
+    private List<Method> findIncomplete(List<Method> batch) {
+        List<Method> incomplete = new ArrayList<>();
+        for (Method method : batch) {
+            if (!isComplete(method)) {
+                incomplete.add(method);
+            }
+        }
+        return incomplete;
+    }
+    
+    private boolean isComplete(Method method) {
+        return isComplete(method.getMetricsResult());
+    }
+    
+    private boolean isComplete(MetricsResult result) {
+        return result != null && result.getMetricResults().keySet().containsAll(expectedMetrics);
+    }
+    
+    /**
+     * Reports methods of a batch that are still incomplete, and caches and journals the complete
+     * results. Incomplete results are kept out of the journal, so a resumed run evaluates them again.
+     * 
+     * @param batch The methods in the batch
+     */
+    private void completeBatch(List<Method> batch) {
+        List<Method> complete = new ArrayList<>();
+        for (Method method : batch) {
+            if (method.getMetricsResult() == null) {
+                log.error("No result found for method {} in batch", method.getName());
+            } else if (!isComplete(method)) {
+                log.warn("Result for method {} is missing metrics", method.getName());
+            } else {
+                complete.add(method);
+                if (evaluationCache != null) {
+                    evaluationCache.put(method, method.getMetricsResult());
+                }
+            }
         }
         
-        return batches;
+        if (journal != null) {
+            journal.record(complete);
+        }
+    }
+    
+    /**
+     * Adds the token usage of a response to the run statistics.
+     * 
+     * @param response The API response
+     */
+    private void recordTokens(ApiResponse response) {
+        runStatistics.recordUsage(response.getInputTokens(), response.getOutputTokens(),
+                response.getCacheReadInputTokens(), response.getCacheCreationInputTokens());
+    }
+    
+    /**
+     * Adds the token usage and the cost of a response to the run statistics.
+     * 
+     * @param response The API response
+     */
+    private void recordUsage(ApiResponse response) {
+        runStatistics.recordUsage(response.getInputTokens(), response.getOutputTokens(),
+                response.getCacheReadInputTokens(), response.getCacheCreationInputTokens());
+        runStatistics.recordCost(budgetGovernor.cost(response));
+    }
+    
+    /**
+     * Adds the projected token usage and cost of a batch to the run statistics without sending
+     * it. The shared system prompt is counted as a cache write for the first batch and as a
+     * cache read afterwards when prompt caching is enabled.
+     * 
+     * @param batch The methods in the batch
+     * @param guidelines The evaluation guidelines
+     */
+    private void projectUsage(List<Method> batch, String guidelines) {
+        Prompt prompt = promptGenerator.generateBatchPrompt(batch, guidelines);
+        int systemTokens = tokenCounter.estimateTokenCount(prompt.getSystem());
+        int inputTokens = prompt.estimateTokens(tokenCounter) - systemTokens;
+        int outputTokens = (int) Math.round(batch.size() * outputSizeEstimator.getTokensPerMethod());
+        
+        int cacheReadTokens = 0;
+        int cacheWriteTokens = 0;
+        if (!promptCacheEnabled) {
+            inputTokens += systemTokens;
+        } else if (projectedCacheWrite) {
+            cacheReadTokens = systemTokens;
+        } else {
+            cacheWriteTokens = systemTokens;
+            projectedCacheWrite = true;
+        }
+        
+        runStatistics.recordUsage(inputTokens, outputTokens, cacheReadTokens, cacheWriteTokens);
+        runStatistics.recordCost(budgetGovernor.cost(inputTokens, outputTokens, cacheReadTokens, cacheWriteTokens));
+    }
+    
+    /**
+     * Checks whether batches are sent through the asynchronous Message Batches API.
+     * 
+     * @return True in async-batch mode
+     */
+    public boolean isAsyncBatchMode() {
+        return messageBatchRunner != null;
+    }
+    
+    /**
+     * Sets whether batches are only planned and their usage and cost projected into the run
+     * statistics, without sending any request.
+     * 
+     * @param dryRun True for a dry run
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+    
+    /**
+     * Sets the journal that evaluated methods are recorded in. Methods already present in the
+     * journal are not evaluated again.
+     * 
+     * @param journal The journal, or null to disable journaling
+     */
+    public void setJournal(BatchJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Gets the statistics collected during processing.
+     * 
+     * @return The run statistics
+     */
+    public RunStatistics getRunStatistics() {
+        return runStatistics;
+    }
+    
+    /**
+     * Cancels the run, e.g. when the process is shut down: the API requests in flight are aborted
+     * and no further batches are sent. Methods that have not been evaluated keep no result.
+     * May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        llmClient.cancelAll();
+    }
+    
+    /**
+     * Releases the API client and its pooled connections.
+     */
+    @Override
+    public void close() {
+        llmClient.close();
+    }
+    
+    /**
+     * Gets the client for the Message Batches API, which only the Anthropic provider offers.
+     * 
+     * @param client The configured client
+     * @return The Anthropic client
+     * @throws IllegalArgumentException If another provider is configured
+     */
+    private static AnthropicClient requireAnthropicClient(LlmClient client) {
+        if (!(client instanceof AnthropicClient anthropicClient)) {
+            throw new IllegalArgumentException("Processing mode " + MODE_ASYNC_BATCH + " requires the "
+                    + LlmClient.PROVIDER_ANTHROPIC + " provider");
+        }
+        return anthropicClient;
+    }
+    
+    /**
+     * Creates batches of methods based on token limits and batch size. A batch is limited by the
+     * input token limit, the current adaptive batch size and the number of method evaluations expected
+     * to fit into the output token limit; within those limits methods are bin-packed into as few
+     * batches as possible.
+     * 
+     * @param methods The methods to batch
+     * @param guidelines The evaluation guidelines
+     * @return A list of method batches
+     */
+    private List<List<Method>> createBatches(List<Method> methods, String guidelines) {
+        int tokenCapacity = maxTokensPerRequest - tokenCounter.estimateTokenCount(guidelines);
+        int batchSize = maxBatchSize();
+        log.debug("Planning batches of at most {} methods, about {} output tokens per method", batchSize,
+                Math.round(outputSizeEstimator.getTokensPerMethod()));
+        return batchPlanner.plan(methods, tokenCapacity, batchSize);
+    }
+    
+    /**
+     * Gets the number of methods a batch may hold now: the adaptive batch size, capped by the
+     * number of evaluations expected to fit into the output token limit.
+     * 
+     * @return The maximum batch size
+     */
+    private int maxBatchSize() {
+        return Math.min(batchSizer.getBatchSize(), outputSizeEstimator.maxMethodsPerBatch());
     }
     
     /**
@@ -0,0 +1,124 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.ai.ApiResponse;
+import com.docanalyzer.config.ModelPrice;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a run within its API budget. Before a request is sent, its worst-case cost is reserved;
+ * a request whose reservation would take the spent and reserved cost over the budget is refused,
+ * and so is every later one, so the run stops evaluating instead of overspending. Once the request
+ * has completed, the reservation is replaced by the actual cost from the usage it reported.
+ * Thread-safe, shared by concurrent batch workers.
+ */
+@Slf4j
+public class BudgetGovernor {
+
+    private final ModelPrice price;
+    private final double maxCostUsd;
+    private final double priceFactor;
+    private double spentUsd;
+    private double reservedUsd;
+    private boolean exhausted;
+
+    /**
+     * Creates a new BudgetGovernor.
+     *
+     * @param price The price of the model, or null if unknown, which counts every request as free
+     * @param maxCostUsd The budget in US dollars, or 0 for none
+     * @param priceFactor The share of the list price that is billed, e.g. 0.5 for the Message Batches API
+     */
+    public BudgetGovernor(ModelPrice price, double maxCostUsd, double priceFactor) {
+        this.price = price;
+        this.maxCostUsd = maxCostUsd;
+        this.priceFactor = priceFactor;
+    }
+
+    /**
+     * Calculates the cost of a request.
+     *
+     * @param inputTokens Uncached input tokens
+     * @param outputTokens Output tokens
+     * @param cacheReadTokens Input tokens read from the prompt cache
+     * @param cacheWriteTokens Input tokens written to the prompt cache
+     * @return The cost in US dollars
+     */
+    public double cost(long inputTokens, long outputTokens, long cacheReadTokens, long cacheWriteTokens) {
+        return price == null ? 0 : price.cost(inputTokens, outputTokens, cacheReadTokens, cacheWriteTokens) * priceFactor;
+    }
+
+    /**
+     * Calculates the cost of a completed request from the usage it reported.
+     *
+     * @param response The API response
+     * @return The cost in US dollars
+     */
+    public double cost(ApiResponse response) {
+        return cost(response.getInputTokens(), response.getOutputTokens(), response.getCacheReadInputTokens(),
+                response.getCacheCreationInputTokens());
+    }
+
+    /**
+     * Reserves the cost of a request that is about to be sent.
+     *
+     * @param costUsd The worst-case cost of the request
+     * @return True if the request may be sent, false if it would exceed the budget
+     */
+    public synchronized boolean tryReserve(double costUsd) {
+        if (exhausted) {
+            return false;
+        }
+        if (maxCostUsd > 0 && spentUsd + reservedUsd + costUsd > maxCostUsd) {
+            exhausted = true;
+            log.warn("API budget of ${} reached (${} spent, ${} in flight), no further requests are sent",
+                    String.format("%.2f", maxCostUsd), String.format("%.2f", spentUsd), String.format("%.2f", reservedUsd));
+            return false;
+        }
+        reservedUsd += costUsd;
+        return true;
+    }
+
+    /**
+     * Reserves the cost of an optional request, such as the hedge of a slow request. Unlike
+     * {@link #tryReserve(double)}, a refusal does not stop the run.
+     *
+     * @param costUsd The worst-case cost of the request
+     * @return True if the request may be sent
+     */
+    public synchronized boolean tryReserveOptional(double costUsd) {
+        if (exhausted || maxCostUsd > 0 && spentUsd + reservedUsd + costUsd > maxCostUsd) {
+            return false;
+        }
+        reservedUsd += costUsd;
+        return true;
+    }
+
+    /**
+     * Replaces the reservation of a request by its actual cost.
+     *
+     * @param reservedCostUsd The cost reserved for the request
+     * @param actualCostUsd The actual cost, 0 if the request failed
+     */
+    public synchronized void settle(double reservedCostUsd, double actualCostUsd) {
+        reservedUsd = Math.max(0, reservedUsd - reservedCostUsd);
+        spentUsd += actualCostUsd;
+    }
+
+    /**
+     * Checks whether a request has been refused because of the budget.
+     *
+     * @return True if no further requests are sent
+     */
+    public synchronized boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Gets the actual cost of the completed requests.
+     *
+     * @return The cost in US dollars
+     */
+    public synchronized double getSpentUsd() {
+        return spentUsd;
+    }
+}
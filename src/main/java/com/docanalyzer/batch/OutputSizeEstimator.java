@@ -0,0 +1,133 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.MetricsResult;
+import com.docanalyzer.util.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Estimates how many output tokens the evaluation of one method takes, so that batches can be
+ * sized to fit into the output token limit instead of being cut off.
+ * <p>
+ * Until a response has been measured, the estimate is modelled from the number of metrics and
+ * the average length of the justifications and recommendations seen so far, for example in
+ * cached results. Complete responses then update a moving average of the measured tokens per
+ * method. A truncated response shows that the limit was reached after the methods it completed,
+ * so the estimate is raised to at least the limit divided by that number. Thread-safe, shared by
+ * concurrent batch workers.
+ */
+@Slf4j
+public class OutputSizeEstimator {
+
+    private static final double SMOOTHING = 0.3;
+    // Leave room for the variance between methods
+    private static final double HEADROOM = 0.85;
+    // The "METHOD N [name] EVALUATION:" header, the separator and the recommendations heading
+    private static final int METHOD_OVERHEAD_TOKENS = 25;
+    // The "Name: score" and "Justification:" lines of a metric
+    private static final int METRIC_OVERHEAD_TOKENS = 12;
+    private static final int DEFAULT_JUSTIFICATION_TOKENS = 50;
+    private static final int DEFAULT_RECOMMENDATION_TOKENS = 40;
+
+    private final int maxOutputTokens;
+    private final int metricCount;
+    private final TokenCounter tokenCounter = new TokenCounter();
+    private double measuredTokensPerMethod;
+    private long justificationTokens;
+    private long justifications;
+    private long recommendationTokens;
+    private long evaluations;
+
+    /**
+     * Creates a new OutputSizeEstimator.
+     *
+     * @param maxOutputTokens The output token limit of a request
+     * @param metricCount The number of metrics every method is evaluated on
+     */
+    public OutputSizeEstimator(int maxOutputTokens, int metricCount) {
+        this.maxOutputTokens = Math.max(1, maxOutputTokens);
+        this.metricCount = Math.max(1, metricCount);
+    }
+
+    /**
+     * Records the lengths of the justifications and recommendations of an evaluation.
+     *
+     * @param result The evaluation of one method
+     */
+    public synchronized void recordEvaluation(MetricsResult result) {
+        if (result == null) {
+            return;
+        }
+        for (MetricsResult.MetricResult metric : result.getMetricResults().values()) {
+            justificationTokens += tokenCounter.estimateTokenCount(metric.getFeedback());
+            justifications++;
+        }
+        for (String recommendation : result.getRecommendations()) {
+            recommendationTokens += tokenCounter.estimateTokenCount(recommendation);
+        }
+        evaluations++;
+    }
+
+    /**
+     * Records a complete response.
+     *
+     * @param methods The number of methods evaluated in the response
+     * @param outputTokens The output tokens of the response
+     */
+    public synchronized void recordComplete(int methods, int outputTokens) {
+        if (methods <= 0 || outputTokens <= 0) {
+            return;
+        }
+        double observed = (double) outputTokens / methods;
+        measuredTokensPerMethod = measuredTokensPerMethod == 0
+                ? observed
+                : measuredTokensPerMethod + SMOOTHING * (observed - measuredTokensPerMethod);
+    }
+
+    /**
+     * Records a response that was cut off at the output token limit.
+     *
+     * @param completedMethods The number of methods whose evaluation was complete
+     */
+    public synchronized void recordTruncated(int completedMethods) {
+        double lowerBound = (double) maxOutputTokens / Math.max(1, completedMethods);
+        if (lowerBound > getTokensPerMethod()) {
+            measuredTokensPerMethod = lowerBound;
+            log.info("Output limit of {} tokens reached after {} methods, batches now hold at most {} methods",
+                    maxOutputTokens, completedMethods, maxMethodsPerBatch());
+        }
+    }
+
+    /**
+     * Gets the number of methods whose evaluations are expected to fit into the output token limit.
+     *
+     * @return The maximum batch size, at least 1
+     */
+    public synchronized int maxMethodsPerBatch() {
+        return Math.max(1, (int) (maxOutputTokens * HEADROOM / getTokensPerMethod()));
+    }
+
+    /**
+     * Gets the estimated output tokens of one method evaluation.
+     *
+     * @return The measured estimate, or the modelled one before a response has been measured
+     */
+    public synchronized double getTokensPerMethod() {
+        return measuredTokensPerMethod > 0 ? measuredTokensPerMethod : getModelledTokensPerMethod();
+    }
+
+    /**
+     * Models the output tokens of one method evaluation from the number of metrics and the
+     * observed lengths of justifications and recommendations.
+     *
+     * @return The modelled estimate
+     */
+    private double getModelledTokensPerMethod() {
+        double justification = justifications > 0
+                ? (double) justificationTokens / justifications
+                : DEFAULT_JUSTIFICATION_TOKENS;
+        double recommendations = evaluations > 0
+                ? (double) recommendationTokens / evaluations
+                : DEFAULT_RECOMMENDATION_TOKENS;
+        return METHOD_OVERHEAD_TOKENS + metricCount * (METRIC_OVERHEAD_TOKENS + justification) + recommendations;
+    }
+}
@@ -0,0 +1,169 @@
+package com.docanalyzer.cache;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Persistent, content-addressed cache of evaluation results.
+ * <p>
+ * Each result is stored as a JSON file named after a SHA-256 fingerprint of the method's
+ * normalized signature, body and Javadoc, combined with everything else that influences the
+ * evaluation: the metrics guidelines, the model name and the temperature. A method whose code
+ * and documentation did not change since the last run therefore maps to the same file.
+ */
+@Slf4j
+public class EvaluationCache {
+    
+    private final Path cacheDirectory;
+    private final byte[] contextDigest;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /**
+     * Creates a new EvaluationCache.
+     * 
+     * @param config The configuration providing the cache path, model name and temperature
+     * @param guidelines The formatted metrics guidelines sent to the model
+     */
+    public EvaluationCache(Configuration config, String guidelines) {
+        this(Paths.get(config.getCachePath()), config.getModelName(), config.getTemperature(), guidelines);
+    }
+    
+    /**
+     * Creates a new EvaluationCache.
+     * 
+     * @param cacheDirectory The directory holding the cached results
+     * @param modelName The model name used for evaluations
+     * @param temperature The temperature used for evaluations
+     * @param guidelines The formatted metrics guidelines sent to the model
+     */
+    public EvaluationCache(Path cacheDirectory, String modelName, double temperature, String guidelines) {
+        this.cacheDirectory = cacheDirectory;
+        
+        MessageDigest digest = newDigest();
+        update(digest, modelName);
+        update(digest, String.valueOf(temperature));
+        update(digest, normalize(guidelines));
+        this.contextDigest = digest.digest();
+    }
+    
+    /**
+     * Computes the fingerprint of a method.
+     * 
+     * @param method The method
+     * @return The hex-encoded fingerprint
+     */
+    public String fingerprint(Method method) {
+        MessageDigest digest = newDigest();
+        digest.update(contextDigest);
+        update(digest, normalize(method.getSignature()));
+        update(digest, normalize(method.getBody()));
+        update(digest, method.getJavadoc() != null ? normalize(method.getJavadoc().getRawText()) : "");
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * Looks up the cached result for a method.
+     * 
+     * @param method The method
+     * @return The cached result, or empty if there is none or it cannot be read
+     */
+    public Optional<MetricsResult> get(Method method) {
+        Path entry = entryPath(fingerprint(method));
+        
+        if (!Files.exists(entry)) {
+            return Optional.empty();
+        }
+        
+        try {
+            return Optional.of(objectMapper.readValue(entry.toFile(), MetricsResult.class));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable cache entry {}: {}", entry, e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Stores the result for a method. Results without any metric are not cached.
+     * 
+     * @param method The method
+     * @param result The evaluation result
+     */
+    public void put(Method method, MetricsResult result) {
+        if (result == null || result.getMetricResults().isEmpty()) {
+            return;
+        }
+        
+        Path entry = entryPath(fingerprint(method));
+        
+        try {
+            Files.createDirectories(entry.getParent());
+            // Write to a temporary file first so concurrent readers never see a partial entry
+            Path tempFile = Files.createTempFile(entry.getParent(), "entry", ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), result);
+            Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write cache entry for method {}: {}", method.getName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Resolves the file of a cache entry. Entries are sharded by the first two hex digits.
+     * 
+     * @param fingerprint The method fingerprint
+     * @return The entry path
+     */
+    private Path entryPath(String fingerprint) {
+        return cacheDirectory.resolve(fingerprint.substring(0, 2)).resolve(fingerprint + ".json");
+    }
+    
+    /**
+     * Normalizes text so that line-ending and trailing whitespace changes do not invalidate entries.
+     * 
+     * @param text The text to normalize
+     * @return The normalized text
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        
+        return text.replaceAll("\\r\\n?", "\n")
+                .replaceAll("[ \\t]+\\n", "\n")
+                .trim();
+    }
+    
+    /**
+     * Feeds a length-prefixed string into the digest so field boundaries are unambiguous.
+     * 
+     * @param digest The digest
+     * @param value The value to add
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
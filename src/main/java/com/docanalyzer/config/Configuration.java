@@ -10,6 +10,9 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -25,6 +28,56 @@ public class Configuration {
      */
     private String anthropicApiKey;
     
+    /**
+     * The base URL of the Anthropic API.
+     */
+    private String anthropicBaseUrl;
+    
+    /**
+     * The provider evaluations are requested from: "anthropic" or "fake" for offline load tests.
+     */
+    private String llmProvider;
+    
+    /**
+     * The median time to the first token of the fake provider in milliseconds.
+     */
+    private int fakeLatencyMs;
+    
+    /**
+     * The spread of the log-normal latencies of the fake provider (0 = constant).
+     */
+    private double fakeLatencySigma;
+    
+    /**
+     * The generation speed of the fake provider in output tokens per second (0 = instant).
+     */
+    private int fakeOutputTokensPerSecond;
+    
+    /**
+     * The share of fake requests that fail with an overloaded error.
+     */
+    private double fakeErrorRate;
+    
+    /**
+     * The share of fake requests that are rejected as rate limited.
+     */
+    private double fakeThrottleRate;
+    
+    /**
+     * The file API exchanges are appended to, or empty to record nothing.
+     */
+    private String llmRecordPath;
+    
+    /**
+     * The recording the replay provider serves responses from.
+     */
+    private String llmReplayPath;
+    
+    /**
+     * Whether the replay provider reproduces the recorded latencies.
+     */
+    private boolean llmReplayTiming;
+    
     /**
      * The Anthropic model name to use.
      */
@@ -40,11 +93,201 @@ public class Configuration {
      */
     private int maxTokensPerRequest;
     
+    /**
+     * The maximum API cost of a run in US dollars (0 = unlimited).
+     */
+    private double budgetMaxCostUsd;
+    
+    /**
+     * The prices by model name or model name prefix, from {@code pricing.<model>=<input>,<output>} in US dollars per million tokens.
+     */
+    private Map<String, ModelPrice> modelPrices;
+    
+    /**
+     * Whether the shared part of the prompt is marked for prompt caching.
+     */
+    private boolean promptCacheEnabled;
+    
+    /**
+     * Whether responses are streamed, so each method's result is assigned as soon as it is generated.
+     */
+    private boolean streamingEnabled;
+    
+    /**
+     * How evaluations are returned: "text" (formatted sections) or "json" (structured tool call).
+     */
+    private String outputFormat;
+    
+    /**
+     * The timeout in milliseconds for establishing a connection to the API.
+     */
+    private int connectTimeoutMs;
+    
+    /**
+     * The timeout in milliseconds to wait for response data from the API.
+     */
+    private int responseTimeoutMs;
+    
+    /**
+     * The time in milliseconds a request, including a streamed response, may take in total before it is aborted (0 = none).
+     */
+    private int requestDeadlineMs;
+    
+    /**
+     * Whether a slow request is duplicated and the first of the two responses is used.
+     */
+    private boolean hedgeEnabled;
+    
+    /**
+     * The percentile of the observed latencies after which a request is duplicated.
+     */
+    private double hedgeLatencyPercentile;
+    
+    /**
+     * The largest share of requests that may be duplicated.
+     */
+    private double hedgeMaxRatio;
+    
+    /**
+     * The number of observed latencies needed before requests are duplicated.
+     */
+    private int hedgeMinSamples;
+    
+    /**
+     * The maximum number of API requests per minute (0 = no client-side limit).
+     */
+    private int rateLimitRequestsPerMinute;
+    
+    /**
+     * The maximum number of input tokens sent to the API per minute (0 = no client-side limit).
+     */
+    private int rateLimitInputTokensPerMinute;
+    
+    /**
+     * The maximum number of output tokens requested from the API per minute (0 = no client-side limit).
+     */
+    private int rateLimitOutputTokensPerMinute;
+    
+    /**
+     * The number of times a rate-limited request is queued again before its batch fails.
+     */
+    private int rateLimitMaxRetries;
+    
+    /**
+     * The maximum number of attempts for an API request that fails with a transient error.
+     */
+    private int retryMaxAttempts;
+    
+    /**
+     * The base delay in milliseconds of the exponential retry backoff.
+     */
+    private int retryBaseDelayMs;
+    
+    /**
+     * The maximum delay in milliseconds between two retries.
+     */
+    private int retryMaxDelayMs;
+    
+    /**
+     * The number of recent API calls the circuit breaker computes the failure rate over.
+     */
+    private int circuitBreakerWindowSize;
+    
+    /**
+     * The failure rate (0-1) over the window at which the circuit breaker pauses dispatch.
+     */
+    private double circuitBreakerFailureRate;
+    
+    /**
+     * How long in milliseconds the circuit breaker pauses dispatch before sending a trial request.
+     */
+    private int circuitBreakerOpenMs;
+    
     /**
      * The default batch size for processing methods.
      */
     private int batchSize;
     
+    /**
+     * Whether the batch size is adjusted during a run, starting from batchSize.
+     */
+    private boolean batchAdaptiveEnabled;
+    
+    /**
+     * The smallest batch size the adaptive batch size may shrink to.
+     */
+    private int batchSizeMin;
+    
+    /**
+     * The largest batch size the adaptive batch size may grow to.
+     */
+    private int batchSizeMax;
+    
+    /**
+     * The latency of a batch request above which the adaptive batch size shrinks.
+     */
+    private int batchTargetLatencyMs;
+    
+    /**
+     * The maximum number of batch requests that may be in flight concurrently.
+     */
+    private int batchMaxInflight;
+    
+    /**
+     * The number of follow-up requests for methods missing from a batch response (0 = none).
+     */
+    private int batchReaskMaxAttempts;
+    
+    /**
+     * Whether methods of the same class are kept in the same batch where they fit.
+     */
+    private boolean batchGroupByClass;
+    
+    /**
+     * How batches are sent to the API: "interactive" (Messages API) or "async-batch" (Message Batches API).
+     */
+    private String processingMode;
+    
+    /**
+     * The maximum number of batch prompts submitted in one Message Batches API job.
+     */
+    private int messageBatchMaxRequests;
+    
+    /**
+     * The number of methods collected before a Message Batches API job is submitted.
+     */
+    private int messageBatchWindowSize;
+    
+    /**
+     * The initial delay in milliseconds between two status polls of a Message Batches API job.
+     */
+    private int messageBatchPollIntervalMs;
+    
+    /**
+     * The maximum delay in milliseconds between two status polls of a Message Batches API job.
+     */
+    private int messageBatchMaxPollIntervalMs;
+    
+    /**
+     * The number of threads used to parse source directories (0 = one per available processor).
+     */
+    private int parserThreads;
+    
+    /**
+     * The number of methods the pipeline collects before handing them to the batch processor.
+     */
+    private int pipelineWindowSize;
+    
+    /**
+     * The maximum number of extracted methods buffered between parsing and evaluation.
+     */
+    private int pipelineQueueCapacity;
+    
+    /**
+     * The method extractor implementation ("regex" or "scanner").
+     */
+    private String methodExtractor;
+    
     /**
      * The path to the metrics definitions file.
      */
@@ -60,6 +303,16 @@ public class Configuration {
      */
     private double temperature;
     
+    /**
+     * Whether evaluation results are cached on disk and reused across runs.
+     */
+    private boolean cacheEnabled;
+    
+    /**
+     * The directory of the evaluation cache.
+     */
+    private String cachePath;
+    
     /**
      * Loads configuration from a properties file.
      * 
@@ -74,13 +327,63 @@ public class Configuration {
             
             return Configuration.builder()
                     .anthropicApiKey(getProperty(properties, "anthropic.api.key", ""))
+                    .anthropicBaseUrl(getProperty(properties, "anthropic.base.url", "https://api.anthropic.com"))
+                    .llmProvider(getProperty(properties, "llm.provider", "anthropic"))
+                    .fakeLatencyMs(getIntProperty(properties, "fake.latency.ms", 500))
+                    .fakeLatencySigma(getDoubleProperty(properties, "fake.latency.sigma", 0.5))
+                    .fakeOutputTokensPerSecond(getIntProperty(properties, "fake.output.tokens.per.second", 80))
+                    .fakeErrorRate(getDoubleProperty(properties, "fake.error.rate", 0.0))
+                    .fakeThrottleRate(getDoubleProperty(properties, "fake.throttle.rate", 0.0))
+                    .llmRecordPath(getProperty(properties, "llm.record.path", ""))
+                    .llmReplayPath(getProperty(properties, "llm.replay.path", ""))
+                    .llmReplayTiming(getBooleanProperty(properties, "llm.replay.timing", true))
                     .modelName(getProperty(properties, "anthropic.model", "claude-sonnet-4-20250514"))
                     .maxTokens(getIntProperty(properties, "anthropic.max.tokens", 4096))
                     .maxTokensPerRequest(getIntProperty(properties, "anthropic.max.tokens.per.request", 100000))
+                    .budgetMaxCostUsd(getDoubleProperty(properties, "budget.max.cost.usd", 0.0))
+                    .modelPrices(getModelPrices(properties))
+                    .promptCacheEnabled(getBooleanProperty(properties, "anthropic.prompt.cache.enabled", true))
+                    .streamingEnabled(getBooleanProperty(properties, "anthropic.streaming.enabled", true))
+                    .outputFormat(getProperty(properties, "anthropic.output.format", "text"))
+                    .connectTimeoutMs(getIntProperty(properties, "anthropic.connect.timeout.ms", 10000))
+                    .responseTimeoutMs(getIntProperty(properties, "anthropic.response.timeout.ms", 300000))
+                    .requestDeadlineMs(getIntProperty(properties, "anthropic.request.deadline.ms", 600000))
+                    .hedgeEnabled(getBooleanProperty(properties, "hedge.enabled", false))
+                    .hedgeLatencyPercentile(getDoubleProperty(properties, "hedge.latency.percentile", 0.95))
+                    .hedgeMaxRatio(getDoubleProperty(properties, "hedge.max.ratio", 0.05))
+                    .hedgeMinSamples(getIntProperty(properties, "hedge.min.samples", 20))
+                    .rateLimitRequestsPerMinute(getIntProperty(properties, "rate.limit.requests.per.minute", 0))
+                    .rateLimitInputTokensPerMinute(getIntProperty(properties, "rate.limit.input.tokens.per.minute", 0))
+                    .rateLimitOutputTokensPerMinute(getIntProperty(properties, "rate.limit.output.tokens.per.minute", 0))
+                    .rateLimitMaxRetries(getIntProperty(properties, "rate.limit.max.retries", 8))
+                    .retryMaxAttempts(getIntProperty(properties, "retry.max.attempts", 4))
+                    .retryBaseDelayMs(getIntProperty(properties, "retry.base.delay.ms", 1000))
+                    .retryMaxDelayMs(getIntProperty(properties, "retry.max.delay.ms", 30000))
+                    .circuitBreakerWindowSize(getIntProperty(properties, "circuit.breaker.window.size", 20))
+                    .circuitBreakerFailureRate(getDoubleProperty(properties, "circuit.breaker.failure.rate", 0.5))
+                    .circuitBreakerOpenMs(getIntProperty(properties, "circuit.breaker.open.ms", 30000))
                     .batchSize(getIntProperty(properties, "batch.size", 5))
+                    .batchAdaptiveEnabled(getBooleanProperty(properties, "batch.adaptive.enabled", true))
+                    .batchSizeMin(getIntProperty(properties, "batch.size.min", 1))
+                    .batchSizeMax(getIntProperty(properties, "batch.size.max", 20))
+                    .batchTargetLatencyMs(getIntProperty(properties, "batch.target.latency.ms", 90000))
+                    .batchMaxInflight(getIntProperty(properties, "batch.max.inflight", 4))
+                    .batchReaskMaxAttempts(getIntProperty(properties, "batch.reask.max.attempts", 2))
+                    .batchGroupByClass(getBooleanProperty(properties, "batch.group.by.class", false))
+                    .processingMode(getProperty(properties, "processing.mode", "interactive"))
+                    .messageBatchMaxRequests(getIntProperty(properties, "message.batch.max.requests", 10000))
+                    .messageBatchWindowSize(getIntProperty(properties, "message.batch.window.size", 50000))
+                    .messageBatchPollIntervalMs(getIntProperty(properties, "message.batch.poll.interval.ms", 10000))
+                    .messageBatchMaxPollIntervalMs(getIntProperty(properties, "message.batch.max.poll.interval.ms", 300000))
+                    .parserThreads(getIntProperty(properties, "parser.threads", 0))
+                    .pipelineWindowSize(getIntProperty(properties, "pipeline.window.size", 200))
+                    .pipelineQueueCapacity(getIntProperty(properties, "pipeline.queue.capacity", 1000))
+                    .methodExtractor(getProperty(properties, "parser.method.extractor", "regex"))
                     .metricsDefinitionsPath(getProperty(properties, "metrics.definitions.path", "src/main/resources/metrics-definitions.json"))
                     .outputPath(getProperty(properties, "output.path", "output"))
                     .temperature(getDoubleProperty(properties, "anthropic.temperature", 0.0))
+                    .cacheEnabled(getBooleanProperty(properties, "cache.enabled", true))
+                    .cachePath(getProperty(properties, "cache.path", ".docanalyzer-cache"))
                     .build();
             
         } catch (IOException e) {
@@ -97,16 +400,87 @@ public class Configuration {
     public static Configuration getDefaultConfiguration() {
         return Configuration.builder()
                 .anthropicApiKey(System.getenv("API_KEY"))
+                .anthropicBaseUrl("https://api.anthropic.com")
+                .llmProvider("anthropic")
+                .fakeLatencyMs(500)
+                .fakeLatencySigma(0.5)
+                .fakeOutputTokensPerSecond(80)
+                .fakeErrorRate(0.0)
+                .fakeThrottleRate(0.0)
+                .llmRecordPath("")
+                .llmReplayPath("")
+                .llmReplayTiming(true)
                 .modelName("claude-sonnet-4-20250514")
                 .maxTokens(4096)
                 .maxTokensPerRequest(100000)
+                .budgetMaxCostUsd(0.0)
+                .modelPrices(defaultModelPrices())
+                .promptCacheEnabled(true)
+                .streamingEnabled(true)
+                .outputFormat("text")
+                .connectTimeoutMs(10000)
+                .responseTimeoutMs(300000)
+                .requestDeadlineMs(600000)
+                .hedgeEnabled(false)
+                .hedgeLatencyPercentile(0.95)
+                .hedgeMaxRatio(0.05)
+                .hedgeMinSamples(20)
+                .rateLimitRequestsPerMinute(0)
+                .rateLimitInputTokensPerMinute(0)
+                .rateLimitOutputTokensPerMinute(0)
+                .rateLimitMaxRetries(8)
+                .retryMaxAttempts(4)
+                .retryBaseDelayMs(1000)
+                .retryMaxDelayMs(30000)
+                .circuitBreakerWindowSize(20)
+                .circuitBreakerFailureRate(0.5)
+                .circuitBreakerOpenMs(30000)
                 .batchSize(5)
+                .batchAdaptiveEnabled(true)
+                .batchSizeMin(1)
+                .batchSizeMax(20)
+                .batchTargetLatencyMs(90000)
+                .batchMaxInflight(4)
+                .batchReaskMaxAttempts(2)
+                .batchGroupByClass(false)
+                .processingMode("interactive")
+                .messageBatchMaxRequests(10000)
+                .messageBatchWindowSize(50000)
+                .messageBatchPollIntervalMs(10000)
+                .messageBatchMaxPollIntervalMs(300000)
+                .parserThreads(0)
+                .pipelineWindowSize(200)
+                .pipelineQueueCapacity(1000)
+                .methodExtractor("regex")
                 .metricsDefinitionsPath("src/main/resources/metrics-definitions.json")
                 .outputPath("output")
                 .temperature(0.0)
+                .cacheEnabled(true)
+                .cachePath(".docanalyzer-cache")
                 .build();
     }
     
+    /**
+     * Finds the price of a model. Dated model IDs such as {@code claude-sonnet-4-20250514} use
+     * the price of the longest configured name they start with.
+     * 
+     * @param model The model name
+     * @return The price, or empty if none is configured
+     */
+    public Optional<ModelPrice> findModelPrice(String model) {
+        if (modelPrices == null || model == null) {
+            return Optional.empty();
+        }
+        
+        String bestMatch = null;
+        for (String name : modelPrices.keySet()) {
+            if (model.startsWith(name) && (bestMatch == null || name.length() > bestMatch.length())) {
+                bestMatch = name;
+            }
+        }
+        return Optional.ofNullable(bestMatch).map(modelPrices::get);
+    }
+    
     /**
      * Ensures the output directory exists.
      */
@@ -215,4 +589,68 @@ public class Configuration {
             return defaultValue;
         }
     }
+    
+    /**
+     * Gets the model prices: the published list prices, overridden and extended by
+     * {@code pricing.<model>=<input>,<output>} properties.
+     * 
+     * @param properties The properties object
+     * @return The prices by model name or model name prefix
+     */
+    private static Map<String, ModelPrice> getModelPrices(Properties properties) {
+        Map<String, ModelPrice> prices = defaultModelPrices();
+        
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("pricing.")) {
+                continue;
+            }
+            
+            String[] values = properties.getProperty(key).split(",");
+            try {
+                prices.put(key.substring("pricing.".length()),
+                        new ModelPrice(Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim())));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("Invalid price for {}: {}. Expected <input>,<output> per million tokens", key, properties.getProperty(key));
+            }
+        }
+        
+        return prices;
+    }
+    
+    /**
+     * Gets the published list prices of the Claude models, in US dollars per million tokens.
+     * 
+     * @return The prices by model name prefix
+     */
+    private static Map<String, ModelPrice> defaultModelPrices() {
+        Map<String, ModelPrice> prices = new LinkedHashMap<>();
+        prices.put("claude-opus-4", new ModelPrice(15.0, 75.0));
+        prices.put("claude-opus-4-5", new ModelPrice(5.0, 25.0));
+        prices.put("claude-sonnet-4", new ModelPrice(3.0, 15.0));
+        prices.put("claude-haiku-4-5", new ModelPrice(1.0, 5.0));
+        prices.put("claude-3-7-sonnet", new ModelPrice(3.0, 15.0));
+        prices.put("claude-3-5-sonnet", new ModelPrice(3.0, 15.0));
+        prices.put("claude-3-5-haiku", new ModelPrice(0.8, 4.0));
+        prices.put("claude-3-opus", new ModelPrice(15.0, 75.0));
+        prices.put("claude-3-haiku", new ModelPrice(0.25, 1.25));
+        return prices;
+    }
+    
+    /**
+     * Gets a boolean property from the properties object with a default value.
+     * 
+     * @param properties The properties object
+     * @param key The property key
+     * @param defaultValue The default value
+     * @return The property value as a boolean or default value
+     */
+    private static boolean getBooleanProperty(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        
+        if (value == null) {
+            return defaultValue;
+        }
+        
+        return Boolean.parseBoolean(value.trim());
+    }
 }
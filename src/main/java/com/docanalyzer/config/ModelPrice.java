@@ -0,0 +1,46 @@
+package com.docanalyzer.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The API price of a model, in US dollars per million tokens.
+ */
+@Data
+@AllArgsConstructor
+public class ModelPrice {
+
+    /**
+     * Cache reads are billed at a tenth of the input price.
+     */
+    private static final double CACHE_READ_FACTOR = 0.1;
+
+    /**
+     * Cache writes are billed at a quarter above the input price.
+     */
+    private static final double CACHE_WRITE_FACTOR = 1.25;
+
+    /**
+     * The price of a million uncached input tokens.
+     */
+    private double inputPerMillion;
+
+    /**
+     * The price of a million output tokens.
+     */
+    private double outputPerMillion;
+
+    /**
+     * Calculates the cost of a request.
+     *
+     * @param inputTokens Uncached input tokens
+     * @param outputTokens Output tokens
+     * @param cacheReadTokens Input tokens read from the prompt cache
+     * @param cacheWriteTokens Input tokens written to the prompt cache
+     * @return The cost in US dollars
+     */
+    public double cost(long inputTokens, long outputTokens, long cacheReadTokens, long cacheWriteTokens) {
+        double input = inputTokens + cacheReadTokens * CACHE_READ_FACTOR + cacheWriteTokens * CACHE_WRITE_FACTOR;
+        return (input * inputPerMillion + outputTokens * outputPerMillion) / 1_000_000;
+    }
+}
@@ -0,0 +1,197 @@
+package com.docanalyzer.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Counters collected while a run is in progress and written to the report summary.
+ * All counters are thread-safe so they can be updated from concurrent batch workers.
+ */
+public class RunStatistics {
+    
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong resumedMethods = new AtomicLong();
+    private final AtomicLong rateLimitedRequests = new AtomicLong();
+    private final AtomicLong retriedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong reaskedMethods = new AtomicLong();
+    private final AtomicLong truncatedResponses = new AtomicLong();
+    private final AtomicLong inputTokens = new AtomicLong();
+    private final AtomicLong outputTokens = new AtomicLong();
+    private final AtomicLong cacheReadTokens = new AtomicLong();
+    private final AtomicLong cacheWriteTokens = new AtomicLong();
+    private final AtomicLong budgetSkippedMethods = new AtomicLong();
+    private final DoubleAdder costUsd = new DoubleAdder();
+    
+    /**
+     * Records a method whose result was served from the evaluation cache.
+     */
+    public void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+    
+    /**
+     * Records a method that was not found in the evaluation cache.
+     */
+    public void recordCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+    
+    /**
+     * Records a method whose result was taken from the journal of a resumed run.
+     */
+    public void recordResumed() {
+        resumedMethods.incrementAndGet();
+    }
+    
+    /**
+     * Records a request that was rejected by the API rate limiter and queued again.
+     */
+    public void recordRateLimited() {
+        rateLimitedRequests.incrementAndGet();
+    }
+    
+    /**
+     * Records a request that failed with a transient error and was retried.
+     */
+    public void recordRetry() {
+        retriedRequests.incrementAndGet();
+    }
+    
+    /**
+     * Records a request attempt that timed out or exceeded its deadline.
+     */
+    public void recordTimeout() {
+        timedOutRequests.incrementAndGet();
+    }
+    
+    /**
+     * Records a slow request that was duplicated by a hedged request.
+     */
+    public void recordHedged() {
+        hedgedRequests.incrementAndGet();
+    }
+    
+    /**
+     * Records a hedged request that answered before the request it duplicated.
+     */
+    public void recordHedgeWon() {
+        hedgeWins.incrementAndGet();
+    }
+    
+    /**
+     * Records methods that were missing from a response and are asked for again.
+     * 
+     * @param count The number of methods
+     */
+    public void recordReasked(int count) {
+        reaskedMethods.addAndGet(count);
+    }
+    
+    /**
+     * Records the cost of a completed API request.
+     * 
+     * @param usd The cost in US dollars
+     */
+    public void recordCost(double usd) {
+        costUsd.add(usd);
+    }
+    
+    /**
+     * Records methods that are left unevaluated because the API budget is exhausted.
+     * 
+     * @param count The number of methods
+     */
+    public void recordBudgetSkipped(int count) {
+        budgetSkippedMethods.addAndGet(count);
+    }
+    
+    /**
+     * Records a response that was cut off at the output token limit.
+     */
+    public void recordTruncated() {
+        truncatedResponses.incrementAndGet();
+    }
+    
+    /**
+     * Records the token usage of a completed API request.
+     * 
+     * @param inputTokens Uncached input tokens
+     * @param outputTokens Output tokens
+     * @param cacheReadTokens Input tokens read from the prompt cache
+     * @param cacheWriteTokens Input tokens written to the prompt cache
+     */
+    public void recordUsage(long inputTokens, long outputTokens, long cacheReadTokens, long cacheWriteTokens) {
+        this.inputTokens.addAndGet(inputTokens);
+        this.outputTokens.addAndGet(outputTokens);
+        this.cacheReadTokens.addAndGet(cacheReadTokens);
+        this.cacheWriteTokens.addAndGet(cacheWriteTokens);
+    }
+    
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+    
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+    
+    public long getResumedMethods() {
+        return resumedMethods.get();
+    }
+    
+    public long getRateLimitedRequests() {
+        return rateLimitedRequests.get();
+    }
+    
+    public long getRetriedRequests() {
+        return retriedRequests.get();
+    }
+    
+    public long getTimedOutRequests() {
+        return timedOutRequests.get();
+    }
+    
+    public long getHedgedRequests() {
+        return hedgedRequests.get();
+    }
+    
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+    
+    public long getInputTokens() {
+        return inputTokens.get();
+    }
+    
+    public long getOutputTokens() {
+        return outputTokens.get();
+    }
+    
+    public long getCacheReadTokens() {
+        return cacheReadTokens.get();
+    }
+    
+    public long getCacheWriteTokens() {
+        return cacheWriteTokens.get();
+    }
+    
+    public long getReaskedMethods() {
+        return reaskedMethods.get();
+    }
+    
+    public long getTruncatedResponses() {
+        return truncatedResponses.get();
+    }
+    
+    public long getBudgetSkippedMethods() {
+        return budgetSkippedMethods.get();
+    }
+    
+    public double getCostUsd() {
+        return costUsd.sum();
+    }
+}
@@ -4,14 +4,18 @@ import com.docanalyzer.config.Configuration;
 import com.docanalyzer.model.Javadoc;
 import com.docanalyzer.model.Method;
 import com.docanalyzer.model.MetricsResult;
+import com.docanalyzer.model.RunStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
@@ -40,6 +44,19 @@ public class XMLReportGenerator {
      * @return Path to the generated report file, or null if generation failed
      */
     public String generateReport(List<Method> methods, String outputPath, String reportName) {
+        return generateReport(methods, outputPath, reportName, null);
+    }
+    
+    /**
+     * Generates an XML report for the analyzed methods, including run statistics in the summary.
+     * 
+     * @param methods List of analyzed methods
+     * @param outputPath Output directory path
+     * @param reportName Name of the report file
+     * @param runStatistics Statistics of the run, or null to omit them
+     * @return Path to the generated report file, or null if generation failed
+     */
+    public String generateReport(List<Method> methods, String outputPath, String reportName, RunStatistics runStatistics) {
         if (methods == null || methods.isEmpty()) {
             log.warn("No methods provided for report generation");
             return null;
@@ -65,7 +82,7 @@ public class XMLReportGenerator {
             writer.writeCharacters("\n");
             
             // Summary section
-            writeSummary(writer, methods);
+            writeSummary(writer, methods, runStatistics);
             
             // Methods section
             writeMethods(writer, methods);
@@ -87,18 +104,29 @@ public class XMLReportGenerator {
         }
     }
     
+    /**
+     * Opens a report that is written incrementally. The document header is written immediately,
+     * methods are appended as their evaluation completes and the summary is written as a trailer
+     * when the report is finished or closed.
+     * 
+     * @param outputPath Output directory path
+     * @param reportName Name of the report file
+     * @return The open report
+     * @throws IOException if the report file cannot be created
+     */
+    public StreamingReport openReport(String outputPath, String reportName) throws IOException {
+        return new StreamingReport(Paths.get(outputPath, reportName));
+    }
+    
     /**
      * Writes the summary section of the report.
      * 
      * @param writer XML stream writer
      * @param methods List of methods
+     * @param runStatistics Statistics of the run, or null to omit them
      * @throws XMLStreamException if XML writing fails
      */
-    private void writeSummary(XMLStreamWriter writer, List<Method> methods) throws XMLStreamException {
-        writer.writeCharacters("  ");
-        writer.writeStartElement("summary");
-        writer.writeCharacters("\n");
-        
+    private void writeSummary(XMLStreamWriter writer, List<Method> methods, RunStatistics runStatistics) throws XMLStreamException {
         // Calculate summary statistics
         int totalMethods = methods.size();
         int methodsWithMetrics = (int) methods.stream()
@@ -111,16 +139,65 @@ public class XMLReportGenerator {
                 .average()
                 .orElse(0.0);
         
+        writeSummary(writer, totalMethods, methodsWithMetrics, averageScore, runStatistics);
+    }
+    
+    /**
+     * Writes the summary section of the report from precomputed statistics.
+     * 
+     * @param writer XML stream writer
+     * @param totalMethods Number of methods in the report
+     * @param methodsWithMetrics Number of methods with a metrics result
+     * @param averageScore Average overall score of the methods with a metrics result
+     * @param runStatistics Statistics of the run, or null to omit them
+     * @throws XMLStreamException if XML writing fails
+     */
+    private void writeSummary(XMLStreamWriter writer, int totalMethods, int methodsWithMetrics, double averageScore,
+                              RunStatistics runStatistics) throws XMLStreamException {
+        writer.writeCharacters("  ");
+        writer.writeStartElement("summary");
+        writer.writeCharacters("\n");
+        
         // Write statistics
         writeSimpleElement(writer, "total-methods", String.valueOf(totalMethods), 4);
         writeSimpleElement(writer, "methods-with-metrics", String.valueOf(methodsWithMetrics), 4);
         writeSimpleElement(writer, "average-score", String.format("%.2f", averageScore), 4);
+        
+        if (runStatistics != null) {
+            writeRunStatistics(writer, runStatistics);
+        }
 
         writer.writeCharacters("  ");
         writer.writeEndElement(); // summary
         writer.writeCharacters("\n");
     }
     
+    /**
+     * Writes the run statistics inside the summary section.
+     * 
+     * @param writer XML stream writer
+     * @param runStatistics Statistics of the run
+     * @throws XMLStreamException if XML writing fails
+     */
+    private void writeRunStatistics(XMLStreamWriter writer, RunStatistics runStatistics) throws XMLStreamException {
+        writeSimpleElement(writer, "cache-hits", String.valueOf(runStatistics.getCacheHits()), 4);
+        writeSimpleElement(writer, "cache-misses", String.valueOf(runStatistics.getCacheMisses()), 4);
+        writeSimpleElement(writer, "methods-resumed", String.valueOf(runStatistics.getResumedMethods()), 4);
+        writeSimpleElement(writer, "rate-limited-requests", String.valueOf(runStatistics.getRateLimitedRequests()), 4);
+        writeSimpleElement(writer, "retried-requests", String.valueOf(runStatistics.getRetriedRequests()), 4);
+        writeSimpleElement(writer, "timed-out-requests", String.valueOf(runStatistics.getTimedOutRequests()), 4);
+        writeSimpleElement(writer, "hedged-requests", String.valueOf(runStatistics.getHedgedRequests()), 4);
+        writeSimpleElement(writer, "hedge-wins", String.valueOf(runStatistics.getHedgeWins()), 4);
+        writeSimpleElement(writer, "methods-reasked", String.valueOf(runStatistics.getReaskedMethods()), 4);
+        writeSimpleElement(writer, "truncated-responses", String.valueOf(runStatistics.getTruncatedResponses()), 4);
+        writeSimpleElement(writer, "input-tokens", String.valueOf(runStatistics.getInputTokens()), 4);
+        writeSimpleElement(writer, "output-tokens", String.valueOf(runStatistics.getOutputTokens()), 4);
+        writeSimpleElement(writer, "cache-read-tokens", String.valueOf(runStatistics.getCacheReadTokens()), 4);
+        writeSimpleElement(writer, "cache-write-tokens", String.valueOf(runStatistics.getCacheWriteTokens()), 4);
+        writeSimpleElement(writer, "cost-usd", String.format("%.4f", runStatistics.getCostUsd()), 4);
+        writeSimpleElement(writer, "methods-skipped-budget", String.valueOf(runStatistics.getBudgetSkippedMethods()), 4);
+    }
+    
     /**
      * Writes the methods section of the report.
      * 
@@ -191,9 +268,11 @@ public class XMLReportGenerator {
             writeJavadoc(writer, method.getJavadoc());
         }
         
-        // Metrics results
+        // Metrics results; methods left out of a partial run are marked so they can be told apart
         if (method.getMetricsResult() != null) {
             writeMetricsResult(writer, method.getMetricsResult());
+        } else {
+            writeSimpleElement(writer, "evaluation-status", "not-evaluated", 6);
         }
         
         writer.writeCharacters("    ");
@@ -411,4 +490,129 @@ public class XMLReportGenerator {
                 .replace("\"", "&quot;")
                 .replace("'", "&apos;");
     }
+    
+    /**
+     * A report that is written while the analysis is running.
+     * <p>
+     * Output is buffered and flushed after every appended group of methods, so the methods written
+     * so far survive a crash. The summary is accumulated as methods arrive and written after the
+     * methods section, which keeps memory use independent of the number of methods.
+     */
+    public class StreamingReport implements Closeable {
+        private final Path reportPath;
+        private final OutputStream outputStream;
+        private final XMLStreamWriter writer;
+        private int totalMethods;
+        private int methodsWithMetrics;
+        private double scoreSum;
+        private boolean finished;
+        
+        private StreamingReport(Path reportPath) throws IOException {
+            this.reportPath = reportPath;
+            this.outputStream = new BufferedOutputStream(new FileOutputStream(reportPath.toFile()), 64 * 1024);
+            
+            try {
+                this.writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
+                
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.writeCharacters("\n");
+                
+                writer.writeStartElement("javadoc-analysis-report");
+                writer.writeAttribute("generated-at", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                writer.writeAttribute("model", config.getModelName());
+                writer.writeAttribute("temperature", config.getTemperature() + "");
+                writer.writeAttribute("max_tokens", config.getMaxTokens() + "");
+                writer.writeCharacters("\n");
+                
+                writer.writeCharacters("  ");
+                writer.writeStartElement("methods");
+                writer.writeCharacters("\n");
+                flush();
+            } catch (XMLStreamException e) {
+                outputStream.close();
+                throw new IOException("Failed to start XML report: " + e.getMessage(), e);
+            }
+        }
+        
+        /**
+         * Appends evaluated methods to the report and flushes them to disk.
+         * 
+         * @param methods The evaluated methods
+         * @throws IOException if writing fails
+         */
+        public synchronized void appendMethods(List<Method> methods) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Report is already finished: " + reportPath);
+            }
+            
+            try {
+                for (Method method : methods) {
+                    writeMethod(writer, method);
+                    
+                    totalMethods++;
+                    if (method.getMetricsResult() != null) {
+                        methodsWithMetrics++;
+                        scoreSum += method.getMetricsResult().getOverallScore();
+                    }
+                }
+                flush();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to write methods to XML report: " + e.getMessage(), e);
+            }
+        }
+        
+        /**
+         * Closes the methods section, writes the summary and closes the report.
+         * 
+         * @param runStatistics Statistics of the run, or null to omit them
+         * @return Path to the report file
+         * @throws IOException if writing fails
+         */
+        public synchronized String finish(RunStatistics runStatistics) throws IOException {
+            if (finished) {
+                return reportPath.toString();
+            }
+            finished = true;
+            
+            try (OutputStream out = outputStream) {
+                writer.writeCharacters("  ");
+                writer.writeEndElement(); // methods
+                writer.writeCharacters("\n");
+                
+                double averageScore = methodsWithMetrics > 0 ? scoreSum / methodsWithMetrics : 0.0;
+                writeSummary(writer, totalMethods, methodsWithMetrics, averageScore, runStatistics);
+                
+                writer.writeEndElement(); // javadoc-analysis-report
+                writer.writeCharacters("\n");
+                writer.writeEndDocument();
+                writer.close();
+                out.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to finish XML report: " + e.getMessage(), e);
+            }
+            
+            log.info("XML report generated successfully: {}", reportPath);
+            return reportPath.toString();
+        }
+        
+        /**
+         * Finishes the report without run statistics if it has not been finished yet, so a report
+         * interrupted by an error is still a well-formed document.
+         * 
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void close() throws IOException {
+            finish(null);
+        }
+        
+        public int getTotalMethods() {
+            return totalMethods;
+        }
+        
+        private void flush() throws XMLStreamException, IOException {
+            writer.flush();
+            outputStream.flush();
+        }
+    }
 }
@@ -7,11 +7,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,39 +67,51 @@ public class JavaParser {
      * Parses all Java files in a directory (recursively).
      * 
      * @param directoryPath The path to the directory
-     * @return A list of parsed JavaFiles
+     * @return A list of parsed JavaFiles, ordered by file path
      */
     public List<JavaFile> parseDirectory(String directoryPath) {
-        List<JavaFile> parsedFiles = new ArrayList<>();
-        File directory = new File(directoryPath);
-        
-        if (!directory.exists() || !directory.isDirectory()) {
+        Path directory = Paths.get(directoryPath);
+        if (!Files.isDirectory(directory)) {
             log.error("Directory does not exist or is not a directory: {}", directoryPath);
-            return parsedFiles;
+            return new ArrayList<>();
         }
         
-        parseDirectoryRecursively(directory, parsedFiles);
+        List<Path> files = new ArrayList<>();
+        walkJavaFiles(directory, (file, size) -> files.add(file));
+        files.sort(Comparator.naturalOrder());
+        
+        List<JavaFile> parsedFiles = new ArrayList<>();
+        for (Path file : files) {
+            parseFile(file.toString()).ifPresent(parsedFiles::add);
+        }
         return parsedFiles;
     }
     
     /**
-     * Recursively parses all Java files in a directory and its subdirectories.
+     * Walks a directory and its subdirectories and reports each Java file as soon as it is found.
      * 
-     * @param directory The directory to parse
-     * @param parsedFiles The list to add parsed files to
+     * @param directory The directory to walk
+     * @param visitor Receives the absolute path and size of each Java file
      */
-    private void parseDirectoryRecursively(File directory, List<JavaFile> parsedFiles) {
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return;
-        }
-        
-        for (File file : files) {
-            if (file.isDirectory()) {
-                parseDirectoryRecursively(file, parsedFiles);
-            } else if (file.getName().endsWith(".java")) {
-                parseFile(file.getAbsolutePath()).ifPresent(parsedFiles::add);
-            }
+    public void walkJavaFiles(Path directory, BiConsumer<Path, Long> visitor) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".java")) {
+                        visitor.accept(file.toAbsolutePath(), attrs.size());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.warn("Skipping unreadable path {}: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.error("Error walking directory {}: {}", directory, e.getMessage());
         }
     }
     
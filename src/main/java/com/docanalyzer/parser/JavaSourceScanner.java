@@ -0,0 +1,285 @@
+package com.docanalyzer.parser;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass lexer for Java source code.
+ * <p>
+ * The scanner walks the source exactly once and produces a compact token stream. Line and
+ * regular block comments are dropped, Javadoc comments are kept as tokens, and string, character
+ * and text block literals are consumed whole so that braces inside them are never counted.
+ * Matching {@code ()}, {@code []} and {@code {}} pairs are resolved during the same pass, which
+ * lets callers skip parameter lists and method bodies in constant time.
+ */
+public class JavaSourceScanner {
+
+    /**
+     * Token kinds produced by the scanner.
+     */
+    public enum TokenType {
+        JAVADOC,
+        IDENTIFIER,
+        LITERAL,
+        SYMBOL
+    }
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    /**
+     * Scans Java source code into tokens.
+     *
+     * @param source The source code
+     * @return The scanned tokens
+     */
+    public Tokens scan(String source) {
+        Tokens tokens = new Tokens(source, Math.max(16, source.length() / 4));
+        int length = source.length();
+        int pos = 0;
+        int line = 1;
+
+        while (pos < length) {
+            char c = source.charAt(pos);
+
+            if (c == '\n') {
+                line++;
+                pos++;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && pos + 1 < length && source.charAt(pos + 1) == '/') {
+                // Line comment
+                while (pos < length && source.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else if (c == '/' && pos + 1 < length && source.charAt(pos + 1) == '*') {
+                // Block or Javadoc comment; "/**/" is an empty block comment
+                boolean javadoc = pos + 2 < length && source.charAt(pos + 2) == '*'
+                        && !(pos + 3 < length && source.charAt(pos + 3) == '/');
+                int start = pos;
+                int startLine = line;
+                int end = source.indexOf("*/", pos + 2);
+                end = end < 0 ? length : end + 2;
+                line += countNewlines(source, pos, end);
+                pos = end;
+                if (javadoc) {
+                    tokens.add(TokenType.JAVADOC, start, end, startLine);
+                }
+            } else if (c == '"' && source.startsWith("\"\"\"", pos)) {
+                int start = pos;
+                int startLine = line;
+                pos = skipTextBlock(source, pos + 3);
+                line += countNewlines(source, start, pos);
+                tokens.add(TokenType.LITERAL, start, pos, startLine);
+            } else if (c == '"' || c == '\'') {
+                int start = pos;
+                pos = skipQuoted(source, pos + 1, c);
+                tokens.add(TokenType.LITERAL, start, pos, line);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = pos;
+                while (pos < length && Character.isJavaIdentifierPart(source.charAt(pos))) {
+                    pos++;
+                }
+                tokens.add(TokenType.IDENTIFIER, start, pos, line);
+            } else if (Character.isDigit(c)) {
+                int start = pos;
+                while (pos < length && (Character.isLetterOrDigit(source.charAt(pos))
+                        || source.charAt(pos) == '_' || source.charAt(pos) == '.')) {
+                    pos++;
+                }
+                tokens.add(TokenType.LITERAL, start, pos, line);
+            } else {
+                tokens.add(TokenType.SYMBOL, pos, pos + 1, line);
+                pos++;
+            }
+        }
+
+        tokens.resolveMatchingBrackets();
+        return tokens;
+    }
+
+    /**
+     * Skips a string or character literal.
+     *
+     * @param source The source code
+     * @param pos The position just after the opening quote
+     * @param quote The quote character
+     * @return The position just after the closing quote, or the end of the line if unterminated
+     */
+    private int skipQuoted(String source, int pos, char quote) {
+        while (pos < source.length()) {
+            char c = source.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == quote) {
+                return pos + 1;
+            } else if (c == '\n') {
+                return pos;
+            } else {
+                pos++;
+            }
+        }
+        return source.length();
+    }
+
+    /**
+     * Skips the content of a text block.
+     *
+     * @param source The source code
+     * @param pos The position just after the opening delimiter
+     * @return The position just after the closing delimiter
+     */
+    private int skipTextBlock(String source, int pos) {
+        while (pos < source.length()) {
+            char c = source.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+            } else if (source.startsWith("\"\"\"", pos)) {
+                return pos + 3;
+            } else {
+                pos++;
+            }
+        }
+        return source.length();
+    }
+
+    private int countNewlines(String source, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (source.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compact token stream backed by parallel arrays.
+     */
+    public static class Tokens {
+        private final String source;
+        private int size;
+        private byte[] types;
+        private int[] starts;
+        private int[] ends;
+        private int[] lines;
+        private int[] matches;
+
+        private Tokens(String source, int capacity) {
+            this.source = source;
+            this.types = new byte[capacity];
+            this.starts = new int[capacity];
+            this.ends = new int[capacity];
+            this.lines = new int[capacity];
+        }
+
+        private void add(TokenType type, int start, int end, int line) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            types[size] = (byte) type.ordinal();
+            starts[size] = start;
+            ends[size] = end;
+            lines[size] = line;
+            size++;
+        }
+
+        /**
+         * Pairs up brackets with a stack. Unbalanced brackets are left unmatched (-1).
+         */
+        private void resolveMatchingBrackets() {
+            matches = new int[size];
+            Arrays.fill(matches, -1);
+            int[] stack = new int[16];
+            int depth = 0;
+
+            for (int i = 0; i < size; i++) {
+                if (types[i] != TokenType.SYMBOL.ordinal()) {
+                    continue;
+                }
+                char c = source.charAt(starts[i]);
+                if (c == '(' || c == '[' || c == '{') {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = i;
+                } else if (c == ')' || c == ']' || c == '}') {
+                    char open = c == ')' ? '(' : c == ']' ? '[' : '{';
+                    // Pop until the matching opener, so a stray closer cannot desynchronize the rest of the file
+                    int d = depth;
+                    while (d > 0 && source.charAt(starts[stack[d - 1]]) != open) {
+                        d--;
+                    }
+                    if (d > 0) {
+                        int openIndex = stack[d - 1];
+                        matches[openIndex] = i;
+                        matches[i] = openIndex;
+                        depth = d - 1;
+                    }
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String source() {
+            return source;
+        }
+
+        public TokenType type(int index) {
+            return TOKEN_TYPES[types[index]];
+        }
+
+        public int start(int index) {
+            return starts[index];
+        }
+
+        public int end(int index) {
+            return ends[index];
+        }
+
+        public int line(int index) {
+            return lines[index];
+        }
+
+        /**
+         * Gets the index of the bracket matching the bracket at the given index.
+         *
+         * @param index The token index of a bracket
+         * @return The index of the matching bracket, or -1 if there is none
+         */
+        public int matching(int index) {
+            return matches[index];
+        }
+
+        public String text(int index) {
+            return source.substring(starts[index], ends[index]);
+        }
+
+        /**
+         * Checks whether the token at the given index is the given symbol.
+         *
+         * @param index The token index (may be out of range)
+         * @param symbol The symbol character
+         * @return True if the token is that symbol
+         */
+        public boolean isSymbol(int index, char symbol) {
+            return index >= 0 && index < size && types[index] == TokenType.SYMBOL.ordinal()
+                    && source.charAt(starts[index]) == symbol;
+        }
+
+        /**
+         * Checks whether the token at the given index is an identifier.
+         *
+         * @param index The token index (may be out of range)
+         * @return True if the token is an identifier
+         */
+        public boolean isIdentifier(int index) {
+            return index >= 0 && index < size && types[index] == TokenType.IDENTIFIER.ordinal();
+        }
+    }
+}
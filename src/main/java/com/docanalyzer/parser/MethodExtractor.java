@@ -35,6 +35,19 @@ public class MethodExtractor {
         this.javadocParser = new JavadocParser();
     }
     
+    /**
+     * Creates the method extractor selected by name.
+     * 
+     * @param type "scanner" for the single-pass {@link ScanningMethodExtractor}, anything else for the regex extractor
+     * @return The method extractor
+     */
+    public static MethodExtractor create(String type) {
+        if ("scanner".equalsIgnoreCase(type)) {
+            return new ScanningMethodExtractor();
+        }
+        return new MethodExtractor();
+    }
+    
     /**
      * Extracts all methods from a parsed Java file.
      * 
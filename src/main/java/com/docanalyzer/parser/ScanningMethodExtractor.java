@@ -0,0 +1,375 @@
+package com.docanalyzer.parser;
+
+import com.docanalyzer.model.Javadoc;
+import com.docanalyzer.model.Method;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts documented methods using {@link JavaSourceScanner} instead of a regular expression.
+ * <p>
+ * Every Javadoc token is checked for a method declaration that directly follows it
+ * (annotations, modifiers, type parameters, return type, name, parameters, throws clause and a
+ * body or {@code ;}). The check only moves forward over the token stream and skips bracketed
+ * sections through pre-computed matches, so extraction time is linear in the file size.
+ */
+public class ScanningMethodExtractor extends MethodExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanningMethodExtractor.class);
+
+    private static final Set<String> MODIFIERS = Set.of(
+            "public", "private", "protected", "static", "final", "native", "synchronized",
+            "abstract", "transient", "default", "strictfp");
+
+    // Keywords that can never start a return type or be a method name
+    private static final Set<String> RESERVED = Set.of(
+            "class", "interface", "enum", "record", "new", "return", "throw", "if", "else", "for",
+            "while", "do", "switch", "case", "try", "catch", "finally", "package", "import", "assert",
+            "break", "continue", "this", "super", "instanceof", "extends", "implements", "throws");
+
+    private final JavaSourceScanner scanner = new JavaSourceScanner();
+    private final JavadocParser javadocParser = new JavadocParser();
+
+    /**
+     * Extracts all documented methods from a parsed Java file.
+     *
+     * @param parsedFile The parsed Java file
+     * @return A list of extracted methods
+     */
+    @Override
+    public List<Method> extractMethods(JavaParser.JavaFile parsedFile) {
+        List<Method> methods = new ArrayList<>();
+        JavaSourceScanner.Tokens tokens = scanner.scan(parsedFile.getContent());
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) != JavaSourceScanner.TokenType.JAVADOC) {
+                continue;
+            }
+
+            try {
+                Method method = parseDeclaration(tokens, i, parsedFile);
+                if (method != null) {
+                    methods.add(method);
+                }
+            } catch (Exception e) {
+                log.error("Error extracting method: {}", e.getMessage());
+            }
+        }
+
+        return methods;
+    }
+
+    /**
+     * Parses the method declaration following a Javadoc token.
+     *
+     * @param tokens The token stream
+     * @param javadocIndex The index of the Javadoc token
+     * @param parsedFile The file being processed
+     * @return The method, or null if the Javadoc is not followed by a method declaration
+     */
+    private Method parseDeclaration(JavaSourceScanner.Tokens tokens, int javadocIndex, JavaParser.JavaFile parsedFile) {
+        int p = javadocIndex + 1;
+        int declarationStart = p;
+        List<String> modifiers = new ArrayList<>();
+
+        // Annotations and modifiers, in any order
+        while (p < tokens.size()) {
+            if (tokens.isSymbol(p, '@') && tokens.isIdentifier(p + 1) && !"interface".equals(tokens.text(p + 1))) {
+                p = skipAnnotation(tokens, p);
+                if (p < 0) {
+                    return null;
+                }
+            } else if (tokens.isIdentifier(p) && MODIFIERS.contains(tokens.text(p))) {
+                modifiers.add(tokens.text(p));
+                p++;
+            } else {
+                break;
+            }
+        }
+
+        // Type parameters of a generic method
+        String typeParameters = null;
+        if (tokens.isSymbol(p, '<')) {
+            int end = skipAngleBrackets(tokens, p);
+            if (end < 0) {
+                return null;
+            }
+            typeParameters = typeText(tokens, p, end);
+            p = end;
+        }
+
+        // Return type and name; a constructor has only a name
+        String returnType;
+        int nameIndex;
+        if (tokens.isIdentifier(p) && tokens.isSymbol(p + 1, '(')) {
+            returnType = "";
+            nameIndex = p;
+        } else {
+            int typeEnd = skipType(tokens, p);
+            if (typeEnd < 0) {
+                return null;
+            }
+            returnType = typeText(tokens, p, typeEnd);
+            nameIndex = typeEnd;
+        }
+
+        if (!tokens.isIdentifier(nameIndex) || RESERVED.contains(tokens.text(nameIndex))
+                || !tokens.isSymbol(nameIndex + 1, '(')) {
+            return null;
+        }
+        String methodName = tokens.text(nameIndex);
+
+        int openParen = nameIndex + 1;
+        int closeParen = tokens.matching(openParen);
+        if (closeParen < 0) {
+            return null;
+        }
+
+        List<String> parameterTypes = new ArrayList<>();
+        List<String> parameterNames = new ArrayList<>();
+        if (!parseParameters(tokens, openParen, closeParen, parameterTypes, parameterNames)) {
+            return null;
+        }
+
+        // Legacy array dimensions after the parameter list and the throws clause
+        p = closeParen + 1;
+        while (tokens.isSymbol(p, '[') && tokens.isSymbol(p + 1, ']')) {
+            p += 2;
+        }
+
+        String throwsClause = null;
+        if (tokens.isIdentifier(p) && "throws".equals(tokens.text(p))) {
+            int throwsStart = p + 1;
+            while (p < tokens.size() && !tokens.isSymbol(p, '{') && !tokens.isSymbol(p, ';')) {
+                if (tokens.type(p) == JavaSourceScanner.TokenType.LITERAL || tokens.isSymbol(p, '(')) {
+                    return null;
+                }
+                p++;
+            }
+            throwsClause = "throws " + typeText(tokens, throwsStart, p);
+        }
+
+        String body;
+        String fullCode;
+        int endIndex;
+        StringBuilder signatureBuilder = new StringBuilder();
+        for (String modifier : modifiers) {
+            signatureBuilder.append(modifier).append(" ");
+        }
+        if (typeParameters != null) {
+            signatureBuilder.append(typeParameters).append(" ");
+        }
+        if (!returnType.isEmpty()) {
+            signatureBuilder.append(returnType).append(" ");
+        }
+        signatureBuilder.append(methodName).append("(");
+        for (int i = 0; i < parameterNames.size(); i++) {
+            if (i > 0) {
+                signatureBuilder.append(", ");
+            }
+            signatureBuilder.append(parameterTypes.get(i)).append(" ").append(parameterNames.get(i));
+        }
+        signatureBuilder.append(")");
+        if (throwsClause != null) {
+            signatureBuilder.append(" ").append(throwsClause);
+        }
+        String signature = signatureBuilder.toString();
+
+        if (tokens.isSymbol(p, '{')) {
+            int closeBrace = tokens.matching(p);
+            String source = tokens.source();
+            String inner = closeBrace >= 0
+                    ? source.substring(tokens.end(p), tokens.start(closeBrace))
+                    : source.substring(tokens.end(p));
+            body = "{" + inner + "}";
+            fullCode = signature + " " + body;
+            endIndex = closeBrace >= 0 ? closeBrace : tokens.size() - 1;
+        } else if (tokens.isSymbol(p, ';')) {
+            body = "";
+            fullCode = signature + ";";
+            endIndex = p;
+        } else {
+            return null;
+        }
+
+        String javadocComment = tokens.text(javadocIndex);
+        Javadoc javadoc = javadocParser.parseJavadocComment(javadocComment, parameterNames);
+
+        return Method.builder()
+                .name(methodName)
+                .signature(signature)
+                .body(body)
+                .fullCode(fullCode)
+                .javadoc(javadoc)
+                .className(parsedFile.getClassName())
+                .packageName(parsedFile.getPackageName())
+                .filePath(parsedFile.getFilePath())
+                .startLine(tokens.line(declarationStart))
+                .endLine(tokens.line(endIndex))
+                .parameterNames(parameterNames)
+                .parameterTypes(parameterTypes)
+                .returnType(returnType)
+                .build();
+    }
+
+    /**
+     * Splits a parameter list at top-level commas and extracts each parameter's type and name.
+     * Annotations and the {@code final} modifier are dropped.
+     *
+     * @param tokens The token stream
+     * @param openParen The index of the opening parenthesis
+     * @param closeParen The index of the closing parenthesis
+     * @param parameterTypes Receives the parameter types
+     * @param parameterNames Receives the parameter names
+     * @return False if the list does not look like a declaration (e.g. it contains literals)
+     */
+    private boolean parseParameters(JavaSourceScanner.Tokens tokens, int openParen, int closeParen,
+                                    List<String> parameterTypes, List<String> parameterNames) {
+        int p = openParen + 1;
+
+        while (p < closeParen) {
+            // Leading annotations and modifiers of this parameter
+            while (p < closeParen) {
+                if (tokens.isSymbol(p, '@') && tokens.isIdentifier(p + 1)) {
+                    p = skipAnnotation(tokens, p);
+                    if (p < 0) {
+                        return false;
+                    }
+                } else if (tokens.isIdentifier(p) && "final".equals(tokens.text(p))) {
+                    p++;
+                } else {
+                    break;
+                }
+            }
+
+            int typeStart = p;
+            int angleDepth = 0;
+            while (p < closeParen && !(angleDepth == 0 && tokens.isSymbol(p, ','))) {
+                if (tokens.type(p) == JavaSourceScanner.TokenType.LITERAL) {
+                    return false;
+                }
+                if (tokens.isSymbol(p, '<')) {
+                    angleDepth++;
+                } else if (tokens.isSymbol(p, '>')) {
+                    angleDepth--;
+                } else if (tokens.matching(p) > p) {
+                    p = tokens.matching(p);
+                }
+                p++;
+            }
+
+            int nameIndex = p - 1;
+            while (nameIndex > typeStart && tokens.isSymbol(nameIndex, ']')) {
+                nameIndex -= 2;
+            }
+            if (nameIndex <= typeStart || !tokens.isIdentifier(nameIndex)) {
+                return false;
+            }
+
+            parameterTypes.add(typeText(tokens, typeStart, nameIndex));
+            parameterNames.add(tokens.text(nameIndex));
+            p++; // skip the comma
+        }
+
+        return true;
+    }
+
+    /**
+     * Skips an annotation including its arguments.
+     *
+     * @param tokens The token stream
+     * @param at The index of the {@code @} symbol
+     * @return The index after the annotation, or -1 if it is malformed
+     */
+    private int skipAnnotation(JavaSourceScanner.Tokens tokens, int at) {
+        int p = at + 1;
+        while (tokens.isIdentifier(p) && tokens.isSymbol(p + 1, '.') && tokens.isIdentifier(p + 2)) {
+            p += 2;
+        }
+        p++;
+        if (tokens.isSymbol(p, '(')) {
+            int close = tokens.matching(p);
+            return close < 0 ? -1 : close + 1;
+        }
+        return p;
+    }
+
+    /**
+     * Skips a type: a qualified name with optional type arguments and array dimensions.
+     *
+     * @param tokens The token stream
+     * @param p The index of the first token of the type
+     * @return The index after the type, or -1 if no type starts here
+     */
+    private int skipType(JavaSourceScanner.Tokens tokens, int p) {
+        if (!tokens.isIdentifier(p) || RESERVED.contains(tokens.text(p))) {
+            return -1;
+        }
+        p++;
+
+        while (true) {
+            if (tokens.isSymbol(p, '.') && tokens.isIdentifier(p + 1)) {
+                p += 2;
+            } else if (tokens.isSymbol(p, '<')) {
+                p = skipAngleBrackets(tokens, p);
+                if (p < 0) {
+                    return -1;
+                }
+            } else if (tokens.isSymbol(p, '[') && tokens.isSymbol(p + 1, ']')) {
+                p += 2;
+            } else {
+                return p;
+            }
+        }
+    }
+
+    /**
+     * Skips a balanced {@code <...>} section of a type.
+     *
+     * @param tokens The token stream
+     * @param p The index of the opening angle bracket
+     * @return The index after the closing angle bracket, or -1 if the section is not a type
+     */
+    private int skipAngleBrackets(JavaSourceScanner.Tokens tokens, int p) {
+        int depth = 0;
+        while (p < tokens.size()) {
+            if (tokens.isSymbol(p, '<')) {
+                depth++;
+            } else if (tokens.isSymbol(p, '>')) {
+                depth--;
+                if (depth == 0) {
+                    return p + 1;
+                }
+            } else if (tokens.type(p) != JavaSourceScanner.TokenType.IDENTIFIER
+                    && !tokens.isSymbol(p, ',') && !tokens.isSymbol(p, '.') && !tokens.isSymbol(p, '?')
+                    && !tokens.isSymbol(p, '&') && !tokens.isSymbol(p, '[') && !tokens.isSymbol(p, ']')
+                    && !tokens.isSymbol(p, '@')) {
+                return -1;
+            }
+            p++;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the source text of a token range with whitespace normalized.
+     *
+     * @param tokens The token stream
+     * @param from The first token index (inclusive)
+     * @param to The last token index (exclusive)
+     * @return The normalized text
+     */
+    private String typeText(JavaSourceScanner.Tokens tokens, int from, int to) {
+        if (to <= from) {
+            return "";
+        }
+        return tokens.source().substring(tokens.start(from), tokens.end(to - 1))
+                .replaceAll("\\s+", " ")
+                .replaceAll("\\s*([<>\\[\\].])\\s*", "$1")
+                .trim();
+    }
+}
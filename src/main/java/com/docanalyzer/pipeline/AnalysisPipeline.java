@@ -0,0 +1,318 @@
+package com.docanalyzer.pipeline;
+
+import com.docanalyzer.batch.BatchProcessor;
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.parser.JavaParser;
+import com.docanalyzer.parser.MethodExtractor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Streams methods from the input paths to the report through bounded queues.
+ * <p>
+ * The stages run concurrently:
+ * <ol>
+ *   <li>discovery walks the input paths and queues the Java files of each directory largest
+ *       first, so that a big file is not left to be parsed alone at the end,</li>
+ *   <li>parser workers read each file, extract its methods and keep only those with Javadoc,</li>
+ *   <li>the evaluation stage groups methods into windows, sorts each window by file path and
+ *       line, and lets the {@link BatchProcessor} batch and evaluate it,</li>
+ *   <li>the report stage hands every evaluated window to the report sink.</li>
+ * </ol>
+ * Every queue is bounded, so a slow stage blocks the stages before it instead of letting them
+ * buffer the whole repository. File contents are released right after extraction.
+ * <p>
+ * The parsers finish files in no fixed order, so the report is only in path order within each
+ * window; a run that fits into one window is reported entirely in path order. Only the paths
+ * and sizes of the files of a directory are held before they are queued, never their contents.
+ */
+@Slf4j
+public class AnalysisPipeline {
+
+    private static final Path END_OF_FILES = Paths.get("");
+    private static final Method END_OF_METHODS = new Method();
+    private static final List<Method> END_OF_WINDOWS = new ArrayList<>();
+    // Stable, so the methods of a file keep their declaration order where no line numbers are known
+    private static final Comparator<Method> SOURCE_ORDER = Comparator
+            .comparing(Method::getFilePath, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(Method::getStartLine);
+
+    private final JavaParser javaParser;
+    private final MethodExtractor methodExtractor;
+    private final BatchProcessor batchProcessor;
+    private final String guidelines;
+    private final int parserThreads;
+    private final int windowSize;
+    private final int queueCapacity;
+    private final boolean flushWhenIdle;
+
+    private final AtomicInteger filesParsed = new AtomicInteger();
+    private final AtomicInteger methodsExtracted = new AtomicInteger();
+    private final AtomicInteger methodsWithJavadoc = new AtomicInteger();
+
+    /**
+     * Creates a new AnalysisPipeline.
+     *
+     * @param config The configuration
+     * @param javaParser The parser for Java files
+     * @param methodExtractor The extractor for methods
+     * @param batchProcessor The processor that evaluates methods
+     * @param guidelines The evaluation guidelines
+     */
+    public AnalysisPipeline(Configuration config, JavaParser javaParser, MethodExtractor methodExtractor,
+                            BatchProcessor batchProcessor, String guidelines) {
+        this.javaParser = javaParser;
+        this.methodExtractor = methodExtractor;
+        this.batchProcessor = batchProcessor;
+        this.guidelines = guidelines;
+        this.parserThreads = config.getParserThreads() > 0 ? config.getParserThreads() : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = Math.max(config.getPipelineWindowSize(), config.getPipelineQueueCapacity());
+        // A Message Batches job takes minutes to hours, so collect large windows and never submit early
+        this.flushWhenIdle = !batchProcessor.isAsyncBatchMode();
+        this.windowSize = Math.max(1, flushWhenIdle ? config.getPipelineWindowSize() : config.getMessageBatchWindowSize());
+    }
+
+    /**
+     * Runs the pipeline until every input has been evaluated and reported.
+     *
+     * @param inputPaths Java files or directories to analyze
+     * @param reportSink Receives each window of evaluated methods, always from the same thread
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public void run(List<String> inputPaths, Consumer<List<Method>> reportSink) throws InterruptedException {
+        BlockingQueue<Path> fileQueue = new ArrayBlockingQueue<>(parserThreads * 4);
+        BlockingQueue<Method> methodQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<Method>> reportQueue = new ArrayBlockingQueue<>(2);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().name("pipeline-discovery").daemon(true)
+                .start(() -> discover(inputPaths, fileQueue)));
+
+        AtomicInteger activeParsers = new AtomicInteger(parserThreads);
+        for (int i = 1; i <= parserThreads; i++) {
+            threads.add(Thread.ofPlatform().name("pipeline-parser-" + i).daemon(true)
+                    .start(() -> parse(fileQueue, methodQueue, activeParsers)));
+        }
+
+        Thread reportThread = Thread.ofPlatform().name("pipeline-report").daemon(true)
+                .start(() -> report(reportQueue, reportSink));
+        threads.add(reportThread);
+
+        try {
+            evaluate(methodQueue, reportQueue);
+            reportThread.join();
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        log.info("Pipeline finished: {} files parsed, {} methods extracted, {} with Javadoc",
+                filesParsed.get(), methodsExtracted.get(), methodsWithJavadoc.get());
+    }
+
+    /**
+     * Discovery stage: queues every Java file of the input paths, the files of a directory
+     * largest first.
+     *
+     * @param inputPaths The input paths
+     * @param fileQueue The queue of files to parse
+     */
+    private void discover(List<String> inputPaths, BlockingQueue<Path> fileQueue) {
+        try {
+            for (String inputPath : inputPaths) {
+                File inputFile = new File(inputPath);
+
+                if (!inputFile.exists()) {
+                    log.error("Input path does not exist: {}", inputPath);
+                } else if (inputFile.isDirectory()) {
+                    log.info("Parsing directory: {}", inputPath);
+                    List<SourceFile> files = new ArrayList<>();
+                    javaParser.walkJavaFiles(inputFile.toPath(), (file, size) -> files.add(new SourceFile(file, size)));
+                    files.sort(Comparator.comparingLong(SourceFile::size).reversed().thenComparing(SourceFile::path));
+                    for (SourceFile file : files) {
+                        enqueue(fileQueue, file.path());
+                    }
+                } else if (inputFile.getName().endsWith(".java")) {
+                    log.info("Parsing file: {}", inputPath);
+                    enqueue(fileQueue, inputFile.toPath());
+                } else {
+                    log.warn("Skipping non-Java file: {}", inputPath);
+                }
+            }
+        } catch (CancellationException e) {
+            log.debug("File discovery cancelled");
+        } finally {
+            // An interrupted pipeline is being torn down; nobody is left to read the end markers
+            for (int i = 0; i < parserThreads && !Thread.currentThread().isInterrupted(); i++) {
+                enqueue(fileQueue, END_OF_FILES);
+            }
+        }
+    }
+
+    /**
+     * Parse stage: parses files, extracts their methods and keeps those with Javadoc. A file that
+     * fails to parse is skipped. The last parser to finish signals the end of the method stream.
+     *
+     * @param fileQueue The queue of files to parse
+     * @param methodQueue The queue of methods to evaluate
+     * @param activeParsers The number of parsers still running
+     */
+    private void parse(BlockingQueue<Path> fileQueue, BlockingQueue<Method> methodQueue, AtomicInteger activeParsers) {
+        try {
+            while (true) {
+                Path file = fileQueue.take();
+                if (file == END_OF_FILES) {
+                    break;
+                }
+
+                try {
+                    extract(file, methodQueue);
+                } catch (CancellationException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    log.error("Skipping file {}, extracting its methods failed: {}", file, e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException | CancellationException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (activeParsers.decrementAndGet() == 0 && !Thread.currentThread().isInterrupted()) {
+                enqueue(methodQueue, END_OF_METHODS);
+            }
+        }
+    }
+
+    /**
+     * Parses a file and queues its methods with Javadoc.
+     *
+     * @param file The file
+     * @param methodQueue The queue of methods to evaluate
+     */
+    private void extract(Path file, BlockingQueue<Method> methodQueue) {
+        javaParser.parseFile(file.toString()).ifPresent(parsedFile -> {
+            filesParsed.incrementAndGet();
+            for (Method method : methodExtractor.extractMethods(parsedFile)) {
+                methodsExtracted.incrementAndGet();
+                if (method.getJavadoc() != null) {
+                    methodsWithJavadoc.incrementAndGet();
+                    enqueue(methodQueue, method);
+                }
+            }
+        });
+    }
+
+    /**
+     * Evaluation stage: collects methods into windows and evaluates each window.
+     * A partial window is evaluated early when no new method arrives for a second, so the API
+     * is not left idle while the parsers are still busy (except in async-batch mode).
+     *
+     * @param methodQueue The queue of methods to evaluate
+     * @param reportQueue The queue of evaluated windows
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void evaluate(BlockingQueue<Method> methodQueue, BlockingQueue<List<Method>> reportQueue) throws InterruptedException {
+        List<Method> window = new ArrayList<>(windowSize);
+        boolean finished = false;
+
+        try {
+            while (!finished) {
+                Method method = methodQueue.poll(1, TimeUnit.SECONDS);
+
+                if (method == END_OF_METHODS) {
+                    finished = true;
+                } else if (method != null) {
+                    window.add(method);
+                }
+
+                if (!window.isEmpty() && (finished || (method == null && flushWhenIdle) || window.size() >= windowSize)) {
+                    window.sort(SOURCE_ORDER);
+                    batchProcessor.processBatches(window, guidelines);
+                    reportQueue.put(window);
+                    window = new ArrayList<>(windowSize);
+                }
+            }
+        } finally {
+            reportQueue.put(END_OF_WINDOWS);
+        }
+    }
+
+    /**
+     * Report stage: hands evaluated windows to the sink. If the sink fails, the remaining windows
+     * are still drained so the evaluation stage is never blocked.
+     *
+     * @param reportQueue The queue of evaluated windows
+     * @param reportSink The report sink
+     */
+    private void report(BlockingQueue<List<Method>> reportQueue, Consumer<List<Method>> reportSink) {
+        boolean sinkFailed = false;
+
+        try {
+            while (true) {
+                List<Method> window = reportQueue.take();
+                if (window == END_OF_WINDOWS) {
+                    return;
+                }
+
+                if (!sinkFailed) {
+                    try {
+                        reportSink.accept(window);
+                    } catch (Exception e) {
+                        log.error("Report stage failed: {}", e.getMessage(), e);
+                        sinkFailed = true;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts an element into a queue, blocking while it is full.
+     *
+     * @param queue The queue
+     * @param element The element
+     * @param <T> The element type
+     * @throws CancellationException If the thread is interrupted while waiting
+     */
+    private static <T> void enqueue(BlockingQueue<T> queue, T element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Pipeline interrupted");
+        }
+    }
+
+    public int getFilesParsed() {
+        return filesParsed.get();
+    }
+
+    public int getMethodsExtracted() {
+        return methodsExtracted.get();
+    }
+
+    public int getMethodsWithJavadoc() {
+        return methodsWithJavadoc.get();
+    }
+
+    /**
+     * A Java file found while walking a directory.
+     */
+    private record SourceFile(Path path, long size) {
+    }
+}
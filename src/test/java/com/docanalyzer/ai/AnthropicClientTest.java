@@ -0,0 +1,241 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for AnthropicClient.
+ */
+public class AnthropicClientTest {
+
+    private StubAnthropicServer server;
+    private AnthropicClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        client = new AnthropicClient(server.configuration());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testStreamMessageDeliversDeltasInOrder() throws IOException {
+        // Given
+        String text = "METHOD 1 [get] EVALUATION:\nCompleteness: 4\n\"quoted\"\n---\n";
+        server.enqueue(StubAnthropicServer.stream(text, 5));
+
+        // When
+        List<String> deltas = new ArrayList<>();
+        ApiResponse response = client.streamMessage(new Prompt("shared", "methods"), deltas::add);
+
+        // Then
+        assertEquals(text, String.join("", deltas));
+        assertEquals(text, response.getText());
+        assertTrue(deltas.size() > 1);
+        assertEquals(100, response.getInputTokens());
+        assertEquals(900, response.getCacheReadInputTokens());
+        assertEquals(50, response.getOutputTokens());
+        assertTrue(server.getRequests().get(0).body().contains("\"stream\":true"));
+    }
+
+    @Test
+    public void testLargePromptIsWrittenIntoTheRequestBody() throws IOException {
+        // Given - a prompt well above the connection buffers, with characters that need escaping
+        String user = "METHOD 1:\n\"quoted\" \\ tab\t \u00e9\u4e2d \ud83d\ude00\n".repeat(20_000);
+        server.enqueue(StubAnthropicServer.message("answer"));
+
+        // When
+        client.sendMessage(new Prompt("shared", user));
+
+        // Then
+        StubAnthropicServer.RecordedRequest request = server.getRequests().get(0);
+        assertEquals("chunked", request.headers().get("transfer-encoding"));
+        JsonNode body = new ObjectMapper().readTree(request.body());
+        assertEquals(user, body.path("messages").get(0).path("content").asText());
+        assertEquals("shared", body.path("system").get(0).path("text").asText());
+        assertEquals("ephemeral", body.path("system").get(0).path("cache_control").path("type").asText());
+    }
+
+    @Test
+    public void testMessageIsReadWithUnknownFields() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200, "{\"id\":\"msg_1\",\"type\":\"message\","
+                + "\"content\":[{\"text\":\"first \",\"type\":\"text\",\"citations\":null},{\"type\":\"text\",\"text\":\"second\"}],"
+                + "\"stop_reason\":\"max_tokens\",\"stop_sequence\":null,\"container\":{\"id\":\"c\",\"files\":[1,2]},"
+                + "\"usage\":{\"input_tokens\":10,\"cache_creation_input_tokens\":20,\"cache_read_input_tokens\":30,"
+                + "\"output_tokens\":40,\"server_tool_use\":{\"web_search_requests\":0}}}"));
+
+        // When
+        ApiResponse response = client.sendMessage(Prompt.of("methods"));
+
+        // Then
+        assertEquals("first second", response.getText());
+        assertTrue(response.isTruncated());
+        assertEquals(10, response.getInputTokens());
+        assertEquals(20, response.getCacheCreationInputTokens());
+        assertEquals(30, response.getCacheReadInputTokens());
+        assertEquals(40, response.getOutputTokens());
+    }
+
+    @Test
+    public void testMessageWithoutContentIsRejected() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200, "{\"type\":\"message\",\"content\":[]}"));
+
+        // When / Then
+        assertThrows(IOException.class, () -> client.sendMessage(Prompt.of("methods")));
+    }
+
+    @Test
+    public void testRequestExceedingItsDeadlineIsAborted() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        server.enqueue(request -> awaitThenAnswer(release));
+        Configuration config = server.configuration();
+        config.setRequestDeadlineMs(200);
+
+        // When
+        long start = System.nanoTime();
+        DeadlineExceededException e;
+        try (AnthropicClient deadlineClient = new AnthropicClient(config)) {
+            e = assertThrows(DeadlineExceededException.class, () -> deadlineClient.streamMessage(Prompt.of("methods"), delta -> { }));
+        } finally {
+            release.countDown();
+        }
+
+        // Then
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 3000);
+        assertEquals(200, e.getDeadlineMs());
+        assertTrue(new RetryPolicy(config, null, null).isRetryable(e));
+    }
+
+    @Test
+    public void testCancelAllAbortsRequestsInFlight() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        server.enqueue(request -> awaitThenAnswer(release));
+        CompletableFuture<ApiResponse> inflight = CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.sendMessage(Prompt.of("methods"));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        while (server.getRequests().isEmpty()) {
+            Thread.sleep(10);
+        }
+
+        // When
+        client.cancelAll();
+
+        // Then
+        try {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> inflight.get(3, TimeUnit.SECONDS));
+            assertInstanceOf(RequestCancelledException.class, e.getCause());
+            assertThrows(RequestCancelledException.class, () -> client.sendMessage(Prompt.of("later")));
+            assertEquals(1, server.getRequests().size());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testErrorEventInStreamIsReportedWithItsStatus() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200,
+                "event: message_start\ndata: {\"type\":\"message_start\",\"message\":{\"usage\":{\"input_tokens\":10}}}\n\n"
+                        + "event: error\ndata: {\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"Overloaded\"}}\n\n")
+                .header("Content-Type", "text/event-stream"));
+
+        // When
+        ApiException e = assertThrows(ApiException.class, () -> client.streamMessage(Prompt.of("methods"), delta -> { }));
+
+        // Then
+        assertEquals(529, e.getStatusCode());
+    }
+
+    @Test
+    public void testErrorStatusIsReportedBeforeStreaming() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(429, "{\"type\":\"error\"}").header("retry-after", "2"));
+
+        // When
+        ApiException e = assertThrows(ApiException.class, () -> client.streamMessage(Prompt.of("methods"), delta -> { }));
+
+        // Then
+        assertTrue(e.isRateLimited());
+        assertEquals(2000, e.getRetryAfterMs());
+    }
+
+    @Test
+    public void testToolCallInputIsReturned() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200, "{\"type\":\"message\",\"stop_reason\":\"tool_use\","
+                + "\"content\":[{\"type\":\"tool_use\",\"id\":\"toolu_1\",\"name\":\"record_evaluations\","
+                + "\"input\":{\"evaluations\":[]}}],\"usage\":{\"input_tokens\":10,\"output_tokens\":5}}"));
+        ObjectNode tool = new ObjectMapper().createObjectNode().put("name", "record_evaluations");
+        tool.putObject("input_schema").put("type", "object");
+
+        // When
+        ApiResponse response = client.sendMessage(new Prompt("shared", "methods", tool));
+
+        // Then
+        assertEquals("{\"evaluations\":[]}", response.getToolInput());
+        JsonNode body = new ObjectMapper().readTree(server.getRequests().get(0).body());
+        assertEquals("record_evaluations", body.path("tools").get(0).path("name").asText());
+        assertEquals("tool", body.path("tool_choice").path("type").asText());
+        assertEquals("record_evaluations", body.path("tool_choice").path("name").asText());
+    }
+
+    @Test
+    public void testStreamedToolInputIsDelivered() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200,
+                "event: content_block_start\ndata: {\"type\":\"content_block_start\",\"index\":0,"
+                        + "\"content_block\":{\"type\":\"tool_use\",\"id\":\"toolu_1\",\"name\":\"record_evaluations\",\"input\":{}}}\n\n"
+                        + "event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,"
+                        + "\"delta\":{\"type\":\"input_json_delta\",\"partial_json\":\"{\\\"evaluations\\\": \"}}\n\n"
+                        + "event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,"
+                        + "\"delta\":{\"type\":\"input_json_delta\",\"partial_json\":\"[]}\"}}\n\n"
+                        + "event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n")
+                .header("Content-Type", "text/event-stream"));
+
+        // When
+        List<String> deltas = new ArrayList<>();
+        ApiResponse response = client.streamMessage(Prompt.of("methods"), deltas::add);
+
+        // Then
+        assertEquals(List.of("{\"evaluations\": ", "[]}"), deltas);
+        assertEquals("{\"evaluations\": []}", response.getToolInput());
+    }
+
+    private static StubAnthropicServer.StubResponse awaitThenAnswer(CountDownLatch release) {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return StubAnthropicServer.message("too late");
+    }
+}
@@ -0,0 +1,120 @@
+package com.docanalyzer.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for CircuitBreaker.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensWhenFailureRateReachesThreshold() {
+        // Given
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 0.5, 60_000);
+
+        // When - 4 failures out of 8 calls: window minimum is 5 calls
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordSuccess();
+        }
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.recordFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getTimesOpened());
+    }
+
+    @Test
+    public void testOldOutcomesLeaveTheWindow() {
+        // Given a long run of successes
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 0.75, 60_000);
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.recordSuccess();
+        }
+
+        // When a burst of failures pushes them out of the window
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.recordFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenLetsOneTrialThrough() throws Exception {
+        // Given
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0.5, 100);
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // When - the first caller gets the trial slot after the open period
+        circuitBreaker.acquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        CountDownLatch secondCallerPassed = new CountDownLatch(1);
+        Thread secondCaller = new Thread(() -> {
+            try {
+                circuitBreaker.acquirePermission();
+                secondCallerPassed.countDown();
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        secondCaller.start();
+
+        // Then - other callers wait until the trial succeeds
+        assertFalse(secondCallerPassed.await(200, TimeUnit.MILLISECONDS));
+        circuitBreaker.recordSuccess();
+        assertTrue(secondCallerPassed.await(2, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        secondCaller.join();
+    }
+
+    @Test
+    public void testCancelledTrialKeepsTheBreakerHalfOpen() {
+        // Given - a half-open breaker whose trial call is cancelled
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0.5, 50);
+        circuitBreaker.recordFailure();
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1, circuitBreaker, null);
+
+        // When
+        assertThrows(RequestCancelledException.class, () -> retryPolicy.execute(() -> {
+            throw new RequestCancelledException("API request cancelled");
+        }));
+
+        // Then - the next caller gets the trial, and only its outcome closes the breaker
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTimeoutPreemptively(Duration.ofSeconds(2), circuitBreaker::acquirePermission);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getTimesOpened());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() throws Exception {
+        // Given
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0.5, 50);
+        circuitBreaker.recordFailure();
+        circuitBreaker.acquirePermission();
+
+        // When
+        circuitBreaker.recordFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getTimesOpened());
+    }
+}
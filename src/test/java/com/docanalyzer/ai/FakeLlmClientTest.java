@@ -0,0 +1,163 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.metrics.MetricsManager;
+import com.docanalyzer.metrics.MetricsValidator;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for FakeLlmClient.
+ */
+public class FakeLlmClientTest {
+
+    private MetricsManager metricsManager;
+    private Configuration config;
+    private List<Method> methods;
+
+    @BeforeEach
+    public void setUp() {
+        metricsManager = new MetricsManager();
+        metricsManager.loadMetricsFromFile("src/main/resources/metrics-definitions.json");
+        config = Configuration.getDefaultConfiguration();
+        config.setLlmProvider(LlmClient.PROVIDER_FAKE);
+        config.setFakeLatencyMs(0);
+        config.setFakeOutputTokensPerSecond(0);
+        methods = List.of(createMethod("first"), createMethod("second"), createMethod("third"));
+    }
+
+    @Test
+    public void testCreatesTheConfiguredProvider() {
+        // When
+        try (LlmClient client = LlmClient.create(config)) {
+            // Then
+            assertInstanceOf(FakeLlmClient.class, client);
+        }
+
+        // Given
+        config.setLlmProvider("other");
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> LlmClient.create(config));
+    }
+
+    @Test
+    public void testTextEvaluationsCanBeParsed() throws IOException {
+        // Given
+        Prompt prompt = new PromptGenerator(metricsManager).generateBatchPrompt(methods, "Guidelines");
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new FakeLlmClient(config)) {
+            response = client.sendMessage(prompt);
+        }
+
+        // Then
+        Map<Integer, MetricsResult> results = new ResponseParser(new MetricsValidator(metricsManager))
+                .parseBatchResponse(response.getText(), methods.size());
+        assertEquals(3, results.size());
+        results.values().forEach(result -> assertEquals(metricsManager.getAllMetrics().size(), result.getMetricResults().size()));
+        assertEquals("end_turn", response.getStopReason());
+        assertTrue(response.getInputTokens() > 0);
+        assertTrue(response.getOutputTokens() > 0);
+    }
+
+    @Test
+    public void testStreamedToolEvaluationsCanBeParsed() throws IOException {
+        // Given
+        Prompt prompt = new PromptGenerator(metricsManager, true).generateBatchPrompt(methods, "Guidelines");
+        Map<Integer, MetricsResult> results = new LinkedHashMap<>();
+        StructuredResponseParser parser = new StructuredResponseParser(new MetricsValidator(metricsManager), results::put);
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new FakeLlmClient(config)) {
+            response = client.streamMessage(prompt, parser::append);
+        }
+        parser.finish();
+
+        // Then
+        assertEquals(List.of(1, 2, 3), List.copyOf(results.keySet()));
+        assertTrue(parser.getFailedMethods().isEmpty());
+        assertEquals("tool_use", response.getStopReason());
+        assertNotNull(response.getToolInput());
+    }
+
+    @Test
+    public void testLongResponsesAreTruncated() throws IOException {
+        // Given
+        config.setMaxTokens(100);
+        Prompt prompt = new PromptGenerator(metricsManager).generateBatchPrompt(methods, "Guidelines");
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new FakeLlmClient(config)) {
+            response = client.sendMessage(prompt);
+        }
+
+        // Then
+        assertTrue(response.isTruncated());
+        assertEquals(100, response.getOutputTokens());
+    }
+
+    @Test
+    public void testConfiguredFailuresAreThrown() {
+        // Given
+        Prompt prompt = new PromptGenerator(metricsManager).generateBatchPrompt(methods, "Guidelines");
+        config.setFakeThrottleRate(1.0);
+
+        // When
+        ApiException throttled = assertThrows(ApiException.class, () -> new FakeLlmClient(config).sendMessage(prompt));
+
+        // Then
+        assertTrue(throttled.isRateLimited());
+        assertTrue(throttled.getRetryAfterMs() > 0);
+
+        // Given
+        config.setFakeThrottleRate(0.0);
+        config.setFakeErrorRate(1.0);
+
+        // When
+        ApiException overloaded = assertThrows(ApiException.class, () -> new FakeLlmClient(config).sendMessage(prompt));
+
+        // Then
+        assertEquals(529, overloaded.getStatusCode());
+    }
+
+    @Test
+    public void testLatencyIsSimulated() throws IOException {
+        // Given
+        config.setFakeLatencyMs(50);
+        config.setFakeLatencySigma(0.0);
+        Prompt prompt = new PromptGenerator(metricsManager).generateBatchPrompt(methods, "Guidelines");
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new FakeLlmClient(config)) {
+            response = client.sendMessage(prompt);
+        }
+
+        // Then
+        assertTrue(response.getLatencyMs() >= 50, "latency " + response.getLatencyMs());
+    }
+
+    private static Method createMethod(String name) {
+        return Method.builder()
+                .name(name)
+                .className("Example")
+                .packageName("com.example")
+                .filePath("Example.java")
+                .signature("public int " + name + "(String value)")
+                .body("{ return value.length(); }")
+                .build();
+    }
+}
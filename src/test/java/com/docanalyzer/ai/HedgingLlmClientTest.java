@@ -0,0 +1,386 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.RunStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for HedgingLlmClient, hedging the requests of a scripted client.
+ */
+public class HedgingLlmClientTest {
+
+    private static final Prompt PROMPT = Prompt.of("METHOD 1: first");
+
+    private Configuration config;
+    private RunStatistics runStatistics;
+    private ScriptedClient delegate;
+
+    @BeforeEach
+    public void setUp() {
+        config = Configuration.getDefaultConfiguration();
+        config.setHedgeEnabled(true);
+        config.setHedgeLatencyPercentile(0.5);
+        config.setHedgeMaxRatio(0.5);
+        config.setHedgeMinSamples(2);
+        runStatistics = new RunStatistics();
+        delegate = new ScriptedClient();
+    }
+
+    @Test
+    public void testSlowRequestIsHedgedAndCancelled() throws IOException {
+        // Given - two requests set the hedge delay to 20 ms, then the original request hangs
+        CountDownLatch primaryCancelled = new CountDownLatch(1);
+        delegate.answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> {
+                    cancellation.onCancel(primaryCancelled::countDown);
+                    return awaitCancellation(primaryCancelled);
+                })
+                .answer((consumer, cancellation) -> response("hedge"));
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.sendMessage(PROMPT);
+            client.sendMessage(PROMPT);
+            response = client.sendMessage(PROMPT);
+        }
+
+        // Then
+        assertEquals("hedge", response.getText());
+        assertEquals(0, primaryCancelled.getCount());
+        assertEquals(4, delegate.calls.get());
+        assertEquals(1, runStatistics.getHedgedRequests());
+        assertEquals(1, runStatistics.getHedgeWins());
+    }
+
+    @Test
+    public void testHedgeGetsAConnectionWhileTheOnlyBatchConnectionIsStalled() throws IOException {
+        // Given - one batch in flight, whose request stalls after two requests set the hedge delay
+        CountDownLatch release = new CountDownLatch(1);
+        StubAnthropicServer server = new StubAnthropicServer();
+        server.enqueue(request -> {
+                    sleep(20);
+                    return StubAnthropicServer.message("fast");
+                })
+                .enqueue(request -> {
+                    sleep(20);
+                    return StubAnthropicServer.message("fast");
+                })
+                .enqueue(request -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return StubAnthropicServer.message("too late");
+                })
+                .enqueue(StubAnthropicServer.message("hedge"));
+        Configuration serverConfig = server.configuration();
+        serverConfig.setBatchMaxInflight(1);
+        serverConfig.setHedgeEnabled(true);
+        serverConfig.setHedgeLatencyPercentile(0.5);
+        serverConfig.setHedgeMaxRatio(0.5);
+        serverConfig.setHedgeMinSamples(2);
+
+        // When
+        long startNanos;
+        ApiResponse response;
+        try (LlmClient client = new HedgingLlmClient(new AnthropicClient(serverConfig), serverConfig, runStatistics)) {
+            client.sendMessage(PROMPT);
+            client.sendMessage(PROMPT);
+            startNanos = System.nanoTime();
+            response = client.sendMessage(PROMPT);
+        } finally {
+            release.countDown();
+            server.close();
+        }
+
+        // Then - the hedge is sent without waiting for the stalled request's connection
+        assertEquals("hedge", response.getText());
+        assertTrue((System.nanoTime() - startNanos) / 1_000_000 < 3000);
+        assertEquals(4, server.getRequests().size());
+        assertEquals(1, runStatistics.getHedgeWins());
+    }
+
+    @Test
+    public void testHedgesAreCappedAtTheirShareOfRequests() throws IOException {
+        // Given
+        config.setHedgeMaxRatio(0.0);
+        delegate.answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> {
+                    sleep(100);
+                    return response("slow");
+                });
+
+        // When
+        ApiResponse response;
+        try (LlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.sendMessage(PROMPT);
+            client.sendMessage(PROMPT);
+            response = client.sendMessage(PROMPT);
+        }
+
+        // Then - the slow request is waited for instead
+        assertEquals("slow", response.getText());
+        assertEquals(3, delegate.calls.get());
+        assertEquals(0, runStatistics.getHedgedRequests());
+    }
+
+    @Test
+    public void testHedgeRefusedByTheSenderIsNotSent() throws IOException {
+        // Given - the sender lets the original requests through but no hedge
+        AtomicInteger refusedHedges = new AtomicInteger();
+        HedgingLlmClient.AttemptSender sender = new HedgingLlmClient.AttemptSender() {
+            @Override
+            public ApiResponse send(RequestScheduler.ApiCall call) throws IOException {
+                return call.call();
+            }
+
+            @Override
+            public ApiResponse sendHedge(RequestScheduler.ApiCall call) {
+                refusedHedges.incrementAndGet();
+                return null;
+            }
+        };
+        delegate.answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("slow", 100));
+
+        // When
+        ApiResponse response;
+        try (HedgingLlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.sendMessage(PROMPT, sender);
+            client.sendMessage(PROMPT, sender);
+            response = client.sendMessage(PROMPT, sender);
+        }
+
+        // Then
+        assertEquals("slow", response.getText());
+        assertEquals(1, refusedHedges.get());
+        assertEquals(3, delegate.calls.get());
+        assertEquals(0, runStatistics.getHedgedRequests());
+    }
+
+    @Test
+    public void testTimeQueuedBeforeSendingIsNotLatency() throws IOException {
+        // Given - the sender holds every original request back for 300 ms, the API answers in 20 ms
+        HedgingLlmClient.AttemptSender sender = new HedgingLlmClient.AttemptSender() {
+            @Override
+            public ApiResponse send(RequestScheduler.ApiCall call) throws IOException {
+                sleep(300);
+                return call.call();
+            }
+
+            @Override
+            public ApiResponse sendHedge(RequestScheduler.ApiCall call) throws IOException {
+                return call.call();
+            }
+        };
+        delegate.answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("hedge"));
+
+        // When
+        ApiResponse response;
+        try (HedgingLlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.sendMessage(PROMPT, sender);
+            client.sendMessage(PROMPT, sender);
+            response = client.sendMessage(PROMPT, sender);
+        }
+
+        // Then - the hedge delay is the latency of the API, so the queued request is hedged
+        assertEquals("hedge", response.getText());
+        assertEquals(1, runStatistics.getHedgedRequests());
+        assertEquals(3, delegate.calls.get());
+    }
+
+    @Test
+    public void testLatenciesOfBothAttemptsAreRecordedFromTheOriginalRequest() throws Exception {
+        // Given - two requests set the hedge delay to 50 ms, then the original request answers
+        // after 300 ms although it is cancelled, and the hedge right away
+        delegate.answer((consumer, cancellation) -> response("fast", 50))
+                .answer((consumer, cancellation) -> response("fast", 50))
+                .answer((consumer, cancellation) -> response("slow", 300))
+                .answer((consumer, cancellation) -> response("hedge"));
+
+        // When
+        ApiResponse response;
+        try (HedgingLlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.sendMessage(PROMPT);
+            client.sendMessage(PROMPT);
+            response = client.sendMessage(PROMPT);
+            client.awaitAttempts();
+
+            // Then - the hedge took as long as the request waited for it, the original request is not left out
+            assertEquals("hedge", response.getText());
+            assertTrue(client.responseLatencyPercentile(0) >= 40);
+            assertTrue(client.responseLatencyPercentile(1) >= 300);
+        }
+    }
+
+    @Test
+    public void testOnlyTheFirstStreamToAnswerIsConsumed() throws IOException {
+        // Given - the original stream starts answering after the hedge did
+        CountDownLatch hedgeStarted = new CountDownLatch(1);
+        delegate.answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> response("fast", 20))
+                .answer((consumer, cancellation) -> {
+                    hedgeStarted.await(5, TimeUnit.SECONDS);
+                    sleep(50);
+                    return stream(consumer, "primary");
+                })
+                .answer((consumer, cancellation) -> {
+                    hedgeStarted.countDown();
+                    return stream(consumer, "hedge");
+                });
+
+        // When
+        StringBuilder streamed = new StringBuilder();
+        ApiResponse response;
+        try (LlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            client.streamMessage(PROMPT, text -> { });
+            client.streamMessage(PROMPT, text -> { });
+            response = client.streamMessage(PROMPT, streamed::append);
+        }
+
+        // Then
+        assertEquals("hedge", response.getText());
+        assertEquals("hedge", streamed.toString());
+        assertEquals(1, runStatistics.getHedgeWins());
+    }
+
+    @Test
+    public void testFailureBeforeTheHedgeDelayIsNotHedged() {
+        // Given - no latencies have been observed yet
+        delegate.answer((consumer, cancellation) -> {
+            throw new ApiException(529, 0, "Overloaded");
+        });
+
+        // When
+        try (LlmClient client = new HedgingLlmClient(delegate, config, runStatistics)) {
+            ApiException e = assertThrows(ApiException.class, () -> client.sendMessage(PROMPT));
+
+            // Then
+            assertEquals(529, e.getStatusCode());
+        }
+        assertEquals(1, delegate.calls.get());
+        assertEquals(0, runStatistics.getHedgedRequests());
+    }
+
+    @Test
+    public void testPercentileOfTheLatencyWindow() {
+        // Given
+        HedgingLlmClient.LatencyWindow window = new HedgingLlmClient.LatencyWindow(4);
+        for (long latencyMs : new long[] {400, 100, 300, 200, 500}) {
+            window.record(latencyMs);
+        }
+
+        // When / Then - the oldest latency has been replaced
+        assertEquals(200, window.percentile(0.5, 4));
+        assertEquals(500, window.percentile(0.95, 4));
+        assertEquals(-1, window.percentile(0.5, 5));
+    }
+
+    private static ApiResponse response(String text) {
+        return ApiResponse.builder().text(text).stopReason("end_turn").build();
+    }
+
+    private static ApiResponse response(String text, long latencyMs) {
+        sleep(latencyMs);
+        return response(text);
+    }
+
+    private static ApiResponse stream(Consumer<String> consumer, String text) {
+        consumer.accept(text);
+        return response(text);
+    }
+
+    private static ApiResponse awaitCancellation(CountDownLatch cancelled) throws IOException {
+        try {
+            cancelled.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new RequestCancelledException("API request cancelled");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Answers a call of the scripted client.
+     */
+    @FunctionalInterface
+    private interface Answer {
+        ApiResponse answer(Consumer<String> textConsumer, CancellationToken cancellation) throws Exception;
+    }
+
+    /**
+     * A client that answers its calls with the scripted answers, in order.
+     */
+    private static class ScriptedClient implements LlmClient {
+
+        private final Deque<Answer> answers = new ArrayDeque<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        ScriptedClient answer(Answer answer) {
+            answers.add(answer);
+            return this;
+        }
+
+        @Override
+        public ApiResponse sendMessage(Prompt prompt) throws IOException {
+            return sendMessage(prompt, new CancellationToken());
+        }
+
+        @Override
+        public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer) throws IOException {
+            return streamMessage(prompt, textConsumer, new CancellationToken());
+        }
+
+        @Override
+        public ApiResponse sendMessage(Prompt prompt, CancellationToken cancellation) throws IOException {
+            return streamMessage(prompt, text -> { }, cancellation);
+        }
+
+        @Override
+        public ApiResponse streamMessage(Prompt prompt, Consumer<String> textConsumer, CancellationToken cancellation)
+                throws IOException {
+            Answer answer;
+            synchronized (this) {
+                calls.incrementAndGet();
+                answer = answers.poll();
+            }
+            try {
+                return answer.answer(textConsumer, cancellation);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for IncrementalResponseParser.
+ */
+public class IncrementalResponseParserTest {
+
+    private ResponseParser responseParser;
+    private String apiResponse;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        responseParser = new ResponseParser();
+        apiResponse = Files.readString(Paths.get("src/test/resources/api-response.txt"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStreamedResultsMatchBatchParsing() {
+        for (int chunkSize : new int[] {1, 7, 64, apiResponse.length()}) {
+            // Given
+            Map<Integer, MetricsResult> streamed = new HashMap<>();
+            IncrementalResponseParser parser = new IncrementalResponseParser(responseParser, streamed::put);
+
+            // When
+            for (int i = 0; i < apiResponse.length(); i += chunkSize) {
+                parser.append(apiResponse.substring(i, Math.min(apiResponse.length(), i + chunkSize)));
+            }
+            parser.finish();
+
+            // Then
+            assertEquals(responseParser.parseBatchResponse(apiResponse, 5), streamed, "chunk size " + chunkSize);
+            assertEquals(5, parser.getResultCount());
+        }
+    }
+
+    @Test
+    public void testResultIsEmittedOnceTheNextMethodStarts() {
+        // Given
+        List<Integer> emitted = new ArrayList<>();
+        IncrementalResponseParser parser = new IncrementalResponseParser(responseParser, (index, result) -> emitted.add(index));
+        int secondHeader = apiResponse.indexOf("METHOD 2");
+        int secondHeaderEnd = apiResponse.indexOf("EVALUATION:", secondHeader) + "EVALUATION:".length();
+
+        // When - everything up to the middle of the second header
+        parser.append(apiResponse.substring(0, secondHeader + 5));
+        assertTrue(emitted.isEmpty());
+        parser.append(apiResponse.substring(secondHeader + 5, secondHeaderEnd));
+
+        // Then
+        assertEquals(List.of(1), emitted);
+    }
+
+    @Test
+    public void testResetDiscardsPartialResponse() {
+        // Given
+        Map<Integer, MetricsResult> streamed = new HashMap<>();
+        IncrementalResponseParser parser = new IncrementalResponseParser(responseParser, streamed::put);
+        parser.append(apiResponse.substring(0, apiResponse.indexOf("METHOD 2")));
+
+        // When - the request is retried from the start
+        parser.reset();
+        parser.append(apiResponse);
+        parser.finish();
+
+        // Then
+        assertEquals(5, streamed.size());
+    }
+}
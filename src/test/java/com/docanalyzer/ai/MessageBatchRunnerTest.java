@@ -0,0 +1,212 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.model.RunStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for MessageBatchRunner.
+ */
+public class MessageBatchRunnerTest {
+
+    private StubAnthropicServer server;
+    private AnthropicClient client;
+    private RetryPolicy retryPolicy;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        client = new AnthropicClient(server.configuration());
+        retryPolicy = new RetryPolicy(3, 1, 5, null, new RunStatistics());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testResultsAreMappedByCustomId() throws IOException {
+        // Given - the stub answers every prompt with its own user text
+        server.enableMessageBatches(2, params -> "evaluated " + params.path("messages").get(0).path("content").asText());
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        prompts.put("batch-0", new Prompt("shared", "first"));
+        prompts.put("batch-1", new Prompt("shared", "second"));
+        prompts.put("batch-2", new Prompt("shared", "third"));
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 100, 1, 5);
+
+        // When
+        Map<String, String> results = new HashMap<>();
+        runner.run(prompts, result -> results.put(result.getCustomId(), result.getMessage().getText()));
+
+        // Then - one submit, two in-progress polls and one ended poll, then the results file
+        assertEquals(Map.of("batch-0", "evaluated first", "batch-1", "evaluated second", "batch-2", "evaluated third"), results);
+        List<String> calls = server.getRequests().stream().map(r -> r.method() + " " + r.path()).toList();
+        assertEquals(List.of(
+                "POST /v1/messages/batches",
+                "GET /v1/messages/batches/msgbatch_1",
+                "GET /v1/messages/batches/msgbatch_1",
+                "GET /v1/messages/batches/msgbatch_1/results"), calls);
+    }
+
+    @Test
+    public void testLargeRunsAreSplitIntoSeveralJobs() throws IOException {
+        // Given
+        server.enableMessageBatches(0, params -> "evaluated");
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            prompts.put("batch-" + i, Prompt.of("methods " + i));
+        }
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 2, 1, 5);
+
+        // When
+        Map<String, String> results = new HashMap<>();
+        runner.run(prompts, result -> results.put(result.getCustomId(), result.getType()));
+
+        // Then - all jobs are submitted before the first is polled
+        assertEquals(5, results.size());
+        assertTrue(results.values().stream().allMatch(MessageBatchResult.TYPE_SUCCEEDED::equals));
+        List<String> calls = server.getRequests().stream().map(r -> r.method() + " " + r.path()).toList();
+        assertEquals(List.of("POST /v1/messages/batches", "POST /v1/messages/batches", "POST /v1/messages/batches"),
+                calls.subList(0, 3));
+        assertEquals(6, calls.size());
+    }
+
+    @Test
+    public void testSubmitIsNotSentAgainAfterAServerError() {
+        // Given - the API may have created the job before failing
+        server.enableMessageBatches(0, params -> "evaluated")
+                .interceptMessageBatches(request -> new StubAnthropicServer.StubResponse(500, "{\"type\":\"error\"}"));
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 100, 1, 5);
+
+        // When
+        ApiException e = assertThrows(ApiException.class,
+                () -> runner.run(Map.of("batch-0", Prompt.of("methods")), result -> { }));
+
+        // Then
+        assertEquals(500, e.getStatusCode());
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void testSubmittedJobsAreCancelledWhenALaterSubmitFails() {
+        // Given - the second of three submits fails
+        AtomicInteger submits = new AtomicInteger();
+        server.enableMessageBatches(0, params -> "evaluated")
+                .interceptMessageBatches(request -> request.method().equals("POST") && request.path().equals("/v1/messages/batches")
+                        && submits.incrementAndGet() == 2
+                        ? new StubAnthropicServer.StubResponse(529, "{\"type\":\"error\"}") : null);
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            prompts.put("batch-" + i, Prompt.of("methods " + i));
+        }
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 2, 1, 5);
+
+        // When
+        assertThrows(ApiException.class, () -> runner.run(prompts, result -> { }));
+
+        // Then - the first job is cancelled and no other one submitted
+        List<String> calls = server.getRequests().stream().map(r -> r.method() + " " + r.path()).toList();
+        assertEquals(List.of(
+                "POST /v1/messages/batches",
+                "POST /v1/messages/batches",
+                "POST /v1/messages/batches/msgbatch_1/cancel"), calls);
+    }
+
+    @Test
+    public void testUnfinishedJobsAreCancelledWhenAPollFails() {
+        // Given - two jobs, and the status poll of the first is rejected
+        server.enableMessageBatches(2, params -> "evaluated")
+                .interceptMessageBatches(request -> request.method().equals("GET") && request.path().equals("/v1/messages/batches/msgbatch_1")
+                        ? new StubAnthropicServer.StubResponse(400, "{\"type\":\"error\"}") : null);
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            prompts.put("batch-" + i, Prompt.of("methods " + i));
+        }
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 2, 1, 5);
+
+        // When
+        assertThrows(ApiException.class, () -> runner.run(prompts, result -> { }));
+
+        // Then - both jobs are cancelled
+        List<String> calls = server.getRequests().stream().map(r -> r.method() + " " + r.path()).toList();
+        assertEquals(List.of(
+                "POST /v1/messages/batches",
+                "POST /v1/messages/batches",
+                "GET /v1/messages/batches/msgbatch_1",
+                "POST /v1/messages/batches/msgbatch_1/cancel",
+                "POST /v1/messages/batches/msgbatch_2/cancel"), calls);
+    }
+
+    @Test
+    public void testUnfinishedJobsAreCancelledWhenTheRunIsCancelled() {
+        // Given - the run is cancelled while the job is polled
+        server.enableMessageBatches(3, params -> "evaluated")
+                .interceptMessageBatches(request -> {
+                    if (request.method().equals("GET")) {
+                        client.cancelAll();
+                    }
+                    return null;
+                });
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 100, 1, 5);
+
+        // When
+        assertThrows(RequestCancelledException.class, () -> runner.run(Map.of("batch-0", Prompt.of("methods")), result -> { }));
+
+        // Then - the job is cancelled although the client refuses any other request
+        List<String> calls = server.getRequests().stream().map(r -> r.method() + " " + r.path()).toList();
+        assertEquals("POST /v1/messages/batches/msgbatch_1/cancel", calls.get(calls.size() - 1));
+    }
+
+    @Test
+    public void testResultsOfARetriedDownloadAreHandedOverOnce() throws IOException {
+        // Given - the first download breaks off after one result
+        AtomicInteger downloads = new AtomicInteger();
+        String firstResult = "{\"custom_id\":\"batch-2\",\"result\":{\"type\":\"succeeded\",\"message\":"
+                + StubAnthropicServer.message("evaluated").body + "}}\n";
+        server.enableMessageBatches(0, params -> "evaluated")
+                .interceptMessageBatches(request -> request.path().endsWith("/results") && downloads.incrementAndGet() == 1
+                        ? new StubAnthropicServer.StubResponse(200, firstResult + "{\"custom_id\":") : null);
+        Map<String, Prompt> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            prompts.put("batch-" + i, Prompt.of("methods " + i));
+        }
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 100, 1, 5);
+
+        // When
+        List<String> delivered = new ArrayList<>();
+        runner.run(prompts, result -> delivered.add(result.getCustomId()));
+
+        // Then
+        assertEquals(2, downloads.get());
+        assertEquals(List.of("batch-2", "batch-1", "batch-0"), delivered);
+    }
+
+    @Test
+    public void testRequestParametersAreSubmitted() throws IOException {
+        // Given
+        server.enableMessageBatches(0, params -> "evaluated");
+        MessageBatchRunner runner = new MessageBatchRunner(client, retryPolicy, 100, 1, 5);
+
+        // When
+        runner.run(Map.of("batch-0", new Prompt("shared", "methods")), result -> { });
+
+        // Then
+        String body = server.getRequests().get(0).body();
+        assertTrue(body.contains("\"custom_id\":\"batch-0\""));
+        assertTrue(body.contains("\"cache_control\":{\"type\":\"ephemeral\"}"));
+        assertTrue(body.contains("\"max_tokens\":4096"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.metrics.MetricsManager;
+import com.docanalyzer.model.Method;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for prompt caching of the shared prompt prefix.
+ */
+public class PromptCachingTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StubAnthropicServer server;
+    private PromptGenerator promptGenerator;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        MetricsManager metricsManager = new MetricsManager();
+        metricsManager.loadMetricsFromFile("src/main/resources/metrics-definitions.json");
+        promptGenerator = new PromptGenerator(metricsManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testSystemPartDoesNotDependOnBatch() {
+        // When
+        Prompt first = promptGenerator.generateBatchPrompt(List.of(createMethod("first")), "Be concise.");
+        Prompt second = promptGenerator.generateBatchPrompt(List.of(createMethod("second"), createMethod("third")), "Be concise.");
+
+        // Then
+        assertEquals(first.getSystem(), second.getSystem());
+        assertTrue(first.getSystem().contains("Be concise."));
+        assertFalse(first.getSystem().contains("first"));
+        assertTrue(first.getUser().contains("first"));
+        assertTrue(second.getUser().contains("Evaluate all 2 methods"));
+    }
+
+    @Test
+    public void testSystemBlockIsMarkedForCaching() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(200, "{\"type\":\"message\","
+                + "\"content\":[{\"type\":\"text\",\"text\":\"evaluated\"}],"
+                + "\"usage\":{\"input_tokens\":40,\"output_tokens\":30,"
+                + "\"cache_creation_input_tokens\":0,\"cache_read_input_tokens\":2000}}"));
+
+        // When
+        ApiResponse response;
+        try (AnthropicClient client = new AnthropicClient(server.configuration())) {
+            response = client.sendMessage(new Prompt("shared instructions", "batch"));
+        }
+
+        // Then
+        JsonNode body = objectMapper.readTree(server.getRequests().get(0).body());
+        JsonNode systemBlock = body.path("system").get(0);
+        assertEquals("shared instructions", systemBlock.path("text").asText());
+        assertEquals("ephemeral", systemBlock.path("cache_control").path("type").asText());
+        assertEquals("batch", body.path("messages").get(0).path("content").asText());
+
+        assertEquals(40, response.getInputTokens());
+        assertEquals(2000, response.getCacheReadInputTokens());
+        assertEquals(0, response.getCacheCreationInputTokens());
+    }
+
+    @Test
+    public void testCachingCanBeDisabled() throws IOException {
+        // Given
+        server.enqueue(StubAnthropicServer.message("evaluated"));
+        var config = server.configuration();
+        config.setPromptCacheEnabled(false);
+
+        // When
+        try (AnthropicClient client = new AnthropicClient(config)) {
+            client.sendMessage(new Prompt("shared instructions", "batch"));
+        }
+
+        // Then
+        JsonNode systemBlock = objectMapper.readTree(server.getRequests().get(0).body()).path("system").get(0);
+        assertEquals("shared instructions", systemBlock.path("text").asText());
+        assertTrue(systemBlock.path("cache_control").isMissingNode());
+    }
+
+    private Method createMethod(String name) {
+        return Method.builder()
+                .name(name)
+                .className("Example")
+                .packageName("com.example")
+                .signature("void " + name + "()")
+                .body("{ }")
+                .build();
+    }
+}
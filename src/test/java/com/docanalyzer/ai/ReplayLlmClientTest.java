@@ -0,0 +1,151 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ReplayLlmClient, replaying recordings made by RecordingLlmClient.
+ */
+public class ReplayLlmClientTest {
+
+    private static final String EVALUATION = "METHOD 1 [first] EVALUATION:\nCompleteness: 4\nJustification: Complete.\n";
+
+    @TempDir
+    Path tempDir;
+
+    private StubAnthropicServer server;
+    private Configuration config;
+    private Path recording;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        config = server.configuration();
+        recording = tempDir.resolve("exchanges.jsonl");
+    }
+
+    @Test
+    public void testRecordedExchangesAreReplayed() throws IOException {
+        // Given
+        Prompt first = new Prompt("System", "METHOD 1: first");
+        Prompt second = new Prompt("System", "METHOD 1: second");
+        server.enqueue(StubAnthropicServer.message(EVALUATION))
+                .enqueue(StubAnthropicServer.stream("METHOD 1 [second] EVALUATION:\nCompleteness: 2\n", 20));
+        config.setLlmRecordPath(recording.toString());
+        try (LlmClient client = LlmClient.create(config)) {
+            client.sendMessage(first);
+            client.streamMessage(second, text -> { });
+        } finally {
+            server.close();
+        }
+        config.setLlmProvider(LlmClient.PROVIDER_REPLAY);
+        config.setLlmReplayPath(recording.toString());
+        config.setLlmReplayTiming(false);
+
+        // When
+        ApiResponse replayedFirst;
+        StringBuilder streamed = new StringBuilder();
+        ApiResponse replayedSecond;
+        try (LlmClient client = LlmClient.create(config)) {
+            replayedFirst = client.sendMessage(first);
+            replayedSecond = client.streamMessage(second, streamed::append);
+        }
+
+        // Then
+        assertEquals(2, Files.readAllLines(recording).size());
+        assertEquals(EVALUATION, replayedFirst.getText());
+        assertTrue(replayedFirst.getInputTokens() > 0);
+        assertEquals("METHOD 1 [second] EVALUATION:\nCompleteness: 2\n", streamed.toString());
+        assertEquals(50, replayedSecond.getOutputTokens());
+        assertEquals(900, replayedSecond.getCacheReadInputTokens());
+    }
+
+    @Test
+    public void testPromptHashIsTheHashOfTheFullText() throws NoSuchAlgorithmException {
+        // Given - recordings made from the full text stay replayable
+        ObjectNode tool = new ObjectMapper().createObjectNode().put("name", "record_evaluations");
+        Prompt[] prompts = {Prompt.of("METHOD 1: first"), new Prompt("System", "METHOD 1: first"),
+                new Prompt("System", "METHOD 1: first", tool)};
+
+        for (Prompt prompt : prompts) {
+            // When
+            String hash = prompt.hash();
+
+            // Then
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            assertEquals(HexFormat.of().formatHex(digest.digest(prompt.getText().getBytes(StandardCharsets.UTF_8))), hash);
+        }
+    }
+
+    @Test
+    public void testRepeatedPromptsGetTheirResponsesInOrder() throws IOException {
+        // Given
+        Prompt prompt = Prompt.of("METHOD 1: first");
+        server.enqueue(StubAnthropicServer.message("first answer"))
+                .enqueue(StubAnthropicServer.message("second answer"));
+        try (LlmClient client = new RecordingLlmClient(new AnthropicClient(config), recording)) {
+            client.sendMessage(prompt);
+            client.sendMessage(prompt);
+        } finally {
+            server.close();
+        }
+
+        // When
+        try (LlmClient client = new ReplayLlmClient(recording, false)) {
+            // Then - the last response is served again once the recorded ones are used up
+            assertEquals("first answer", client.sendMessage(prompt).getText());
+            assertEquals("second answer", client.sendMessage(prompt).getText());
+            assertEquals("second answer", client.sendMessage(prompt).getText());
+        }
+    }
+
+    @Test
+    public void testUnrecordedPromptsAreRejected() throws IOException {
+        // Given
+        server.close();
+        Files.writeString(recording, "");
+
+        // When
+        try (LlmClient client = new ReplayLlmClient(recording, false)) {
+            ApiException e = assertThrows(ApiException.class, () -> client.sendMessage(Prompt.of("unknown")));
+
+            // Then
+            assertFalse(new RetryPolicy(config, null, null).isRetryable(e));
+        }
+    }
+
+    @Test
+    public void testRecordedLatencyIsReproduced() throws IOException {
+        // Given
+        server.close();
+        Prompt prompt = Prompt.of("METHOD 1: first");
+        Files.writeString(recording, "{\"promptHash\":\"" + prompt.hash() + "\",\"response\":{\"text\":\"answer\"},"
+                + "\"latencyMs\":60,\"usage\":{\"inputTokens\":10,\"outputTokens\":2}}\n{\"promptHash\":");
+
+        // When
+        long startNanos = System.nanoTime();
+        ApiResponse response;
+        try (LlmClient client = new ReplayLlmClient(recording, true)) {
+            response = client.sendMessage(prompt);
+        }
+
+        // Then - the partial last line is skipped
+        assertTrue((System.nanoTime() - startNanos) / 1_000_000 >= 60);
+        assertEquals("answer", response.getText());
+        assertEquals(60, response.getLatencyMs());
+    }
+}
@@ -0,0 +1,150 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.model.RunStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for RequestScheduler, against a local stub of the Anthropic API.
+ */
+public class RequestSchedulerTest {
+
+    private StubAnthropicServer server;
+    private AnthropicClient client;
+    private RunStatistics runStatistics;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        client = new AnthropicClient(server.configuration());
+        runStatistics = new RunStatistics();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testRateLimitedRequestIsQueuedAfterRetryAfter() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(429, "{\"type\":\"error\"}").header("retry-after", "1"))
+                .enqueue(StubAnthropicServer.message("evaluated"));
+        RequestScheduler scheduler = new RequestScheduler(0, 0, 0, 3, runStatistics);
+
+        // When
+        ApiResponse response = scheduler.execute(100, 1000, () -> client.sendMessage("prompt"));
+
+        // Then
+        assertEquals("evaluated", response.getText());
+        assertEquals(1, runStatistics.getRateLimitedRequests());
+        List<StubAnthropicServer.RecordedRequest> requests = server.getRequests();
+        assertEquals(2, requests.size());
+        long pauseMs = TimeUnit.NANOSECONDS.toMillis(requests.get(1).receivedAtNanos() - requests.get(0).receivedAtNanos());
+        assertTrue(pauseMs >= 900, "second attempt came after " + pauseMs + " ms");
+    }
+
+    @Test
+    public void testRateLimitedRequestFailsAfterMaxRetries() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(429, "{}").header("retry-after", "0"))
+                .enqueue(new StubAnthropicServer.StubResponse(429, "{}").header("retry-after", "0"));
+        RequestScheduler scheduler = new RequestScheduler(0, 0, 0, 1, runStatistics);
+
+        // When
+        ApiException e = assertThrows(ApiException.class,
+                () -> scheduler.execute(100, 1000, () -> client.sendMessage("prompt")));
+
+        // Then
+        assertTrue(e.isRateLimited());
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    public void testRateLimitedRequestsReturnTheirReservedTokens() {
+        // Given - every attempt is rate-limited
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new StubAnthropicServer.StubResponse(429, "{}").header("retry-after", "0"));
+        }
+        RequestScheduler scheduler = new RequestScheduler(0, 10_000, 4_000, 2, runStatistics);
+
+        // When
+        assertThrows(ApiException.class, () -> scheduler.execute(3_000, 1_000, () -> client.sendMessage("prompt")));
+
+        // Then - the buckets are as full as before
+        assertEquals(3, server.getRequests().size());
+        assertEquals(10_000, scheduler.availableInputTokens(), 1);
+        assertEquals(4_000, scheduler.availableOutputTokens(), 1);
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRetried() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(400, "{\"type\":\"error\"}"));
+        RequestScheduler scheduler = new RequestScheduler(0, 0, 0, 3, runStatistics);
+
+        // When
+        ApiException e = assertThrows(ApiException.class,
+                () -> scheduler.execute(100, 1000, () -> client.sendMessage("prompt")));
+
+        // Then
+        assertEquals(400, e.getStatusCode());
+        assertEquals(1, server.getRequests().size());
+        assertEquals(0, runStatistics.getRateLimitedRequests());
+    }
+
+    @Test
+    public void testExhaustedLimitPausesUntilReset() throws IOException {
+        // Given
+        server.enqueue(StubAnthropicServer.message("first")
+                        .header("anthropic-ratelimit-requests-remaining", "0")
+                        .header("anthropic-ratelimit-requests-reset", Instant.now().plusSeconds(1).toString()))
+                .enqueue(StubAnthropicServer.message("second"));
+        RequestScheduler scheduler = new RequestScheduler(0, 0, 0, 3, runStatistics);
+
+        // When
+        ApiResponse first = scheduler.execute(100, 1000, () -> client.sendMessage("prompt"));
+        long start = System.nanoTime();
+        ApiResponse second = scheduler.execute(100, 1000, () -> client.sendMessage("prompt"));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertEquals(0L, first.getRequestsRemaining());
+        assertEquals("second", second.getText());
+        assertTrue(waitedMs >= 500, "second request waited " + waitedMs + " ms");
+    }
+
+    @Test
+    public void testTokenBucket() {
+        // Given a budget of 60 per minute, i.e. one per second
+        long second = TimeUnit.SECONDS.toNanos(1);
+        TokenBucket bucket = new TokenBucket(60, 0);
+
+        // When / Then
+        assertEquals(0, bucket.waitNanos(60, 0));
+        bucket.take(60, 0);
+        assertEquals(2 * second, bucket.waitNanos(2, 0));
+        assertEquals(second, bucket.waitNanos(2, second));
+
+        // Unused reservations are returned, but never above capacity
+        bucket.take(-100, second);
+        assertEquals(60.0, bucket.available(second));
+
+        // Oversized requests wait for a full bucket rather than forever
+        bucket.take(60, second);
+        assertEquals(60 * second, bucket.waitNanos(1000, second));
+
+        // The server-reported remaining budget caps the bucket
+        bucket.limitTo(5, 61 * second);
+        assertEquals(5.0, bucket.available(61 * second));
+    }
+}
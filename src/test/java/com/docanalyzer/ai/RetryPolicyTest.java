@@ -0,0 +1,171 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.model.RunStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for RetryPolicy.
+ */
+public class RetryPolicyTest {
+
+    private StubAnthropicServer server;
+    private AnthropicClient client;
+    private RunStatistics runStatistics;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        client = new AnthropicClient(server.configuration());
+        runStatistics = new RunStatistics();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testOverloadedResponseIsRetried() throws IOException {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(529, "{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\"}}"))
+                .enqueue(new StubAnthropicServer.StubResponse(503, "{}"))
+                .enqueue(StubAnthropicServer.message("evaluated"));
+        RetryPolicy retryPolicy = new RetryPolicy(4, 10, 50, null, runStatistics);
+
+        // When
+        ApiResponse response = retryPolicy.execute(() -> client.sendMessage("prompt"));
+
+        // Then
+        assertEquals("evaluated", response.getText());
+        assertEquals(3, server.getRequests().size());
+        assertEquals(2, runStatistics.getRetriedRequests());
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() {
+        // Given
+        server.enqueue(new StubAnthropicServer.StubResponse(400, "{\"type\":\"error\"}"));
+        RetryPolicy retryPolicy = new RetryPolicy(4, 10, 50, null, runStatistics);
+
+        // When
+        ApiException e = assertThrows(ApiException.class, () -> retryPolicy.execute(() -> client.sendMessage("prompt")));
+
+        // Then
+        assertEquals(400, e.getStatusCode());
+        assertEquals(1, server.getRequests().size());
+        assertEquals(0, runStatistics.getRetriedRequests());
+    }
+
+    @Test
+    public void testAttemptBudgetIsRespected() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, null, runStatistics);
+
+        // When
+        IOException e = assertThrows(IOException.class, () -> retryPolicy.execute(() -> {
+            attempts.incrementAndGet();
+            throw new IOException("Error sending request to Anthropic API", new SocketException("Connection reset"));
+        }));
+
+        // Then
+        assertEquals("Connection reset", e.getCause().getMessage());
+        assertEquals(3, attempts.get());
+        assertEquals(2, runStatistics.getRetriedRequests());
+    }
+
+    @Test
+    public void testIsRetryable() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 5, null, null);
+
+        assertTrue(retryPolicy.isRetryable(new ApiException(529, -1, "overloaded")));
+        assertTrue(retryPolicy.isRetryable(new ApiException(500, -1, "server error")));
+        assertTrue(retryPolicy.isRetryable(new ApiException(408, -1, "timeout")));
+        assertFalse(retryPolicy.isRetryable(new ApiException(401, -1, "unauthorized")));
+        assertFalse(retryPolicy.isRetryable(new ApiException(429, 1000, "rate limited")));
+        assertTrue(retryPolicy.isRetryable(new IOException("wrapped", new SocketTimeoutException("read timed out"))));
+        assertFalse(retryPolicy.isRetryable(new InterruptedIOException("interrupted")));
+        assertTrue(retryPolicy.isRetryable(new DeadlineExceededException(1000)));
+        assertFalse(retryPolicy.isRetryable(new RequestCancelledException("cancelled")));
+    }
+
+    @Test
+    public void testTimeoutsAreClassifiedAndCounted() {
+        // Given
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1, null, runStatistics);
+
+        // When
+        assertThrows(DeadlineExceededException.class, () -> retryPolicy.execute(() -> {
+            throw new DeadlineExceededException(1000);
+        }));
+
+        // Then
+        assertEquals(3, runStatistics.getTimedOutRequests());
+        assertEquals(2, runStatistics.getRetriedRequests());
+        assertTrue(RetryPolicy.isTimeout(new IOException("wrapped", new SocketTimeoutException("read timed out"))));
+        assertFalse(RetryPolicy.isTimeout(new IOException("Connection reset")));
+    }
+
+    @Test
+    public void testAbortedRequestsAreClassifiedByTheAbort() {
+        // Given - aborting a request fails it with a socket error, which the abort wraps
+        DeadlineExceededException deadlineExceeded = new DeadlineExceededException(1000);
+        deadlineExceeded.initCause(new SocketException("Socket closed"));
+        RequestCancelledException cancelled = new RequestCancelledException("API request cancelled");
+        cancelled.initCause(new SocketException("Socket closed"));
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1, null, runStatistics);
+
+        // When / Then
+        assertTrue(RetryPolicy.isTimeout(deadlineExceeded));
+        assertTrue(retryPolicy.isRetryable(deadlineExceeded));
+        assertFalse(RetryPolicy.isTimeout(cancelled));
+        assertFalse(retryPolicy.isRetryable(cancelled));
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, 100, 1000, null, null);
+        IOException error = new IOException("reset");
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(retryPolicy.backoffDelay(1, error) <= 100);
+            assertTrue(retryPolicy.backoffDelay(3, error) <= 400);
+            assertTrue(retryPolicy.backoffDelay(10, error) <= 1000);
+        }
+
+        // retry-after is a lower bound, capped by the maximum delay
+        assertEquals(800, retryPolicy.backoffDelay(1, new ApiException(529, 800, "overloaded")));
+        assertEquals(1000, retryPolicy.backoffDelay(1, new ApiException(529, 5000, "overloaded")));
+    }
+
+    @Test
+    public void testOpenCircuitBreakerPausesDispatch() throws IOException {
+        // Given
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 0.5, 300);
+        RetryPolicy retryPolicy = new RetryPolicy(2, 1, 1, circuitBreaker, runStatistics);
+        server.enqueue(new StubAnthropicServer.StubResponse(529, "{}"))
+                .enqueue(StubAnthropicServer.message("evaluated"));
+
+        // When
+        long start = System.nanoTime();
+        ApiResponse response = retryPolicy.execute(() -> client.sendMessage("prompt"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Then the failure opened the breaker and the retry waited for the trial slot
+        assertEquals("evaluated", response.getText());
+        assertEquals(1, circuitBreaker.getTimesOpened());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(elapsedMs >= 250, "retry was sent after " + elapsedMs + " ms");
+    }
+}
@@ -0,0 +1,133 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.metrics.MetricsManager;
+import com.docanalyzer.metrics.MetricsValidator;
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for StructuredResponseParser.
+ */
+public class StructuredResponseParserTest {
+
+    private static final String RESPONSE = "{\"evaluations\": ["
+            + "{\"method\": 1, \"metrics\": ["
+            + "{\"name\": \"Completeness\", \"score\": 4, \"justification\": \"Documents all parameters.\"},"
+            + "{\"name\": \"Comprehensibility\", \"score\": 5, \"justification\": \"Clear – concise.\"}],"
+            + "\"recommendations\": [\"Mention the exception.\"]},"
+            + "{\"method\": 2, \"metrics\": ["
+            + "{\"name\": \"Alignment\", \"score\": 2, \"justification\": \"Describes an old version.\"}],"
+            + "\"recommendations\": []}"
+            + "]}";
+
+    private MetricsValidator metricsValidator;
+
+    @BeforeEach
+    public void setUp() {
+        MetricsManager metricsManager = new MetricsManager();
+        metricsManager.loadMetricsFromFile("src/main/resources/metrics-definitions.json");
+        metricsValidator = new MetricsValidator(metricsManager);
+    }
+
+    @Test
+    public void testParsesAllEvaluations() {
+        // Given
+        Map<Integer, MetricsResult> results = new LinkedHashMap<>();
+        StructuredResponseParser parser = new StructuredResponseParser(metricsValidator, results::put);
+
+        // When
+        parser.append(RESPONSE);
+        parser.finish();
+
+        // Then
+        assertEquals(List.of(1, 2), new ArrayList<>(results.keySet()));
+        MetricsResult first = results.get(1);
+        assertEquals(4, first.getMetricResults().get("Completeness").getScore());
+        assertEquals("Clear – concise.", first.getMetricResults().get("Comprehensibility").getFeedback());
+        assertEquals(List.of("Mention the exception."), first.getRecommendations());
+        assertEquals(2, results.get(2).getMetricResults().get("Alignment").getScore());
+        assertTrue(parser.getFailedMethods().isEmpty());
+    }
+
+    @Test
+    public void testEvaluationIsEmittedWhenItsObjectCloses() {
+        // Given
+        List<Integer> emitted = new ArrayList<>();
+        StructuredResponseParser parser = new StructuredResponseParser(metricsValidator, (index, result) -> emitted.add(index));
+        int firstEnd = RESPONSE.indexOf("]},") + 2;
+
+        // When - fed one character at a time, as a stream may deliver it
+        for (int i = 0; i < firstEnd; i++) {
+            parser.append(RESPONSE.substring(i, i + 1));
+        }
+
+        // Then
+        assertEquals(List.of(1), emitted);
+        parser.append(RESPONSE.substring(firstEnd));
+        parser.finish();
+        assertEquals(List.of(1, 2), emitted);
+    }
+
+    @Test
+    public void testInvalidEvaluationFailsOnlyThatMethod() {
+        // Given - method 2 has a score out of range, method 3 has no metrics
+        String response = "{\"evaluations\": ["
+                + "{\"method\": 1, \"metrics\": [{\"name\": \"Completeness\", \"score\": 3, \"justification\": \"ok\"}]},"
+                + "{\"method\": 2, \"metrics\": [{\"name\": \"Completeness\", \"score\": 9, \"justification\": \"?\"}]},"
+                + "{\"method\": 3, \"recommendations\": [\"x\"]},"
+                + "{\"method\": 4, \"metrics\": [{\"name\": \"Alignment\", \"score\": 1, \"justification\": \"wrong\"}]}"
+                + "]}";
+        Map<Integer, MetricsResult> results = new LinkedHashMap<>();
+        StructuredResponseParser parser = new StructuredResponseParser(metricsValidator, results::put);
+
+        // When
+        parser.append(response);
+        parser.finish();
+
+        // Then
+        assertEquals(List.of(1, 4), new ArrayList<>(results.keySet()));
+        assertEquals(List.of(2, 3), parser.getFailedMethods());
+    }
+
+    @Test
+    public void testMalformedInputKeepsCompletedEvaluations() {
+        // Given
+        Map<Integer, MetricsResult> results = new LinkedHashMap<>();
+        StructuredResponseParser parser = new StructuredResponseParser(null, results::put);
+        int firstEnd = RESPONSE.indexOf("]},") + 3;
+
+        // When
+        parser.append(RESPONSE.substring(0, firstEnd));
+        parser.append("}}garbage");
+        parser.finish();
+
+        // Then
+        assertTrue(parser.isMalformed());
+        assertEquals(List.of(1), new ArrayList<>(results.keySet()));
+    }
+
+    @Test
+    public void testResetStartsOver() {
+        // Given
+        Map<Integer, MetricsResult> results = new LinkedHashMap<>();
+        StructuredResponseParser parser = new StructuredResponseParser(metricsValidator, results::put);
+        parser.append("{\"evaluations\": [{\"method\": 1, \"metr");
+
+        // When
+        parser.reset();
+        parser.append(RESPONSE);
+        parser.finish();
+
+        // Then
+        assertEquals(2, results.size());
+        assertFalse(parser.isMalformed());
+    }
+}
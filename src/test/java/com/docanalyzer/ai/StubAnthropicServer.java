@@ -0,0 +1,308 @@
+package com.docanalyzer.ai;
+
+import com.docanalyzer.config.Configuration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Local HTTP server that plays scripted Anthropic API responses, for tests.
+ * Responses are served in the order they were queued; requests without a queued response get a 500.
+ */
+public class StubAnthropicServer implements AutoCloseable {
+
+    /**
+     * A scripted response.
+     */
+    public static class StubResponse {
+        final int status;
+        final String body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        public StubResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public StubResponse header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    /**
+     * A request received by the server.
+     */
+    public record RecordedRequest(String method, String path, Map<String, String> headers, String body, long receivedAtNanos) {
+    }
+
+    private static final String MESSAGE_BATCHES_PATH = "/v1/messages/batches";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, StubMessageBatch> messageBatches = new ConcurrentHashMap<>();
+    private volatile Function<JsonNode, String> messageBatchResponder;
+    private volatile Function<RecordedRequest, StubResponse> messageBatchInterceptor = request -> null;
+    private volatile int messageBatchPolls;
+    private final ConcurrentLinkedQueue<Function<RecordedRequest, StubResponse>> responses = new ConcurrentLinkedQueue<>();
+    private final List<RecordedRequest> requests = Collections.synchronizedList(new ArrayList<>());
+
+    public StubAnthropicServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        // Requests are answered concurrently, so a stalled response does not hold up the others
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Builds a Messages API response with a single text block.
+     *
+     * @param text The text content
+     * @return The response
+     */
+    public static StubResponse message(String text) {
+        return message(text, 100, 50);
+    }
+
+    /**
+     * Builds a Messages API response with a single text block and the given usage.
+     *
+     * @param text The text content
+     * @param inputTokens The reported input tokens
+     * @param outputTokens The reported output tokens
+     * @return The response
+     */
+    public static StubResponse message(String text, int inputTokens, int outputTokens) {
+        return message(text, "end_turn", inputTokens, outputTokens);
+    }
+
+    /**
+     * Builds a Messages API response that was cut off at the output token limit.
+     *
+     * @param text The text generated before the limit
+     * @param outputTokens The reported output tokens, i.e. the limit
+     * @return The response
+     */
+    public static StubResponse truncated(String text, int outputTokens) {
+        return message(text, "max_tokens", 100, outputTokens);
+    }
+
+    private static StubResponse message(String text, String stopReason, int inputTokens, int outputTokens) {
+        String escaped = text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return new StubResponse(200, "{\"type\":\"message\",\"role\":\"assistant\",\"stop_reason\":\"" + stopReason + "\","
+                + "\"content\":[{\"type\":\"text\",\"text\":\"" + escaped + "\"}],"
+                + "\"usage\":{\"input_tokens\":" + inputTokens + ",\"output_tokens\":" + outputTokens + "}}");
+    }
+
+    /**
+     * Builds a streamed Messages API response that delivers the text in chunks of the given size.
+     *
+     * @param text The text content
+     * @param chunkSize The number of characters per text delta
+     * @return The response
+     */
+    public static StubResponse stream(String text, int chunkSize) {
+        StringBuilder events = new StringBuilder();
+        events.append("event: message_start\ndata: {\"type\":\"message_start\",\"message\":{\"type\":\"message\",")
+                .append("\"usage\":{\"input_tokens\":100,\"output_tokens\":1,\"cache_read_input_tokens\":900}}}\n\n");
+        events.append("event: content_block_start\ndata: {\"type\":\"content_block_start\",\"index\":0,")
+                .append("\"content_block\":{\"type\":\"text\",\"text\":\"\"}}\n\n");
+        events.append("event: ping\ndata: {\"type\":\"ping\"}\n\n");
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            String chunk = text.substring(i, Math.min(text.length(), i + chunkSize));
+            String escaped = chunk.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            events.append("event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,")
+                    .append("\"delta\":{\"type\":\"text_delta\",\"text\":\"").append(escaped).append("\"}}\n\n");
+        }
+        events.append("event: content_block_stop\ndata: {\"type\":\"content_block_stop\",\"index\":0}\n\n");
+        events.append("event: message_delta\ndata: {\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\"},")
+                .append("\"usage\":{\"output_tokens\":50}}\n\n");
+        events.append("event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n");
+        return new StubResponse(200, events.toString()).header("Content-Type", "text/event-stream");
+    }
+
+    /**
+     * Queues a response.
+     *
+     * @param response The response
+     * @return This server
+     */
+    public StubAnthropicServer enqueue(StubResponse response) {
+        responses.add(request -> response);
+        return this;
+    }
+
+    /**
+     * Queues a response computed from the request.
+     *
+     * @param responder Builds the response from the request
+     * @return This server
+     */
+    public StubAnthropicServer enqueue(Function<RecordedRequest, StubResponse> responder) {
+        responses.add(responder);
+        return this;
+    }
+
+    /**
+     * Makes the server emulate the Message Batches API: submitted jobs report "in_progress" for
+     * the given number of status polls and "ended" afterwards, and their results file lists the
+     * results in reverse order of submission. Cancelled jobs report "canceling" until they end.
+     *
+     * @param pollsBeforeEnd The number of status polls before a job has ended
+     * @param responder Computes the response text from the message parameters of each request
+     * @return This server
+     */
+    public StubAnthropicServer enableMessageBatches(int pollsBeforeEnd, Function<JsonNode, String> responder) {
+        this.messageBatchPolls = pollsBeforeEnd;
+        this.messageBatchResponder = responder;
+        return this;
+    }
+
+    /**
+     * Overrides calls of the emulated Message Batches API, e.g. to fail one of them.
+     *
+     * @param interceptor Returns the response to a call, or null to leave it to the emulation
+     * @return This server
+     */
+    public StubAnthropicServer interceptMessageBatches(Function<RecordedRequest, StubResponse> interceptor) {
+        this.messageBatchInterceptor = interceptor;
+        return this;
+    }
+
+    public List<RecordedRequest> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Creates a default configuration that points the client at this server.
+     *
+     * @return The configuration
+     */
+    public Configuration configuration() {
+        Configuration config = Configuration.getDefaultConfiguration();
+        config.setAnthropicBaseUrl(getBaseUrl());
+        config.setAnthropicApiKey("test-key");
+        config.setCacheEnabled(false);
+        return config;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> headers.put(name.toLowerCase(), values.get(0)));
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        RecordedRequest request = new RecordedRequest(exchange.getRequestMethod(), exchange.getRequestURI().toString(),
+                headers, body, System.nanoTime());
+        requests.add(request);
+
+        StubResponse response;
+        if (messageBatchResponder != null && request.path().startsWith(MESSAGE_BATCHES_PATH)) {
+            response = messageBatchInterceptor.apply(request);
+            if (response == null) {
+                response = handleMessageBatches(request);
+            }
+        } else {
+            Function<RecordedRequest, StubResponse> responder = responses.poll();
+            response = responder != null
+                    ? responder.apply(request)
+                    : new StubResponse(500, "{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"no scripted response\"}}");
+        }
+
+        byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+        response.headers.forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+        if (!response.headers.containsKey("Content-Type")) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(response.status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private StubResponse handleMessageBatches(RecordedRequest request) throws IOException {
+        String path = request.path();
+        if (request.method().equals("POST") && path.equals(MESSAGE_BATCHES_PATH)) {
+            StubMessageBatch batch = new StubMessageBatch("msgbatch_" + (messageBatches.size() + 1), messageBatchPolls);
+            for (JsonNode entry : objectMapper.readTree(request.body()).path("requests")) {
+                batch.results.add(0, Map.entry(entry.path("custom_id").asText(), messageBatchResponder.apply(entry.path("params"))));
+            }
+            messageBatches.put(batch.id, batch);
+            return new StubResponse(200, batch.toJson(getBaseUrl()));
+        }
+
+        String id = path.substring(MESSAGE_BATCHES_PATH.length() + 1).replace("/results", "").replace("/cancel", "");
+        StubMessageBatch batch = messageBatches.get(id);
+        if (batch == null) {
+            return new StubResponse(404, "{\"type\":\"error\",\"error\":{\"type\":\"not_found_error\"}}");
+        }
+        if (path.endsWith("/results")) {
+            StringBuilder results = new StringBuilder();
+            for (Map.Entry<String, String> result : batch.results) {
+                String message = message(result.getValue()).body;
+                results.append("{\"custom_id\":\"").append(result.getKey())
+                        .append("\",\"result\":{\"type\":\"succeeded\",\"message\":").append(message).append("}}\n");
+            }
+            return new StubResponse(200, results.toString()).header("Content-Type", "application/binary");
+        }
+        if (path.endsWith("/cancel")) {
+            batch.cancelled = true;
+            return new StubResponse(200, batch.toJson(getBaseUrl()));
+        }
+        batch.pollsLeft--;
+        return new StubResponse(200, batch.toJson(getBaseUrl()));
+    }
+
+    /**
+     * A job of the emulated Message Batches API.
+     */
+    private static class StubMessageBatch {
+        final String id;
+        final List<Map.Entry<String, String>> results = new ArrayList<>();
+        int pollsLeft;
+        boolean cancelled;
+
+        StubMessageBatch(String id, int pollsLeft) {
+            this.id = id;
+            this.pollsLeft = pollsLeft;
+        }
+
+        String toJson(String baseUrl) {
+            boolean ended = pollsLeft <= 0;
+            return "{\"id\":\"" + id + "\",\"type\":\"message_batch\",\"processing_status\":\""
+                    + (ended ? "ended" : cancelled ? "canceling" : "in_progress") + "\",\"request_counts\":{\"processing\":"
+                    + (ended ? 0 : results.size()) + ",\"succeeded\":" + (ended ? results.size() : 0)
+                    + ",\"errored\":0,\"canceled\":0,\"expired\":0},\"results_url\":"
+                    + (ended ? "\"" + baseUrl + MESSAGE_BATCHES_PATH + "/" + id + "/results\"" : "null") + "}";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.docanalyzer.batch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for AdaptiveBatchSizer.
+ */
+public class AdaptiveBatchSizerTest {
+
+    @Test
+    public void testFullCompleteBatchesGrowTheSize() {
+        // Given
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(5, 1, 7, 1000);
+
+        // When - the third batch is not full, the last ones hit the upper bound
+        sizer.record(5, 200, 0, false);
+        sizer.record(6, 200, 0, false);
+        sizer.record(3, 200, 0, false);
+        sizer.record(7, 200, 0, false);
+        sizer.record(7, 200, 0, false);
+
+        // Then
+        assertEquals(7, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testTruncationHalvesTheSize() {
+        // Given
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 3, 20, 1000);
+
+        // When
+        sizer.record(10, 200, 4, true);
+
+        // Then
+        assertEquals(5, sizer.getBatchSize());
+
+        // When - the lower bound is reached
+        sizer.record(5, 200, 0, true);
+
+        // Then
+        assertEquals(3, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testSlowBatchesShrinkTheSize() {
+        // Given
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(8, 1, 20, 1000);
+
+        // When
+        sizer.record(8, 1500, 0, false);
+
+        // Then
+        assertEquals(4, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testConcurrentSlowBatchesHalveTheSizeOnce() {
+        // Given - four batches of 8 methods were sent before any of them came back
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(8, 1, 20, 1000);
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            sizer.record(8, 1500, 0, false);
+        }
+
+        // Then
+        assertEquals(4, sizer.getBatchSize());
+
+        // When - a batch of the halved size is slow as well
+        sizer.record(4, 1500, 0, false);
+
+        // Then
+        assertEquals(2, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testOnlyManyMissingMethodsShrinkTheSize() {
+        // Given
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1, 20, 1000);
+
+        // When - one missing method is left to re-asking and does not grow the size either
+        sizer.record(10, 200, 1, false);
+
+        // Then
+        assertEquals(10, sizer.getBatchSize());
+
+        // When
+        sizer.record(10, 200, 3, false);
+
+        // Then
+        assertEquals(5, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testEqualBoundsFixTheSize() {
+        // Given
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(5, 5, 5, Long.MAX_VALUE);
+
+        // When
+        sizer.record(5, 200, 0, false);
+        sizer.record(5, 200, 5, true);
+
+        // Then
+        assertEquals(5, sizer.getBatchSize());
+    }
+}
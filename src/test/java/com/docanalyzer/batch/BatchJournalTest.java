@@ -0,0 +1,109 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.Javadoc;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for BatchJournal.
+ */
+public class BatchJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRecordAndResume() throws IOException {
+        // Given
+        Path journalPath = tempDir.resolve("run.journal.jsonl");
+        Method evaluated = method("evaluated", 4.5);
+        Method unevaluated = method("unevaluated", null);
+
+        try (BatchJournal journal = new BatchJournal(journalPath)) {
+            journal.record(List.of(evaluated, unevaluated));
+        }
+
+        // When
+        try (BatchJournal resumed = new BatchJournal(journalPath)) {
+            // Then
+            assertEquals(1, resumed.size());
+            Optional<MetricsResult> result = resumed.get(method("evaluated", null));
+            assertTrue(result.isPresent());
+            assertEquals(4.5, result.get().getOverallScore());
+            assertEquals("Clarity", result.get().getMetricResults().get("Clarity").getName());
+            assertTrue(resumed.get(method("unevaluated", null)).isEmpty());
+
+            Method loaded = resumed.getLoadedMethods().get(0);
+            assertEquals("evaluated", loaded.getName());
+            assertEquals("Does something.", loaded.getJavadoc().getDescription());
+            assertNull(loaded.getBody());
+        }
+    }
+
+    @Test
+    public void testTruncatedLastLineIsIgnored() throws IOException {
+        // Given
+        Path journalPath = tempDir.resolve("crashed.journal.jsonl");
+        try (BatchJournal journal = new BatchJournal(journalPath)) {
+            journal.record(List.of(method("first", 3.0)));
+        }
+        Files.writeString(journalPath, "{\"key\":\"partial", StandardOpenOption.APPEND);
+
+        // When
+        try (BatchJournal resumed = new BatchJournal(journalPath)) {
+            resumed.record(List.of(method("second", 2.0)));
+        }
+
+        // Then
+        try (BatchJournal reopened = new BatchJournal(journalPath)) {
+            assertEquals(2, reopened.size());
+            assertTrue(reopened.get(method("first", null)).isPresent());
+            assertTrue(reopened.get(method("second", null)).isPresent());
+        }
+    }
+
+    @Test
+    public void testRecordAfterCloseIsIgnored() throws IOException {
+        // Given
+        Path journalPath = tempDir.resolve("closed.journal.jsonl");
+        BatchJournal journal = new BatchJournal(journalPath);
+        journal.close();
+
+        // When
+        journal.record(List.of(method("late", 1.0)));
+
+        // Then
+        assertEquals(0, Files.size(journalPath));
+    }
+
+    private Method method(String name, Double score) {
+        Method method = Method.builder()
+                .name(name)
+                .className("Example")
+                .packageName("com.example")
+                .filePath("/src/com/example/Example.java")
+                .signature("public void " + name + "()")
+                .returnType("void")
+                .body("{ }")
+                .javadoc(Javadoc.builder().description("Does something.").rawText("/** Does something. */").build())
+                .build();
+        if (score != null) {
+            MetricsResult result = MetricsResult.builder().overallScore(score).build();
+            result.addMetricResult("Clarity", 4, "Clear enough");
+            result.setOverallScore(score);
+            method.setMetricsResult(result);
+        }
+        return method;
+    }
+}
@@ -0,0 +1,95 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.Method;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for BatchPlanner.
+ */
+public class BatchPlannerTest {
+
+    private static final Map<String, Integer> TOKENS = Map.of(
+            "a", 6000, "b", 7000, "c", 3000, "d", 4000, "e", 1000, "huge", 20000);
+
+    @Test
+    public void testSmallMethodsFillGapsLeftByLargeOnes() {
+        // Given - a sequential fill would close [a] when b arrives and produce three batches
+        BatchPlanner planner = new BatchPlanner(false, method -> TOKENS.get(method.getName()));
+        List<Method> methods = List.of(method("a", "A"), method("b", "A"), method("c", "A"), method("d", "A"));
+
+        // When
+        List<List<Method>> batches = planner.plan(methods, 10000, 10);
+
+        // Then - methods keep their order within a batch
+        assertEquals(List.of(List.of("a", "d"), List.of("b", "c")), names(batches));
+    }
+
+    @Test
+    public void testBatchSizeIsRespected() {
+        // Given
+        BatchPlanner planner = new BatchPlanner(false, method -> 10);
+        List<Method> methods = List.of(method("a", "A"), method("b", "A"), method("c", "A"), method("d", "A"), method("e", "A"));
+
+        // When
+        List<List<Method>> batches = planner.plan(methods, 10000, 2);
+
+        // Then
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e")), names(batches));
+    }
+
+    @Test
+    public void testMethodsOfAClassAreKeptTogether() {
+        // Given - without grouping, a and d of class X would be split by first fit
+        BatchPlanner planner = new BatchPlanner(true, method -> TOKENS.get(method.getName()));
+        List<Method> methods = List.of(method("a", "X"), method("b", "Y"), method("c", "Y"), method("d", "X"));
+
+        // When
+        List<List<Method>> batches = planner.plan(methods, 10000, 10);
+
+        // Then
+        assertEquals(List.of(List.of("a", "d"), List.of("b", "c")), names(batches));
+    }
+
+    @Test
+    public void testClassLargerThanABatchIsSplit() {
+        // Given
+        BatchPlanner planner = new BatchPlanner(true, method -> TOKENS.get(method.getName()));
+        List<Method> methods = List.of(method("a", "X"), method("b", "X"), method("e", "Y"));
+
+        // When
+        List<List<Method>> batches = planner.plan(methods, 10000, 10);
+
+        // Then
+        assertEquals(List.of(List.of("a"), List.of("b", "e")), names(batches));
+    }
+
+    @Test
+    public void testOversizedMethodIsSentAlone() {
+        // Given
+        BatchPlanner planner = new BatchPlanner(false, method -> TOKENS.get(method.getName()));
+        List<Method> methods = List.of(method("e", "A"), method("huge", "A"), method("c", "A"));
+
+        // When
+        List<List<Method>> batches = planner.plan(methods, 10000, 10);
+
+        // Then
+        assertEquals(List.of(List.of("e", "c"), List.of("huge")), names(batches));
+    }
+
+    private static List<List<String>> names(List<List<Method>> batches) {
+        return batches.stream().map(batch -> batch.stream().map(Method::getName).toList()).toList();
+    }
+
+    private static Method method(String name, String className) {
+        return Method.builder()
+                .name(name)
+                .className(className)
+                .packageName("com.example")
+                .build();
+    }
+}
@@ -0,0 +1,393 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.ai.LlmClient;
+import com.docanalyzer.ai.StubAnthropicServer;
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.metrics.MetricsManager;
+import com.docanalyzer.model.Method;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for BatchProcessor.
+ */
+public class BatchProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private StubAnthropicServer server;
+    private MetricsManager metricsManager;
+    private Configuration config;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new StubAnthropicServer();
+        metricsManager = new MetricsManager();
+        metricsManager.loadMetricsFromFile("src/main/resources/metrics-definitions.json");
+        config = server.configuration();
+        config.setRetryBaseDelayMs(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testMissingMethodsAreAskedForAgain() {
+        // Given - the first response skips method 2 and method 3 lacks a metric
+        server.enqueue(StubAnthropicServer.stream(evaluation(1, "first", true) + "---\n" + evaluation(3, "third", false), 40))
+                .enqueue(StubAnthropicServer.stream(evaluation(1, "second", true) + "---\n" + evaluation(2, "third", true), 40));
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"), createMethod("third"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then
+            assertEquals(2, batchProcessor.getRunStatistics().getReaskedMethods());
+        }
+        methods.forEach(method -> assertEquals(3, method.getMetricsResult().getMetricResults().size(), method.getName()));
+        String followUp = server.getRequests().get(1).body();
+        assertFalse(followUp.contains("void first()"));
+        assertTrue(followUp.contains("void second()"));
+        assertTrue(followUp.contains("void third()"));
+        assertTrue(followUp.contains("Evaluate all 2 methods"));
+    }
+
+    @Test
+    public void testFollowUpRequestsAreLimited() {
+        // Given
+        config.setStreamingEnabled(false);
+        config.setBatchReaskMaxAttempts(1);
+        server.enqueue(StubAnthropicServer.message(evaluation(1, "first", true)))
+                .enqueue(StubAnthropicServer.message("I could not evaluate this method."));
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+        }
+
+        // Then
+        assertEquals(2, server.getRequests().size());
+        assertNotNull(methods.get(0).getMetricsResult());
+        assertNull(methods.get(1).getMetricsResult());
+    }
+
+    @Test
+    public void testIncompleteResultsAreNotJournaled() throws IOException {
+        // Given - method 2 still lacks a metric when no follow-up request is allowed
+        config.setStreamingEnabled(false);
+        config.setBatchReaskMaxAttempts(0);
+        server.enqueue(StubAnthropicServer.message(evaluation(1, "first", true) + "---\n" + evaluation(2, "second", false)));
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"));
+        Path journalPath = tempDir.resolve("run.journal.jsonl");
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager);
+             BatchJournal journal = new BatchJournal(journalPath)) {
+            batchProcessor.setJournal(journal);
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+        }
+
+        // Then - a resumed run evaluates method 2 again
+        assertNotNull(methods.get(1).getMetricsResult());
+        try (BatchJournal resumed = new BatchJournal(journalPath)) {
+            assertEquals(1, resumed.size());
+            assertTrue(resumed.get(methods.get(0)).isPresent());
+            assertTrue(resumed.get(methods.get(1)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testTruncatedBatchesAreSplit() {
+        // Given - the first response is cut off in the evaluation of method 4 of 8
+        config.setStreamingEnabled(false);
+        config.setBatchSize(10);
+        config.setMaxTokens(4096);
+        StringBuilder cutOff = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            cutOff.append(evaluation(i, "method" + i, true)).append("---\n");
+        }
+        server.enqueue(StubAnthropicServer.truncated(cutOff.substring(0, cutOff.length() - 40), 4096));
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(BatchProcessorTest::evaluateRequestedMethods);
+        }
+        List<Method> methods = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            methods.add(createMethod("method" + i));
+        }
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then - the possibly cut evaluation of method 4 is asked for again without counting as a re-ask
+            assertEquals(1, batchProcessor.getRunStatistics().getTruncatedResponses());
+            assertEquals(0, batchProcessor.getRunStatistics().getReaskedMethods());
+        }
+        methods.forEach(method -> assertEquals(3, method.getMetricsResult().getMetricResults().size(), method.getName()));
+        List<List<String>> followUps = server.getRequests().stream().skip(1).map(r -> requestedMethods(r.body())).toList();
+        assertEquals(List.of(List.of("method4", "method5"), List.of("method6"), List.of("method7", "method8")), followUps);
+    }
+
+    @Test
+    public void testBatchesAreSizedToTheOutputLimit() {
+        // Given - about 250 output tokens per method with three metrics, so two fit into 600
+        config.setStreamingEnabled(false);
+        config.setBatchSize(10);
+        config.setMaxTokens(600);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(BatchProcessorTest::evaluateRequestedMethods);
+        }
+        List<Method> methods = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            methods.add(createMethod("method" + i));
+        }
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+        }
+
+        // Then - batches are sent concurrently, so in any order
+        Set<List<String>> requested = server.getRequests().stream().map(r -> requestedMethods(r.body())).collect(Collectors.toSet());
+        assertEquals(Set.of(List.of("method1", "method2"), List.of("method3", "method4"), List.of("method5")), requested);
+    }
+
+    @Test
+    public void testSingleTruncatedMethodIsReasked() {
+        // Given
+        config.setStreamingEnabled(false);
+        config.setBatchReaskMaxAttempts(1);
+        server.enqueue(StubAnthropicServer.truncated("METHOD 1 [first] EVALUATION:\nCompleteness: 4\n", 4096))
+                .enqueue(StubAnthropicServer.message(evaluation(1, "first", true)));
+        List<Method> methods = List.of(createMethod("first"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then
+            assertEquals(1, batchProcessor.getRunStatistics().getReaskedMethods());
+        }
+        assertEquals(2, server.getRequests().size());
+        assertEquals(3, methods.get(0).getMetricsResult().getMetricResults().size());
+    }
+
+    @Test
+    public void testFakeProviderEvaluatesWithoutTheApi() {
+        // Given - a third of the requests is rejected and retried
+        config.setLlmProvider(LlmClient.PROVIDER_FAKE);
+        config.setFakeLatencyMs(5);
+        config.setFakeOutputTokensPerSecond(0);
+        config.setFakeThrottleRate(0.3);
+        config.setRateLimitMaxRetries(50);
+        config.setBatchSize(4);
+        List<Method> methods = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            methods.add(createMethod("method" + i));
+        }
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+        }
+
+        // Then
+        assertTrue(server.getRequests().isEmpty());
+        methods.forEach(method -> assertEquals(3, method.getMetricsResult().getMetricResults().size(), method.getName()));
+    }
+
+    @Test
+    public void testBudgetStopsTheRun() {
+        // Given - a request may cost up to about $0.07 and the first one costs $0.045
+        config.setStreamingEnabled(false);
+        config.setBatchSize(1);
+        config.setBatchAdaptiveEnabled(false);
+        config.setBatchMaxInflight(1);
+        config.setBudgetMaxCostUsd(0.10);
+        server.enqueue(StubAnthropicServer.message(evaluation(1, "first", true), 100, 3000));
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"), createMethod("third"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then
+            assertEquals(2, batchProcessor.getRunStatistics().getBudgetSkippedMethods());
+            assertEquals(0.0453, batchProcessor.getRunStatistics().getCostUsd(), 1e-9);
+        }
+        assertEquals(1, server.getRequests().size());
+        assertNotNull(methods.get(0).getMetricsResult());
+        assertNull(methods.get(1).getMetricsResult());
+        assertNull(methods.get(2).getMetricsResult());
+    }
+
+    @Test
+    public void testEveryAttemptIsCharged() throws IOException {
+        // Given - the first attempt is aborted at its deadline, after its prompt may have been billed
+        CountDownLatch release = new CountDownLatch(1);
+        config.setStreamingEnabled(false);
+        config.setBatchSize(1);
+        config.setBatchAdaptiveEnabled(false);
+        config.setRequestDeadlineMs(200);
+        config.setBudgetMaxCostUsd(1.0);
+        server.enqueue(request -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return StubAnthropicServer.message("too late");
+                })
+                .enqueue(StubAnthropicServer.message(evaluation(1, "first", true), 100, 3000));
+        List<Method> methods = List.of(createMethod("first"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then - the response costs $0.0453, the aborted attempt its input estimate
+            assertEquals(1, batchProcessor.getRunStatistics().getTimedOutRequests());
+            assertTrue(batchProcessor.getRunStatistics().getCostUsd() > 0.0453 + 1e-6);
+        } finally {
+            release.countDown();
+        }
+        assertEquals(2, server.getRequests().size());
+        assertNotNull(methods.get(0).getMetricsResult());
+    }
+
+    @Test
+    public void testHedgesAreSentWithinTheBudget() {
+        // Given - two batches set the hedge delay, then the third batch's request stalls
+        CountDownLatch release = new CountDownLatch(1);
+        config.setStreamingEnabled(false);
+        config.setBatchSize(1);
+        config.setBatchAdaptiveEnabled(false);
+        config.setBatchMaxInflight(1);
+        config.setBudgetMaxCostUsd(1.0);
+        config.setHedgeEnabled(true);
+        config.setHedgeLatencyPercentile(0.5);
+        config.setHedgeMaxRatio(0.5);
+        config.setHedgeMinSamples(2);
+        server.enqueue(request -> {
+                    sleep(20);
+                    return evaluateRequestedMethods(request);
+                })
+                .enqueue(request -> {
+                    sleep(20);
+                    return evaluateRequestedMethods(request);
+                })
+                .enqueue(request -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return StubAnthropicServer.message("too late");
+                })
+                .enqueue(BatchProcessorTest::evaluateRequestedMethods);
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"), createMethod("third"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then - three responses of 100 input and 50 output tokens, and the cancelled request's input
+            assertEquals(1, batchProcessor.getRunStatistics().getHedgedRequests());
+            assertEquals(1, batchProcessor.getRunStatistics().getHedgeWins());
+            assertTrue(batchProcessor.getRunStatistics().getCostUsd() > 3 * 0.00105 + 1e-6);
+        } finally {
+            release.countDown();
+        }
+        assertEquals(4, server.getRequests().size());
+        methods.forEach(method -> assertNotNull(method.getMetricsResult(), method.getName()));
+    }
+
+    @Test
+    public void testDryRunOnlyProjectsUsage() {
+        // Given
+        List<Method> methods = List.of(createMethod("first"), createMethod("second"), createMethod("third"));
+
+        // When
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            batchProcessor.setDryRun(true);
+            batchProcessor.processBatches(methods, metricsManager.getFormattedGuidelines());
+
+            // Then - three methods of about 251 output tokens, the shared prefix written to the cache once
+            assertEquals(753, batchProcessor.getRunStatistics().getOutputTokens());
+            assertTrue(batchProcessor.getRunStatistics().getCacheWriteTokens() > 0);
+            assertTrue(batchProcessor.getRunStatistics().getCostUsd() > 0);
+        }
+        assertTrue(server.getRequests().isEmpty());
+        methods.forEach(method -> assertNull(method.getMetricsResult()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static StubAnthropicServer.StubResponse evaluateRequestedMethods(StubAnthropicServer.RecordedRequest request) {
+        List<String> names = requestedMethods(request.body());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            text.append(evaluation(i + 1, names.get(i), true)).append("---\n");
+        }
+        return StubAnthropicServer.message(text.toString());
+    }
+
+    private static List<String> requestedMethods(String body) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = Pattern.compile("public void (\\w+)\\(\\)").matcher(body);
+        while (matcher.find()) {
+            if (!names.contains(matcher.group(1))) {
+                names.add(matcher.group(1));
+            }
+        }
+        return names;
+    }
+
+    static String evaluation(int index, String name, boolean complete) {
+        StringBuilder text = new StringBuilder("METHOD " + index + " [" + name + "] EVALUATION:\n");
+        text.append("Completeness: 4\nJustification: Describes the parameters.\n\n");
+        text.append("Comprehensibility: 3\nJustification: Somewhat terse.\n\n");
+        if (complete) {
+            text.append("Alignment: 5\nJustification: Matches the code.\n\n");
+        }
+        text.append("Recommendations:\n1. Add an example.\n");
+        return text.toString();
+    }
+
+    static Method createMethod(String name) {
+        return Method.builder()
+                .name(name)
+                .className("Example")
+                .packageName("com.example")
+                .filePath("Example.java")
+                .signature("public void " + name + "()")
+                .body("{ }")
+                .build();
+    }
+}
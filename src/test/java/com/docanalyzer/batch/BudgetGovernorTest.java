@@ -0,0 +1,65 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.config.ModelPrice;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for BudgetGovernor.
+ */
+public class BudgetGovernorTest {
+
+    private static final ModelPrice PRICE = new ModelPrice(3.0, 15.0);
+
+    @Test
+    public void testCostIncludesCacheAndPriceFactor() {
+        // Given
+        BudgetGovernor governor = new BudgetGovernor(PRICE, 0, 0.5);
+
+        // When / Then - cache reads at a tenth and writes at 1.25 times the input price, all at half price
+        assertEquals(9.0, governor.cost(1_000_000, 1_000_000, 0, 0), 1e-9);
+        assertEquals(2.025, governor.cost(0, 0, 1_000_000, 1_000_000), 1e-9);
+    }
+
+    @Test
+    public void testRequestsBeyondTheBudgetAreRefused() {
+        // Given
+        BudgetGovernor governor = new BudgetGovernor(PRICE, 0.10, 1.0);
+
+        // When
+        boolean first = governor.tryReserve(0.06);
+        boolean second = governor.tryReserve(0.05);
+        boolean third = governor.tryReserve(0.01);
+
+        // Then - once a request is refused the run stops, even if a smaller one would fit
+        assertTrue(first);
+        assertFalse(second);
+        assertFalse(third);
+        assertTrue(governor.isExhausted());
+    }
+
+    @Test
+    public void testActualCostReplacesTheReservation() {
+        // Given
+        BudgetGovernor governor = new BudgetGovernor(PRICE, 0.10, 1.0);
+        governor.tryReserve(0.06);
+
+        // When
+        governor.settle(0.06, 0.02);
+
+        // Then
+        assertEquals(0.02, governor.getSpentUsd(), 1e-9);
+        assertTrue(governor.tryReserve(0.07));
+    }
+
+    @Test
+    public void testWithoutBudgetEverythingIsAllowed() {
+        // Given
+        BudgetGovernor governor = new BudgetGovernor(null, 0, 1.0);
+
+        // When / Then
+        assertTrue(governor.tryReserve(1000));
+        assertEquals(0, governor.cost(1_000_000, 1_000_000, 0, 0));
+    }
+}
@@ -0,0 +1,79 @@
+package com.docanalyzer.batch;
+
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for OutputSizeEstimator.
+ */
+public class OutputSizeEstimatorTest {
+
+    @Test
+    public void testEstimateIsModelledFromMetricCount() {
+        // Given
+        OutputSizeEstimator estimator = new OutputSizeEstimator(4096, 3);
+
+        // When / Then - 25 + 3 * (12 + 50) + 40 tokens per method
+        assertEquals(251, estimator.getTokensPerMethod(), 0.001);
+        assertEquals(13, estimator.maxMethodsPerBatch());
+        assertEquals(4, new OutputSizeEstimator(4096, 12).maxMethodsPerBatch());
+    }
+
+    @Test
+    public void testModelUsesObservedJustificationLength() {
+        // Given
+        OutputSizeEstimator estimator = new OutputSizeEstimator(4096, 2);
+        MetricsResult result = new MetricsResult();
+        result.addMetricResult("Completeness", 4, "x".repeat(400));
+        result.addMetricResult("Alignment", 5, "x".repeat(400));
+        result.addRecommendation("x".repeat(80));
+
+        // When
+        estimator.recordEvaluation(result);
+
+        // Then - 25 + 2 * (12 + 100) + 20 tokens per method
+        assertEquals(269, estimator.getTokensPerMethod(), 0.001);
+    }
+
+    @Test
+    public void testCompleteResponsesAreAveraged() {
+        // Given
+        OutputSizeEstimator estimator = new OutputSizeEstimator(4000, 3);
+
+        // When
+        estimator.recordComplete(10, 2000);
+        estimator.recordComplete(10, 3000);
+
+        // Then - 200 tokens moved 30% towards 300
+        assertEquals(230, estimator.getTokensPerMethod(), 0.001);
+        assertEquals(14, estimator.maxMethodsPerBatch());
+    }
+
+    @Test
+    public void testTruncationRaisesTheEstimate() {
+        // Given
+        OutputSizeEstimator estimator = new OutputSizeEstimator(4000, 3);
+        estimator.recordComplete(10, 1000);
+
+        // When - the limit was reached after 5 methods
+        estimator.recordTruncated(5);
+
+        // Then
+        assertEquals(800, estimator.getTokensPerMethod(), 0.001);
+        assertEquals(4, estimator.maxMethodsPerBatch());
+    }
+
+    @Test
+    public void testBatchSizeIsAtLeastOne() {
+        // Given
+        OutputSizeEstimator estimator = new OutputSizeEstimator(4000, 3);
+
+        // When - not even one method fit
+        estimator.recordTruncated(0);
+
+        // Then
+        assertEquals(1, estimator.maxMethodsPerBatch());
+    }
+}
@@ -0,0 +1,92 @@
+package com.docanalyzer.cache;
+
+import com.docanalyzer.model.Javadoc;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the EvaluationCache class.
+ */
+class EvaluationCacheTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private EvaluationCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        cache = new EvaluationCache(tempDir, "test-model", 0.0, "Completeness scores: ...");
+    }
+    
+    @Test
+    void testPutAndGet() {
+        Method method = createMethod("return a + b;", "/** Adds two numbers. */");
+        MetricsResult result = new MetricsResult();
+        result.addMetricResult("Completeness", 4, "Good documentation");
+        result.addRecommendation("Document the overflow behaviour");
+        
+        cache.put(method, result);
+        Optional<MetricsResult> cached = cache.get(createMethod("return a + b;", "/** Adds two numbers. */"));
+        
+        assertTrue(cached.isPresent());
+        assertEquals(4, cached.get().getMetricResults().get("Completeness").getScore());
+        assertEquals("Good documentation", cached.get().getMetricResults().get("Completeness").getFeedback());
+        assertEquals(1, cached.get().getRecommendations().size());
+        assertEquals(4.0, cached.get().getOverallScore(), 0.01);
+    }
+    
+    @Test
+    void testMissWhenJavadocChanges() {
+        MetricsResult result = new MetricsResult();
+        result.addMetricResult("Completeness", 4, "Good documentation");
+        cache.put(createMethod("return a + b;", "/** Adds two numbers. */"), result);
+        
+        assertFalse(cache.get(createMethod("return a + b;", "/** Adds numbers. */")).isPresent());
+        assertFalse(cache.get(createMethod("return a - b;", "/** Adds two numbers. */")).isPresent());
+    }
+    
+    @Test
+    void testFingerprintDependsOnModelAndGuidelines() {
+        Method method = createMethod("return a + b;", "/** Adds two numbers. */");
+        EvaluationCache otherModel = new EvaluationCache(tempDir, "other-model", 0.0, "Completeness scores: ...");
+        EvaluationCache otherGuidelines = new EvaluationCache(tempDir, "test-model", 0.0, "Clarity scores: ...");
+        
+        assertNotEquals(cache.fingerprint(method), otherModel.fingerprint(method));
+        assertNotEquals(cache.fingerprint(method), otherGuidelines.fingerprint(method));
+    }
+    
+    @Test
+    void testFingerprintIgnoresLineEndings() {
+        Method unix = createMethod("int sum = a + b;\n        return sum;", "/**\n * Adds two numbers.\n */");
+        Method windows = createMethod("int sum = a + b;  \r\n        return sum;", "/**\r\n * Adds two numbers.\r\n */");
+        
+        assertEquals(cache.fingerprint(unix), cache.fingerprint(windows));
+    }
+    
+    @Test
+    void testEmptyResultIsNotCached() {
+        Method method = createMethod("return a + b;", "/** Adds two numbers. */");
+        
+        cache.put(method, new MetricsResult());
+        
+        assertFalse(cache.get(method).isPresent());
+    }
+    
+    private Method createMethod(String body, String javadoc) {
+        return Method.builder()
+                .name("add")
+                .signature("public int add(int a, int b)")
+                .body("{" + body + "}")
+                .javadoc(Javadoc.builder().rawText(javadoc).build())
+                .build();
+    }
+}
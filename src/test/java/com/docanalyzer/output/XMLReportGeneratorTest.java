@@ -0,0 +1,100 @@
+package com.docanalyzer.output;
+
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.model.MetricsResult;
+import com.docanalyzer.model.RunStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for XMLReportGenerator.
+ */
+public class XMLReportGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private XMLReportGenerator reportGenerator;
+
+    @BeforeEach
+    public void setUp() {
+        reportGenerator = new XMLReportGenerator(Configuration.getDefaultConfiguration());
+    }
+
+    @Test
+    public void testStreamingReport_AppendsMethodsAndWritesSummaryTrailer() throws Exception {
+        // Given
+        RunStatistics runStatistics = new RunStatistics();
+        runStatistics.recordCacheHit();
+        Path reportPath = tempDir.resolve("report.xml");
+
+        // When
+        try (XMLReportGenerator.StreamingReport report = reportGenerator.openReport(tempDir.toString(), "report.xml")) {
+            report.appendMethods(List.of(method("first", 4.0), method("second", null)));
+
+            // Then - the first group is on disk before the report is finished
+            String partial = Files.readString(reportPath);
+            assertTrue(partial.contains("<name>first</name>"));
+            assertTrue(partial.contains("<name>second</name>"));
+            assertFalse(partial.contains("<summary>"));
+
+            report.appendMethods(List.of(method("third", 2.0)));
+            assertEquals(reportPath.toString(), report.finish(runStatistics));
+        }
+
+        // Then
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(reportPath.toFile());
+        assertEquals(3, document.getElementsByTagName("method").getLength());
+        assertEquals("3", text(document, "total-methods"));
+        assertEquals("2", text(document, "methods-with-metrics"));
+        assertEquals(String.format("%.2f", 3.0), text(document, "average-score"));
+        assertEquals("1", text(document, "cache-hits"));
+        assertEquals(1, document.getElementsByTagName("evaluation-status").getLength());
+        assertEquals("not-evaluated", text(document, "evaluation-status"));
+    }
+
+    @Test
+    public void testStreamingReport_CloseWithoutFinishIsWellFormed() throws Exception {
+        // Given
+        Path reportPath = tempDir.resolve("interrupted.xml");
+
+        // When
+        try (XMLReportGenerator.StreamingReport report = reportGenerator.openReport(tempDir.toString(), "interrupted.xml")) {
+            report.appendMethods(List.of(method("only", 5.0)));
+        }
+
+        // Then
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(reportPath.toFile());
+        assertEquals(1, document.getElementsByTagName("method").getLength());
+        assertEquals("1", text(document, "total-methods"));
+        assertEquals(0, document.getElementsByTagName("cache-hits").getLength());
+    }
+
+    private Method method(String name, Double score) {
+        Method method = Method.builder()
+                .name(name)
+                .className("Example")
+                .packageName("com.example")
+                .signature("void " + name + "()")
+                .returnType("void")
+                .build();
+        if (score != null) {
+            method.setMetricsResult(MetricsResult.builder().overallScore(score).build());
+        }
+        return method;
+    }
+
+    private String text(Document document, String tagName) {
+        return document.getElementsByTagName(tagName).item(0).getTextContent();
+    }
+}
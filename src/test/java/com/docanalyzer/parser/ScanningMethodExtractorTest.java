@@ -0,0 +1,173 @@
+package com.docanalyzer.parser;
+
+import com.docanalyzer.model.Method;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ScanningMethodExtractor.
+ */
+public class ScanningMethodExtractorTest {
+
+    private JavaParser javaParser;
+    private MethodExtractor scanningExtractor;
+    private MethodExtractor regexExtractor;
+
+    @BeforeEach
+    public void setUp() {
+        javaParser = new JavaParser();
+        scanningExtractor = MethodExtractor.create("scanner");
+        regexExtractor = MethodExtractor.create("regex");
+    }
+
+    @Test
+    public void testCreate() {
+        assertInstanceOf(ScanningMethodExtractor.class, scanningExtractor);
+        assertFalse(regexExtractor instanceof ScanningMethodExtractor);
+    }
+
+    @Test
+    public void testSameMethodsAsRegexExtractor() {
+        // Given
+        JavaParser.JavaFile parsedFile = javaParser.parseFile("src/test/resources/examples/ExampleClass.java").orElseThrow();
+
+        // When
+        List<Method> expected = regexExtractor.extractMethods(parsedFile);
+        List<Method> actual = scanningExtractor.extractMethods(parsedFile);
+
+        // Then
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getParameterNames(), actual.get(i).getParameterNames());
+            assertEquals(expected.get(i).getBody(), actual.get(i).getBody());
+            assertEquals(expected.get(i).getJavadoc().getRawText(), actual.get(i).getJavadoc().getRawText());
+        }
+    }
+
+    @Test
+    public void testExtractMethods_AnnotationsAndModifiers(@TempDir Path tempDir) throws IOException {
+        // Given
+        JavaParser.JavaFile parsedFile = parse(tempDir, "Annotated.java",
+                "package com.example;\n\n" +
+                "public class Annotated {\n" +
+                "    /**\n" +
+                "     * Formats a value.\n" +
+                "     * @param column the column\n" +
+                "     * @param value the value\n" +
+                "     * @return formatted value\n" +
+                "     */\n" +
+                "    @NotNull\n" +
+                "    @SuppressWarnings(value = {\"unchecked\", \"rawtypes\"})\n" +
+                "    public static final String format(@NotNull final Map<String, Object> column, @Nullable Object value) {\n" +
+                "        return String.valueOf(value);\n" +
+                "    }\n" +
+                "}\n");
+
+        // When
+        List<Method> methods = scanningExtractor.extractMethods(parsedFile);
+
+        // Then
+        assertEquals(1, methods.size());
+        Method method = methods.get(0);
+        assertEquals("format", method.getName());
+        assertEquals("String", method.getReturnType());
+        assertEquals(List.of("column", "value"), method.getParameterNames());
+        assertEquals(List.of("Map<String, Object>", "Object"), method.getParameterTypes());
+        assertEquals("public static final String format(Map<String, Object> column, Object value)", method.getSignature());
+        assertEquals(10, method.getStartLine());
+        assertEquals(14, method.getEndLine());
+    }
+
+    @Test
+    public void testExtractMethods_BracesInLiteralsAndComments(@TempDir Path tempDir) throws IOException {
+        // Given
+        JavaParser.JavaFile parsedFile = parse(tempDir, "Literals.java",
+                "package com.example;\n\n" +
+                "public class Literals {\n" +
+                "    /**\n" +
+                "     * Builds a template.\n" +
+                "     * @return the template\n" +
+                "     */\n" +
+                "    public String template() {\n" +
+                "        char open = '{';\n" +
+                "        String block = \"\"\"\n" +
+                "            } \"quoted\" {\n" +
+                "            \"\"\";\n" +
+                "        /* } */ // }\n" +
+                "        return \"}\" + open + block;\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Returns the next value.\n" +
+                "     * @return the value\n" +
+                "     */\n" +
+                "    int next();\n" +
+                "}\n");
+
+        // When
+        List<Method> methods = scanningExtractor.extractMethods(parsedFile);
+
+        // Then
+        assertEquals(2, methods.size());
+        assertTrue(methods.get(0).getBody().contains("return \"}\" + open + block;"));
+        assertTrue(methods.get(0).getBody().endsWith("block;\n    }"));
+        assertEquals("next", methods.get(1).getName());
+        assertEquals("", methods.get(1).getBody());
+        assertTrue(methods.get(1).getFullCode().endsWith(";"));
+    }
+
+    @Test
+    public void testExtractMethods_IgnoresNonMethodDeclarations(@TempDir Path tempDir) throws IOException {
+        // Given
+        JavaParser.JavaFile parsedFile = parse(tempDir, "Fields.java",
+                "package com.example;\n\n" +
+                "/** The enum. */\n" +
+                "public enum Fields {\n" +
+                "    /** First constant. */\n" +
+                "    FIRST(\"first\"),\n" +
+                "    /** Second constant. */\n" +
+                "    SECOND(\"second\");\n" +
+                "\n" +
+                "    /** The label. */\n" +
+                "    private final String label;\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Creates a constant.\n" +
+                "     * @param label the label\n" +
+                "     */\n" +
+                "    Fields(String label) {\n" +
+                "        this.label = label;\n" +
+                "    }\n" +
+                "}\n");
+
+        // When
+        List<Method> methods = scanningExtractor.extractMethods(parsedFile);
+
+        // Then
+        assertEquals(1, methods.size());
+        assertEquals("Fields", methods.get(0).getName());
+        assertEquals("", methods.get(0).getReturnType());
+        assertEquals(List.of("label"), methods.get(0).getParameterNames());
+    }
+
+    private JavaParser.JavaFile parse(Path tempDir, String fileName, String content) throws IOException {
+        File file = tempDir.resolve(fileName).toFile();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+        Optional<JavaParser.JavaFile> parsedFile = javaParser.parseFile(file.getAbsolutePath());
+        assertTrue(parsedFile.isPresent());
+        return parsedFile.get();
+    }
+}
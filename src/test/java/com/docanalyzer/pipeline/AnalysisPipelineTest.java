@@ -0,0 +1,220 @@
+package com.docanalyzer.pipeline;
+
+import com.docanalyzer.ai.LlmClient;
+import com.docanalyzer.ai.StubAnthropicServer;
+import com.docanalyzer.batch.BatchProcessor;
+import com.docanalyzer.config.Configuration;
+import com.docanalyzer.metrics.MetricsManager;
+import com.docanalyzer.model.Method;
+import com.docanalyzer.parser.JavaParser;
+import com.docanalyzer.parser.MethodExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for AnalysisPipeline, running it on generated sources against the fake provider.
+ */
+public class AnalysisPipelineTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @TempDir
+    Path sourceDir;
+
+    private MetricsManager metricsManager;
+    private Configuration config;
+
+    @BeforeEach
+    public void setUp() {
+        metricsManager = new MetricsManager();
+        metricsManager.loadMetricsFromFile("src/main/resources/metrics-definitions.json");
+        config = Configuration.getDefaultConfiguration();
+        config.setLlmProvider(LlmClient.PROVIDER_FAKE);
+        config.setFakeLatencyMs(0);
+        config.setFakeOutputTokensPerSecond(0);
+        config.setCacheEnabled(false);
+        config.setParserThreads(2);
+    }
+
+    @Test
+    public void testEveryMethodIsReportedOnceAfterTheLastFile() throws IOException {
+        // Given - 15 methods in windows of 4, so the last window is partial
+        for (int i = 1; i <= 5; i++) {
+            writeSource("Source" + i, 3, 0);
+        }
+        config.setPipelineWindowSize(4);
+
+        // When
+        List<List<Method>> windows = new ArrayList<>();
+        AnalysisPipeline pipeline = run(new MethodExtractor(), windows::add);
+
+        // Then
+        List<String> reported = names(windows);
+        assertEquals(15, reported.size());
+        assertEquals(15, reported.stream().distinct().count());
+        assertTrue(windows.stream().allMatch(window -> window.size() <= 4));
+        windows.forEach(window -> window.forEach(method -> assertNotNull(method.getMetricsResult(), method.getName())));
+        assertEquals(5, pipeline.getFilesParsed());
+        assertEquals(15, pipeline.getMethodsWithJavadoc());
+    }
+
+    @Test
+    public void testWindowIsReportedInSourceOrder() throws IOException {
+        // Given - the last file in path order is the largest and is parsed first
+        writeSource("Alpha", 2, 0);
+        writeSource("Beta", 2, 0);
+        writeSource("Gamma", 2, 200);
+
+        // When
+        List<List<Method>> windows = new ArrayList<>();
+        run(new MethodExtractor(), windows::add);
+
+        // Then
+        assertEquals(1, windows.size());
+        assertEquals(List.of("Alpha.method1", "Alpha.method2", "Beta.method1", "Beta.method2", "Gamma.method1",
+                "Gamma.method2"), names(windows));
+    }
+
+    @Test
+    public void testFailingSinkDoesNotHoldUpThePipeline() throws IOException {
+        // Given - more windows than the report queue holds
+        for (int i = 1; i <= 6; i++) {
+            writeSource("Source" + i, 2, 0);
+        }
+        config.setPipelineWindowSize(2);
+        AtomicInteger sinkCalls = new AtomicInteger();
+
+        // When
+        AnalysisPipeline pipeline = run(new MethodExtractor(), window -> {
+            sinkCalls.incrementAndGet();
+            throw new IllegalStateException("Disk full");
+        });
+
+        // Then - the sink is given up on, while every window is still evaluated
+        assertEquals(1, sinkCalls.get());
+        assertEquals(12, pipeline.getMethodsWithJavadoc());
+    }
+
+    @Test
+    public void testFileThatFailsToParseIsSkipped() throws IOException {
+        // Given - a single parser and more files than the file queue holds after the broken one
+        config.setParserThreads(1);
+        writeSource("Broken", 2, 400);
+        for (int i = 1; i <= 8; i++) {
+            writeSource("Source" + i, 1, 0);
+        }
+        MethodExtractor failingExtractor = new MethodExtractor() {
+            @Override
+            public List<Method> extractMethods(JavaParser.JavaFile parsedFile) {
+                if (parsedFile.getClassName().equals("Broken")) {
+                    throw new IllegalArgumentException("Unbalanced braces");
+                }
+                return super.extractMethods(parsedFile);
+            }
+        };
+
+        // When
+        List<List<Method>> windows = new ArrayList<>();
+        run(failingExtractor, windows::add);
+
+        // Then
+        List<String> reported = names(windows);
+        assertEquals(8, reported.size());
+        assertTrue(reported.stream().noneMatch(name -> name.startsWith("Broken.")));
+    }
+
+    @Test
+    public void testAsyncBatchModeCollectsFullWindows() throws IOException {
+        // Given - the parser stalls for longer than the idle flush of the interactive mode
+        writeSource("Alpha", 2, 0);
+        writeSource("Beta", 2, 0);
+        writeSource("Gamma", 2, 0);
+        MethodExtractor slowExtractor = new MethodExtractor() {
+            @Override
+            public List<Method> extractMethods(JavaParser.JavaFile parsedFile) {
+                if (parsedFile.getClassName().equals("Gamma")) {
+                    sleep(1500);
+                }
+                return super.extractMethods(parsedFile);
+            }
+        };
+        List<List<Method>> windows = new ArrayList<>();
+        try (StubAnthropicServer server = new StubAnthropicServer()) {
+            server.enableMessageBatches(0, params -> "No evaluation");
+            config = server.configuration();
+            config.setProcessingMode(BatchProcessor.MODE_ASYNC_BATCH);
+            config.setMessageBatchPollIntervalMs(1);
+            config.setMessageBatchWindowSize(5);
+            config.setPipelineWindowSize(2);
+            config.setParserThreads(1);
+
+            // When
+            run(slowExtractor, windows::add);
+
+            // Then - windows of the message batch size, not flushed while the parser stalls
+            assertEquals(List.of(5, 1), windows.stream().map(List::size).toList());
+        }
+    }
+
+    private AnalysisPipeline run(MethodExtractor methodExtractor, Consumer<List<Method>> reportSink) {
+        try (BatchProcessor batchProcessor = new BatchProcessor(config, metricsManager)) {
+            AnalysisPipeline pipeline = new AnalysisPipeline(config, new JavaParser(), methodExtractor, batchProcessor,
+                    metricsManager.getFormattedGuidelines());
+            assertTimeoutPreemptively(TIMEOUT, () -> pipeline.run(List.of(sourceDir.toString()), reportSink));
+            return pipeline;
+        }
+    }
+
+    /**
+     * Writes a class whose methods all have Javadoc.
+     *
+     * @param className The class name, also the file name
+     * @param methodCount The number of methods
+     * @param paddingLines The number of comment lines added to make the file larger
+     * @throws IOException If the file cannot be written
+     */
+    private void writeSource(String className, int methodCount, int paddingLines) throws IOException {
+        StringBuilder source = new StringBuilder("package com.example;\n\n");
+        source.append("public class ").append(className).append(" {\n");
+        for (int i = 0; i < paddingLines; i++) {
+            source.append("    // Padding line ").append(i).append('\n');
+        }
+        for (int i = 1; i <= methodCount; i++) {
+            source.append("    /**\n")
+                    .append("     * Adds ").append(i).append(" to a number.\n")
+                    .append("     * \n")
+                    .append("     * @param a the number\n")
+                    .append("     * @return the sum\n")
+                    .append("     */\n")
+                    .append("    public int method").append(i).append("(int a) {\n")
+                    .append("        return a + ").append(i).append(";\n")
+                    .append("    }\n\n");
+        }
+        source.append("}\n");
+        Files.writeString(sourceDir.resolve(className + ".java"), source.toString());
+    }
+
+    private static List<String> names(List<List<Method>> windows) {
+        return windows.stream().flatMap(List::stream).map(method -> method.getClassName() + "." + method.getName()).toList();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}